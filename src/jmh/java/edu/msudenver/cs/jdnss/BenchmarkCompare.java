@@ -0,0 +1,91 @@
+package edu.msudenver.cs.jdnss;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts two JMH runs written with -rf csv side by side, say one from before
+ * a change and one from after: the throughput and the bytes allocated per
+ * operation (gc.alloc.rate.norm) of each benchmark, and how much each
+ * changed.  The other profiler results are left out.
+ *
+ * mvn -Pjmh test-compile exec:exec@compare -Djmh.baseline=before.csv
+ */
+public class BenchmarkCompare {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: BenchmarkCompare baseline.csv result.csv");
+            System.exit(1);
+        }
+
+        final Map<String, String[]> before = read(args[0]);
+        final Map<String, String[]> after = read(args[1]);
+
+        System.out.printf("%-70s %12s %12s %8s  %s%n", "Benchmark", "before", "after", "change", "unit");
+        for (Map.Entry<String, String[]> e : after.entrySet()) {
+            final String[] b = before.get(e.getKey());
+            final double now = Double.parseDouble(e.getValue()[0]);
+            if (b == null) {
+                System.out.printf("%-70s %12s %12.3f %8s  %s%n", e.getKey(), "-", now, "", e.getValue()[1]);
+                continue;
+            }
+            final double then = Double.parseDouble(b[0]);
+            final String change = then == 0 ? "" : String.format("%+.1f%%", (now - then) * 100 / then);
+            System.out.printf("%-70s %12.3f %12.3f %8s  %s%n", e.getKey(), then, now, change, e.getValue()[1]);
+        }
+    }
+
+    /**
+     * @return benchmark and parameters -> score, unit; in the order run
+     */
+    private static Map<String, String[]> read(final String file) throws IOException {
+        final List<String> lines = Files.readAllLines(Paths.get(file));
+        final Map<String, String[]> scores = new LinkedHashMap<>();
+        if (lines.isEmpty()) {
+            return scores;
+        }
+
+        final List<String> header = split(lines.get(0));
+        final int score = header.indexOf("Score");
+        final int unit = header.indexOf("Unit");
+        for (String line : lines.subList(1, lines.size())) {
+            final List<String> fields = split(line);
+            String name = fields.get(0).replaceFirst("^edu\\.msudenver\\.cs\\.jdnss\\.", "");
+            if (name.contains(":") && !name.endsWith(":gc.alloc.rate.norm")) {
+                continue;
+            }
+            // the parameters follow the unit
+            for (int i = unit + 1; i < fields.size(); i++) {
+                if (!fields.get(i).isEmpty()) {
+                    name += " " + header.get(i).replaceFirst("^Param: ", "") + "=" + fields.get(i);
+                }
+            }
+            scores.put(name, new String[]{fields.get(score), fields.get(unit)});
+        }
+        return scores;
+    }
+
+    private static List<String> split(final String line) {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
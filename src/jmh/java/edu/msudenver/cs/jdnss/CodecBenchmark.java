@@ -0,0 +1,138 @@
+package edu.msudenver.cs.jdnss;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding and encoding the parts of a message, each on its own: the
+ * header, the question section, names, and the OPT record with a DNS
+ * cookie.  Response construction is in ResponseBenchmark.
+ *
+ * The settings are fixed here rather than left to the command line, so
+ * that runs on different commits measure the same thing; see the jmh
+ * profile in pom.xml.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    private static final String CLIENT = "127.0.0.1";
+
+    private byte[] query;
+    private byte[] cookieQuery;
+    private byte[] opt;
+    private Header header;
+    private OPTRR optrr;
+    private final DnsMessageWriter writer = new DnsMessageWriter();
+
+    /**
+     * @return a query for name, with an OPT record if edns, with DO set if
+     * DNSSEC, and with a client cookie if cookie
+     */
+    static byte[] query(final String name, final RRCode type, final boolean edns,
+                        final boolean DNSSEC, final boolean cookie) {
+        final DnsMessageWriter w = new DnsMessageWriter();
+        w.putShort(0x1234);
+        // RD
+        w.putShort(0x0100);
+        w.putShort(1);
+        w.putShort(0);
+        w.putShort(0);
+        w.putShort(edns ? 1 : 0);
+        w.putName(name);
+        w.putShort(type.getCode());
+        w.putShort(1);
+        if (edns) {
+            w.putByte(0);
+            w.putShort(RRCode.OPT.getCode());
+            w.putShort(4096);
+            w.putByte(0);
+            w.putByte(0);
+            w.putShort(DNSSEC ? 0x8000 : 0);
+            if (cookie) {
+                w.putShort(12);
+                w.putShort(10);
+                w.putShort(8);
+                w.putBytes(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+            } else {
+                w.putShort(0);
+            }
+        }
+        return w.toByteArray();
+    }
+
+    @Setup
+    public void setUp() {
+        query = query("www.test.com", RRCode.A, false, false, false);
+        cookieQuery = query("www.test.com", RRCode.A, true, false, true);
+        // the OPT record alone, where it starts in cookieQuery
+        opt = java.util.Arrays.copyOfRange(cookieQuery, query.length, cookieQuery.length);
+        header = new Header(cookieQuery);
+        optrr = new OPTRR(opt);
+        optrr.createServerCookie(CLIENT, header);
+    }
+
+    @Benchmark
+    public Header header() {
+        return new Header(query);
+    }
+
+    @Benchmark
+    public Query parseQueries() {
+        final Query q = new Query(query);
+        q.parseQueries(CLIENT);
+        return q;
+    }
+
+    /**
+     * parseQueries with an OPT record and a client cookie, which makes a
+     * server cookie
+     */
+    @Benchmark
+    public Query parseQueriesCookie() {
+        final Query q = new Query(cookieQuery);
+        q.parseQueries(CLIENT);
+        return q;
+    }
+
+    @Benchmark
+    public Map.Entry<String, Integer> parseName() {
+        return Utils.parseName(12, query);
+    }
+
+    @Benchmark
+    public byte[] convertString() {
+        return Utils.convertString("www.test.com");
+    }
+
+    @Benchmark
+    public OPTRR cookie() {
+        final OPTRR o = new OPTRR(opt);
+        o.createServerCookie(CLIENT, header);
+        return o;
+    }
+
+    /**
+     * the OPT record of a response, with the server cookie
+     */
+    @Benchmark
+    public int writeCookie() {
+        writer.clear();
+        optrr.write(writer);
+        return writer.position();
+    }
+}
@@ -0,0 +1,69 @@
+package edu.msudenver.cs.jdnss;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answering a query, from the packet to the response's bytes, for the
+ * kinds of answers JDNSS gives, from test.com or, for the DNSSEC ones,
+ * test.com.signed.  The ResponseCache is off, so every invocation builds
+ * the response; the cache is its own benchmark's business.
+ *
+ * Run from the directory with pom.xml, where the zone files are.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ResponseBenchmark {
+    @Param({"A", "MX", "SOA", "NXDOMAIN", "DNSSEC", "DNSSEC_NXDOMAIN"})
+    public String answer;
+
+    private byte[] query;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final boolean DNSSEC = answer.startsWith("DNSSEC");
+        // the two files are both test.com, so each fork loads just one
+        if (!JDNSS.bindZones.load(DNSSEC ? "test.com.signed" : "test.com")) {
+            throw new IllegalStateException("Couldn't load the zone; run from the project directory");
+        }
+
+        switch (answer) {
+            case "A":
+            case "DNSSEC":
+                query = CodecBenchmark.query("www.test.com", RRCode.A, DNSSEC, DNSSEC, false);
+                break;
+            case "MX":
+                query = CodecBenchmark.query("test.com", RRCode.MX, false, false, false);
+                break;
+            case "SOA":
+                query = CodecBenchmark.query("test.com", RRCode.SOA, false, false, false);
+                break;
+            default:
+                query = CodecBenchmark.query("nothere.test.com", RRCode.A, DNSSEC, DNSSEC, false);
+                break;
+        }
+    }
+
+    @Benchmark
+    public byte[] respond() {
+        final Query q = new Query(query);
+        q.parseQueries("127.0.0.1");
+        return Response.answer(q, true);
+    }
+}
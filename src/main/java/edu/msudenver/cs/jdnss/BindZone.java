@@ -133,6 +133,11 @@ class BindZone extends Zone {
         return v;
     }
 
+    @java.lang.SuppressWarnings("all")
+    Map<RRCode, Map<String, List<RR>>> getTableOfTables() {
+        return this.tableOfTables;
+    }
+
     @java.lang.SuppressWarnings("all")
     public String getName() {
         return this.name;
@@ -0,0 +1,42 @@
+package edu.msudenver.cs.jdnss;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A simple pool of direct ByteBuffers so the NIO listeners don't allocate
+ * (or have the JDK copy through a temporary direct buffer) on every packet.
+ */
+class BufferPool {
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final int bufferSize;
+
+    BufferPool(final int bufferSize, final int initialCount) {
+        assert bufferSize > 0;
+        this.bufferSize = bufferSize;
+        for (int i = 0; i < initialCount; i++) {
+            buffers.offer(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    /**
+     * @return a cleared buffer, allocating a new one if the pool is empty
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(final ByteBuffer buffer) {
+        assert buffer.isDirect() && buffer.capacity() == bufferSize;
+        buffers.offer(buffer);
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+}
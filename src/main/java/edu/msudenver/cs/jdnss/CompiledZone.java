@@ -0,0 +1,173 @@
+package edu.msudenver.cs.jdnss;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A BindZone turned, once it has been parsed, into what queries are
+ * answered from: one node per name, found with a single lookup on the
+ * canonical (lower case, no trailing dot) name, holding every RRset at
+ * that name with its RRSIGs and, where it can be, its RDATA already
+ * encoded.
+ *
+ * Nothing changes after the constructor, and everything is reached
+ * through final fields, so once built a CompiledZone can be handed to any
+ * number of threads and read without locking.
+ */
+class CompiledZone extends Zone {
+    // RDATA with names that are compressed as the response is written
+    private static final Set<RRCode> COMPRESSED = EnumSet.of(RRCode.NS, RRCode.CNAME,
+        RRCode.PTR, RRCode.MX, RRCode.SOA);
+
+    private final String name;
+    private final Map<String, Node> nodes;
+    private final NameFilter filter;
+
+    /**
+     * Everything at one name.
+     */
+    static final class Node {
+        private final Map<RRCode, RRset> rrsets;
+
+        private Node(final Map<RRCode, RRset> rrsets) {
+            this.rrsets = rrsets;
+        }
+
+        /**
+         * @return the RRset of that type, empty if there is none
+         */
+        RRset get(final RRCode type) {
+            final RRset rrset = rrsets.get(type);
+            return rrset == null ? RRset.EMPTY : rrset;
+        }
+
+        @java.lang.SuppressWarnings("all")
+        Map<RRCode, RRset> getRRsets() {
+            return this.rrsets;
+        }
+
+        @java.lang.Override
+        @java.lang.SuppressWarnings("all")
+        public java.lang.String toString() {
+            return "Node(rrsets=" + this.rrsets + ")";
+        }
+    }
+
+    CompiledZone(final BindZone zone) {
+        assert !zone.isEmpty();
+        this.name = zone.getName();
+
+        // canonical name -> type -> records, with RRSIGs under the type
+        // they cover as well as under RRSIG
+        final Map<String, Map<RRCode, List<RR>>> records = new HashMap<>();
+        final Map<String, Map<RRCode, List<RR>>> signatures = new HashMap<>();
+        for (Map.Entry<RRCode, Map<String, List<RR>>> table : zone.getTableOfTables().entrySet()) {
+            for (Map.Entry<String, List<RR>> entry : table.getValue().entrySet()) {
+                final String key = ZoneIndex.canonical(entry.getKey());
+                add(records, key, table.getKey(), entry.getValue());
+                if (table.getKey() == RRCode.RRSIG) {
+                    for (RR rr : entry.getValue()) {
+                        add(signatures, key, ((RRSIG) rr).getTypeCovered(),
+                            Collections.singletonList(rr));
+                    }
+                }
+            }
+        }
+
+        final Map<String, Node> nodes = new HashMap<>();
+        for (Map.Entry<String, Map<RRCode, List<RR>>> entry : records.entrySet()) {
+            final Map<RRCode, List<RR>> covering =
+                signatures.getOrDefault(entry.getKey(), Collections.emptyMap());
+            final Map<RRCode, RRset> rrsets = new EnumMap<>(RRCode.class);
+            for (Map.Entry<RRCode, List<RR>> rrs : entry.getValue().entrySet()) {
+                final List<RR> sigs = covering.get(rrs.getKey());
+                rrsets.put(rrs.getKey(), compile(rrs.getValue(),
+                    sigs == null ? null : compile(sigs, null)));
+            }
+            nodes.put(entry.getKey(), new Node(Collections.unmodifiableMap(rrsets)));
+        }
+        this.nodes = Collections.unmodifiableMap(nodes);
+        this.filter = NameFilter.of(nodes.keySet());
+    }
+
+    private static void add(final Map<String, Map<RRCode, List<RR>>> map, final String name,
+                            final RRCode type, final List<RR> rrs) {
+        map.computeIfAbsent(name, n -> new EnumMap<>(RRCode.class))
+            .computeIfAbsent(type, t -> new ArrayList<>())
+            .addAll(rrs);
+    }
+
+    private static RRset compile(final List<RR> rrs, final RRset signatures) {
+        final List<RR> records = Collections.unmodifiableList(new ArrayList<>(rrs));
+        if (!COMPRESSED.contains(records.get(0).getType())) {
+            for (RR rr : records) {
+                rr.encode();
+            }
+        }
+        return new RRset(records, signatures);
+    }
+
+    /**
+     * @return everything at name, or null if there is nothing
+     */
+    Node getNode(final String name) {
+        // names usually arrive in lower case already, so try as is first
+        final Node node = nodes.get(name);
+        if (node != null) {
+            return node;
+        }
+        final String key = ZoneIndex.canonical(name);
+        return key.equals(name) ? null : nodes.get(key);
+    }
+
+    @Override
+    RRset getRRset(final RRCode type, final String name) {
+        final Node node = getNode(name);
+        return node == null ? RRset.EMPTY : node.get(type);
+    }
+
+    @Override
+    List<RR> get(final RRCode type, final String name) {
+        return getRRset(type, name).getRecords();
+    }
+
+    @Override
+    boolean isEmpty() {
+        return false;
+    }
+
+    @Override
+    NameFilter getNameFilter() {
+        return filter;
+    }
+
+    @Override
+    boolean contains(final String name) {
+        return getNode(name) != null;
+    }
+
+    /**
+     * @return canonical name -> node, unmodifiable
+     */
+    @java.lang.SuppressWarnings("all")
+    Map<String, Node> getNodes() {
+        return this.nodes;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public String getName() {
+        return this.name;
+    }
+
+    @java.lang.Override
+    @java.lang.SuppressWarnings("all")
+    public java.lang.String toString() {
+        return "CompiledZone(name=" + this.name + ", nodes=" + this.nodes.size() + ")";
+    }
+}
@@ -45,66 +45,68 @@ class DBConnection {
         }
     }
 
+    /**
+     * Find the closest enclosing domain with one query for the name and
+     * each of its parents, e.g. www.test.com, test.com and com, so the
+     * cost is O(labels) however many domains there are.  Names are
+     * compared as the database compares them, with and without a
+     * trailing dot.
+     */
     DBZone getZone(final String name) {
-        logger.traceEntry(new ObjectMessage(name)); 
-        Set<String> v = new HashSet<>();
+        logger.traceEntry(new ObjectMessage(name));
 
-        // first, get them all
-        ResultSet rs = null;
-        try {
-        	logger.traceEntry("\"SELECT * FROM domains\"=={}",name);
-            rs = stmt.executeQuery("SELECT * FROM domains");
+        final List<String> suffixes = new ArrayList<>();
+        final String key = ZoneIndex.canonical(name);
+        for (int start = 0; start < key.length(); ) {
+            final String suffix = key.substring(start);
+            suffixes.add(suffix);
+            suffixes.add(suffix + ".");
+            final int dot = key.indexOf('.', start);
+            start = dot == -1 ? key.length() : dot + 1;
+        }
+        if (suffixes.isEmpty()) {
+            return new DBZone();
+        }
 
-            while (rs.next()) {
-            	String nameTmp = rs.getString("name");
-            	logger.traceEntry("\"SELECT * FROM domains\" {}==>{}",name, nameTmp);
-                v.add(nameTmp);
+        final StringBuilder sql = new StringBuilder("SELECT id, name FROM domains WHERE name IN (?");
+        for (int i = 1; i < suffixes.size(); i++) {
+            sql.append(", ?");
+        }
+        sql.append(')');
+
+        // the closest as it is in the database, and as compared
+        String longest = null;
+        String canonical = null;
+        int domainId = 0;
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < suffixes.size(); i++) {
+                ps.setString(i + 1, suffixes.get(i));
             }
-            logger.traceEntry("r=={}",v);
-        } catch (SQLException sqle) {
-            try {
-                stmt.close();
-                conn.close();
-            } catch (SQLException sqle2) {
-                logger.catching(sqle);
-                return new DBZone();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    final String found = rs.getString("name");
+                    logger.trace("{} ==> {}", name, found);
+                    if (canonical == null
+                        || ZoneIndex.canonical(found).length() > canonical.length()) {
+                        longest = found;
+                        canonical = ZoneIndex.canonical(found);
+                        domainId = rs.getInt("id");
+                    }
+                }
             }
-        }
-
-        if (v.size() == 0) {
-        	logger.traceEntry("return new DBZone()");
+        } catch (SQLException sqle) {
+            logger.catching(sqle);
             return new DBZone();
         }
 
-        // then, find the longest that matches
-        String s = Utils.findLongest(v, name);
-        logger.trace(s);
-
-        // then, populate a DBZone with what we found.
-        try {
-        	logger.traceEntry("SELECT * FROM domains WHERE name = '{}..'", s);
-            rs = stmt.executeQuery ("SELECT * FROM domains WHERE name = '" + s + "'");
-
-            rs.next();
-            final int domainId = rs.getInt("id");
-            logger.trace("domainId={}",domainId);
-
-            assert !rs.next();
-
-            logger.traceExit(s);
-            return new DBZone(s, domainId, this);
-        } catch (SQLException sqle) {
-            try {
-                rs.close();
-                stmt.close();
-                conn.close();
-            } catch (SQLException sqle2) {
-                logger.catching(sqle);
-                return new DBZone();
-            }
+        if (longest == null) {
+            logger.traceEntry("return new DBZone()");
+            return new DBZone();
         }
 
-        return new DBZone();
+        logger.trace("domainId={}", domainId);
+        logger.traceExit(longest);
+        return new DBZone(longest, domainId, this);
     }
 
     public List<RR> get(final RRCode type, final String name, final int domainId) {
@@ -26,6 +26,10 @@ class DBZone extends Zone {
 
     public String getName() { return zoneName; }
 
+    // the database can change under us, so nothing is kept
+    @Override
+    NegativeResponse getNegativeResponse(final boolean DNSSEC) { return null; }
+
     public ArrayList<RR> get(final RRCode type, final String name)
     {
         logger.traceEntry(new ObjectMessage(type));
@@ -0,0 +1,478 @@
+package edu.msudenver.cs.jdnss;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a DNS message front to back in one growable buffer, instead of
+ * gluing arrays together with Utils.combine.  Anything written can be
+ * taken back with reset(position), which is how a section that turns out
+ * not to fit is dropped, and fields whose value isn't known until later
+ * (RDLENGTH, the header counts) are patched with the put...At methods.
+ *
+ * A writer is meant to be reused: clear() it and start the next message.
+ *
+ * A compressing writer remembers where every name suffix it writes with
+ * putCompressedName starts, so a later name ending the same way is written
+ * as its own first labels and a pointer back (RFC 1035 4.1.4).  The
+ * suffixes are kept as offsets into what has been written, in a hash table
+ * of int arrays, and compared with the bytes there ignoring case, so once
+ * the arrays have grown to fit a message nothing is allocated to compress
+ * the next one.
+ */
+class DnsMessageWriter {
+    static final int DEFAULT_CAPACITY = 512;
+    // a pointer has 14 bits for the offset
+    private static final int MAXIMUM_POINTER = 0x3fff;
+    private static final int POINTER = 0xc000;
+    private static final int BUCKETS = 64;
+
+    private ByteBuffer buffer;
+    // the first suffix in each bucket, by hash, or -1; null if this writer
+    // doesn't compress
+    private final int[] heads;
+    // for each suffix, in the order written: where it is, its hash and the
+    // next in its bucket
+    private int[] offsets;
+    private int[] hashes;
+    private int[] next;
+    private int count;
+    // where putCompressedName wrote pointers; null unless keepPointers()
+    private List<Integer> pointers;
+
+    DnsMessageWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    DnsMessageWriter(final int initialCapacity) {
+        this(initialCapacity, false);
+    }
+
+    DnsMessageWriter(final int initialCapacity, final boolean compressing) {
+        buffer = ByteBuffer.allocate(initialCapacity);
+        if (compressing) {
+            heads = new int[BUCKETS];
+            Arrays.fill(heads, -1);
+            offsets = new int[32];
+            hashes = new int[32];
+            next = new int[32];
+        } else {
+            heads = null;
+        }
+    }
+
+    private void ensure(final int needed) {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2,
+            buffer.position() + needed));
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+
+    /**
+     * Forget everything written and start over.
+     */
+    void clear() {
+        buffer.clear();
+        if (heads != null && count > 0) {
+            Arrays.fill(heads, -1);
+            count = 0;
+        }
+        if (pointers != null) {
+            pointers.clear();
+        }
+    }
+
+    /**
+     * @return how many bytes have been written, i.e. where the next goes
+     */
+    int position() {
+        return buffer.position();
+    }
+
+    /**
+     * Throw away everything written at or after position.
+     */
+    void reset(final int position) {
+        assert position >= 0 && position <= buffer.position();
+        buffer.position(position);
+        // names that were thrown away can't be pointed to; they are the
+        // last ones added, and so first in their buckets
+        if (heads != null) {
+            while (count > 0 && offsets[count - 1] >= position) {
+                count--;
+                final int bucket = hashes[count] & (BUCKETS - 1);
+                assert heads[bucket] == count;
+                heads[bucket] = next[count];
+            }
+        }
+        if (pointers != null) {
+            pointers.removeIf(offset -> offset >= position);
+        }
+    }
+
+    /**
+     * Reserve count zero bytes to be filled in later.
+     *
+     * @return where they start
+     */
+    int skip(final int count) {
+        ensure(count);
+        int position = buffer.position();
+        for (int i = 0; i < count; i++) {
+            buffer.put((byte) 0);
+        }
+        return position;
+    }
+
+    void putByte(final int value) {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    void putShort(final int value) {
+        ensure(2);
+        buffer.putShort((short) value);
+    }
+
+    void putInt(final int value) {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    void putBytes(final byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+        putBytes(bytes, 0, bytes.length);
+    }
+
+    void putBytes(final byte[] bytes, final int offset, final int length) {
+        ensure(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Copies length bytes starting at offset in source, without touching
+     * source's position, so any number of threads can copy from one buffer.
+     */
+    void putBytes(final ByteBuffer source, final int offset, final int length) {
+        ensure(length);
+        buffer.put(buffer.position(), source, offset, length);
+        buffer.position(buffer.position() + length);
+    }
+
+    void putShortAt(final int position, final int value) {
+        buffer.putShort(position, (short) value);
+    }
+
+    void putBytesAt(final int position, final byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(position + i, bytes[i]);
+        }
+    }
+
+    /**
+     * Writes a domain name as labels, e.g. "www.foobar.org" as
+     * 3www6foobar3org0, byte for byte what Utils.convertString makes.
+     */
+    void putName(final String name) {
+        assert name != null && !name.equals("");
+
+        // like convertString, always name.length() + 2 bytes, so a trailing
+        // dot ends up as an extra zero
+        ensure(name.length() + 2);
+        final int end = buffer.position() + name.length() + 2;
+        int start = 0;
+        while (start < name.length()) {
+            int dot = name.indexOf('.', start);
+            int stop = dot == -1 ? name.length() : dot;
+            if (stop > start) {
+                buffer.put((byte) (stop - start));
+                for (int i = start; i < stop; i++) {
+                    buffer.put((byte) name.charAt(i));
+                }
+            }
+            start = stop + 1;
+        }
+        while (buffer.position() < end) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    /**
+     * Writes a domain name, ending it with a pointer to an earlier name if
+     * it ends the same way.  Names in RRSIG and NSEC RDATA must not be
+     * compressed (RFC 4034), so those use putName.  A writer that isn't
+     * compressing just calls putName.
+     */
+    void putCompressedName(final String name) {
+        assert name != null;
+
+        if (heads == null) {
+            putName(name);
+            return;
+        }
+
+        int end = name.length();
+        if (end > 0 && name.charAt(end - 1) == '.') {
+            end--;
+        }
+
+        // the suffixes of this name, from here on, aren't all written yet
+        final int begin = buffer.position();
+        int start = 0;
+        while (start < end) {
+            final int dot = name.indexOf('.', start);
+            final int stop = dot == -1 ? end : Math.min(dot, end);
+            if (stop == start) {
+                start++;
+                continue;
+            }
+
+            final int hash = hash(name, start, end);
+            final int offset = find(name, start, end, hash, begin);
+            if (offset >= 0) {
+                if (pointers != null) {
+                    pointers.add(buffer.position());
+                }
+                putShort(POINTER | offset);
+                return;
+            }
+            if (buffer.position() <= MAXIMUM_POINTER) {
+                add(buffer.position(), hash);
+            }
+
+            ensure(stop - start + 1);
+            buffer.put((byte) (stop - start));
+            for (int i = start; i < stop; i++) {
+                buffer.put((byte) name.charAt(i));
+            }
+            start = stop + 1;
+        }
+        putByte(0);
+    }
+
+    boolean isCompressing() {
+        return heads != null;
+    }
+
+    /**
+     * From now on remember where every pointer is written, for a message
+     * that will be copied somewhere else and have its pointers moved; see
+     * NegativeResponse.
+     */
+    void keepPointers() {
+        pointers = new ArrayList<>();
+    }
+
+    /**
+     * @return where the pointers written since keepPointers() are
+     */
+    List<Integer> getPointers() {
+        assert pointers != null;
+        return pointers;
+    }
+
+    /**
+     * Remember where the suffixes of the name at offset start, as
+     * putCompressedName would have, for a name that was copied in, without
+     * pointers, from somewhere else.
+     */
+    void rememberName(final int offset) {
+        if (heads == null) {
+            return;
+        }
+
+        int position = offset;
+        while (position <= MAXIMUM_POINTER) {
+            final int length = buffer.get(position) & 0xff;
+            if (length == 0 || (length & 0xc0) != 0) {
+                return;
+            }
+            final int hash = hash(position);
+            if (find(position, hash) < 0) {
+                add(position, hash);
+            }
+            position += length + 1;
+        }
+    }
+
+    private void add(final int offset, final int hash) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+            next = Arrays.copyOf(next, count * 2);
+        }
+        final int bucket = hash & (BUCKETS - 1);
+        offsets[count] = offset;
+        hashes[count] = hash;
+        next[count] = heads[bucket];
+        heads[bucket] = count;
+        count++;
+    }
+
+    private static int lower(final int b) {
+        return b >= 'A' && b <= 'Z' ? b + 'a' - 'A' : b;
+    }
+
+    // FNV-1a over each label's length and its bytes in lower case
+    private static int mix(final int hash, final int b) {
+        return (hash ^ b) * 0x01000193;
+    }
+
+    /**
+     * @return the hash of the labels of name from start up to end
+     */
+    private static int hash(final String name, int start, final int end) {
+        int hash = 0x811c9dc5;
+        while (start < end) {
+            final int dot = name.indexOf('.', start);
+            final int stop = dot == -1 ? end : Math.min(dot, end);
+            if (stop > start) {
+                hash = mix(hash, stop - start);
+                for (int i = start; i < stop; i++) {
+                    hash = mix(hash, lower((byte) name.charAt(i) & 0xff));
+                }
+            }
+            start = stop + 1;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the hash of the labels written at offset, following pointers
+     */
+    private int hash(int offset) {
+        int hash = 0x811c9dc5;
+        int length;
+        while ((length = buffer.get(offset) & 0xff) != 0) {
+            if ((length & 0xc0) == 0xc0) {
+                offset = buffer.getShort(offset) & 0x3fff;
+                continue;
+            }
+            hash = mix(hash, length);
+            for (int i = 1; i <= length; i++) {
+                hash = mix(hash, lower(buffer.get(offset + i) & 0xff));
+            }
+            offset += length + 1;
+        }
+        return hash;
+    }
+
+    /**
+     * @return where the labels of name from start up to end were written
+     * before limit, or -1
+     */
+    private int find(final String name, final int start, final int end, final int hash,
+                     final int limit) {
+        for (int i = heads[hash & (BUCKETS - 1)]; i >= 0; i = next[i]) {
+            if (hashes[i] == hash && offsets[i] < limit
+                && matches(name, start, end, offsets[i])) {
+                return offsets[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return where the same labels as those at offset were written before,
+     * or -1
+     */
+    private int find(final int offset, final int hash) {
+        for (int i = heads[hash & (BUCKETS - 1)]; i >= 0; i = next[i]) {
+            if (hashes[i] == hash && matches(offset, offsets[i])) {
+                return offsets[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return where the next label starts at or after offset, past pointers
+     */
+    private int follow(int offset) {
+        while ((buffer.get(offset) & 0xc0) == 0xc0) {
+            offset = buffer.getShort(offset) & 0x3fff;
+        }
+        return offset;
+    }
+
+    private boolean matches(final String name, int start, final int end, int offset) {
+        while (start < end) {
+            final int dot = name.indexOf('.', start);
+            final int stop = dot == -1 ? end : Math.min(dot, end);
+            if (stop > start) {
+                offset = follow(offset);
+                if ((buffer.get(offset) & 0xff) != stop - start) {
+                    return false;
+                }
+                for (int i = start; i < stop; i++) {
+                    if (lower((byte) name.charAt(i) & 0xff)
+                        != lower(buffer.get(offset + 1 + i - start) & 0xff)) {
+                        return false;
+                    }
+                }
+                offset += stop - start + 1;
+            }
+            start = stop + 1;
+        }
+        return buffer.get(follow(offset)) == 0;
+    }
+
+    private boolean matches(int a, int b) {
+        while (true) {
+            a = follow(a);
+            b = follow(b);
+            final int length = buffer.get(a) & 0xff;
+            if (length != (buffer.get(b) & 0xff)) {
+                return false;
+            }
+            if (length == 0) {
+                return true;
+            }
+            for (int i = 1; i <= length; i++) {
+                if (lower(buffer.get(a + i) & 0xff) != lower(buffer.get(b + i) & 0xff)) {
+                    return false;
+                }
+            }
+            a += length + 1;
+            b += length + 1;
+        }
+    }
+
+    /**
+     * Writes a <character-string>: one length byte and then the characters;
+     * see Utils.toCS.
+     */
+    void putCharacterString(final String s) {
+        assert s != null && !s.equals("");
+
+        ensure(s.length() + 1);
+        buffer.put((byte) s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buffer.put((byte) s.charAt(i));
+        }
+    }
+
+    /**
+     * @return a copy of what has been written
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * @return a copy of the bytes from start up to end
+     */
+    byte[] toByteArray(final int start, final int end) {
+        assert start >= 0 && start <= end && end <= buffer.position();
+        return Arrays.copyOfRange(buffer.array(), start, end);
+    }
+}
@@ -10,6 +10,18 @@ enum ErrorCodes {
         this.code = code;
     }
 
+    /**
+     * @return the name of rcode, or RCODE and its number if it has none here
+     */
+    static String name(final int rcode) {
+        for (ErrorCodes e : values()) {
+            if (e.code == rcode) {
+                return e.name();
+            }
+        }
+        return "RCODE" + rcode;
+    }
+
     @java.lang.SuppressWarnings("all")
     public int getCode() {
         return this.code;
@@ -30,7 +30,7 @@ public class HTTPS {
             HttpsServer httpsServer = HttpsServer.create(address, JDNSS.jargs.backlog);
             setSSLParameters(httpsServer);
             httpsServer.createContext("/dns-query", new MyHandler());
-            httpsServer.setExecutor(null);
+            httpsServer.setExecutor(Pools.newPool(JDNSS.jargs.getThreads()));
             httpsServer.start();
         } catch (Exception exception) {
             System.out.println("Failed to create HTTPS server on port " + port + " of localhost");
@@ -73,7 +73,7 @@ public class HTTPS {
     private class MyHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange t) throws IOException {
-            Response r = null;
+            byte[] r = null;
 
             switch (t.getRequestMethod()) {
                 case "GET":
@@ -90,7 +90,7 @@ public class HTTPS {
 
             t.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
 
-            String encoded_response = Base64.getEncoder().encodeToString(r.getBytes());
+            String encoded_response = Base64.getEncoder().encodeToString(r);
             System.out.println(encoded_response);
             t.sendResponseHeaders(200, encoded_response.getBytes().length);
 
@@ -99,9 +99,8 @@ public class HTTPS {
            }
         }
 
-        private Response postResponse(HttpExchange t) throws IOException {
+        private byte[] postResponse(HttpExchange t) throws IOException {
             Query q;
-            Response r;
             List<Byte> ar = new ArrayList<>();
 
             try (InputStream is = t.getRequestBody()) {
@@ -117,26 +116,29 @@ public class HTTPS {
                 post_query[count++] = b;
             }
 
+            final long start = System.nanoTime();
             q = new Query(post_query);
             q.parseQueries(t.getRemoteAddress().toString());
-            r = new Response(q, false);
-            return r;
+            final byte[] b = Response.answer(q, false);
+            Metrics.Listener.HTTPS.answered(start);
+            return b;
         }
 
-        private Response getResponse(HttpExchange t) {
+        private byte[] getResponse(HttpExchange t) {
             Query q;
-            Response r;
             String[] both = t.getRequestURI().getQuery().split("=");
             byte[] decoded = Base64.getDecoder().decode(both[1]);
 
+            final long start = System.nanoTime();
             q = new Query(decoded);
             q.parseQueries(t.getRemoteAddress().toString());
-            r = new Response(q, false);
-            return r;
+            final byte[] b = Response.answer(q, false);
+            Metrics.Listener.HTTPS.answered(start);
+            return b;
         }
     }
 
-    private SSLContext getSslContext() throws Exception {
+    static SSLContext getSslContext() throws Exception {
         assert JDNSS.jargs.keystoreFile != null;
         assert JDNSS.jargs.keystorePassword!= null;
 
@@ -4,7 +4,7 @@ package edu.msudenver.cs.jdnss;
 
  
 import org.apache.logging.log4j.Logger;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 class Header {
     private final Logger logger = JDNSS.logger;
@@ -19,7 +19,8 @@ class Header {
     private static final int CD_BIT = 16;
     private static final int RCODE_BITS = 15;
     // http://www.networksorcery.com/enp/protocol/dns.htm
-    private byte[] header = new byte[12];
+    // the response's header, made by build()
+    private byte[] header;
     private final int id;
     private final int opcode;
     private final int numQuestions;
@@ -41,6 +42,9 @@ class Header {
 
     void build() {
         checkValidity();
+        if (header == null) {
+            header = new byte[12];
+        }
         header[0] = Utils.getByte(id, 2);
         header[1] = Utils.getByte(id, 1);
         header[2] = (byte) ((QR ? 128 : 0) | (opcode << 3) | (AA ? 4 : 0) | (TC ? 2 : 0) | (RD ? 1 : 0));
@@ -72,18 +76,22 @@ class Header {
     }
 
     Header(byte[] buffer) {
-        final int HEADER_LENGTH = 12;
-        // only grab the header from the query
-        this.header = Arrays.copyOf(buffer, HEADER_LENGTH);
-        id = Utils.addThem(buffer[0], buffer[1]);
-        numQuestions = Utils.addThem(buffer[4], buffer[5]);
-        numAnswers = Utils.addThem(buffer[6], buffer[7]);
-        numAuthorities = Utils.addThem(buffer[8], buffer[9]);
-        numAdditionals = Utils.addThem(buffer[10], buffer[11]);
+        this(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * Reads the header at the start of buffer, without copying it.
+     */
+    Header(ByteBuffer buffer) {
+        id = buffer.getShort(0) & 0xffff;
+        numQuestions = buffer.getShort(4) & 0xffff;
+        numAnswers = buffer.getShort(6) & 0xffff;
+        numAuthorities = buffer.getShort(8) & 0xffff;
+        numAdditionals = buffer.getShort(10) & 0xffff;
         assert numQuestions > 0;
         assert numAnswers == 0;
         assert numAuthorities == 0;
-        int flags = Utils.addThem(buffer[2], buffer[3]);
+        int flags = buffer.getShort(2) & 0xffff;
         QR = (flags & QR_BIT) != 0;
         assert !QR;
         opcode = (flags & OPCODE_BITS) >> 11;
@@ -193,6 +201,11 @@ class Header {
         return this.numAnswers;
     }
 
+    @java.lang.SuppressWarnings("all")
+    void setNumAnswers(final int numAnswers) {
+        this.numAnswers = numAnswers;
+    }
+
     @java.lang.SuppressWarnings("all")
     public int getNumAuthorities() {
         return this.numAuthorities;
@@ -8,9 +8,6 @@ import org.apache.logging.log4j.core.config.Configurator;
 import org.apache.logging.log4j.message.ObjectMessage;
 
 import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
-
 import java.util.concurrent.ThreadLocalRandom;
 
 class JDNSS {
@@ -18,12 +15,14 @@ class JDNSS {
     static final jdnssArgs jargs = new jdnssArgs();
     static final Logger logger = LogManager.getLogger("JDNSS");
     private static DBConnection DBConnection;
+    // replaced with one of --responseCacheSize before anything listens
+    static ResponseCache responseCache = new ResponseCache(0);
 
     static {
         ClassLoader.getSystemClassLoader().setDefaultAssertionStatus(true);
 	}
 
-    private static final Map<String, Zone> bindZones = new HashMap<>();
+    static final ZoneRegistry bindZones = new ZoneRegistry();
 
     /**
      * Finds the Zone associated with the domain name passed in
@@ -33,40 +32,21 @@ class JDNSS {
      * @see Zone
      */
     static Zone getZone(String name) {
-    	logger.traceEntry("OM:{}::{}",new ObjectMessage(name),name);
-    	String longest = null; // DAD TODO
-    	try {
-    		  longest = Utils.findLongest(bindZones.keySet(), name);
-    		logger.traceEntry("longest={}",longest);
-    	}catch(Exception e) {
-    		logger.debug("longest={}",e);
-    	}
-
-        if (longest == null) {
-        	logger.traceEntry("longest=={}",longest);
-            if (DBConnection != null) {
-            	logger.traceEntry("DBConnection=={}",DBConnection);
-                DBZone d = DBConnection.getZone(name);
-                logger.traceEntry("DBZone=={}",d);
-                if (d.isEmpty()) { 
-                    return new BindZone();
-                }
-                return d;
-            }
-            return new BindZone();
-        }else {
-        	logger.traceEntry("longest==={}",longest);
-        }
+        logger.traceEntry(new ObjectMessage(name));
 
-        Zone z = bindZones.getOrDefault(longest, null);
-        if (z == null) {
-        	logger.traceEntry(" return new BindZone();==={}",z);
-            return new BindZone();
-        }else {
-        	logger.traceEntry("z==={}",z);
+        Zone z = bindZones.findLongest(name);
+        if (z != null) {
+            return logger.traceExit(z);
         }
 
-        return z;
+        if (DBConnection != null) {
+            DBZone d = DBConnection.getZone(name);
+            logger.trace("DBZone=={}", d);
+            if (!d.isEmpty()) {
+                return d;
+            }
+        }
+        return new BindZone();
     }
 
     private static void start() {
@@ -75,7 +55,9 @@ class JDNSS {
 
             switch(parts[0]) {
                 case "TCP": case "TLS": new TCP(parts).start(); break;
+                case "TCPNIO": case "TLSNIO": new TCPNIO(parts).start(); break;
                 case "UDP": new UDP(parts).start(); break;
+                case "UDPNIO": new UDPNIO(parts).start(); break;
                 case "MC": new MC(parts).start(); break;
                 case "HTTPS": new HTTPS(parts); break;
                 default:
@@ -84,6 +66,10 @@ class JDNSS {
                     break;
             }
         }
+
+        if (jargs.getMetricsPort() > 0) {
+            Metrics.serve(jargs.getMetricsAddress(), jargs.getMetricsPort());
+        }
     }
 
     private static void setLogLevel() {
@@ -116,6 +102,13 @@ class JDNSS {
 
         logger.info("Starting JDNSS version " + new Version().getVersion());
 
+        try {
+            Pools.checkExecutor(jargs.getExecutor());
+        } catch (IllegalArgumentException iae) {
+            logger.error(iae.getMessage());
+            System.exit(-1);
+        }
+
         if (jargs.getDBClass() != null && jargs.getDBURL() != null) {
         	logger.debug(" process over DB ...");
             DBConnection = new DBConnection(jargs.getDBClass(), jargs.getDBURL(),
@@ -124,6 +117,8 @@ class JDNSS {
         }
 
 
+        responseCache = new ResponseCache(jargs.getResponseCacheSize());
+
         if (jargs.serverSecret == null){
             jargs.serverSecret = String.valueOf(ThreadLocalRandom.current().nextLong());
         }
@@ -139,33 +134,45 @@ class JDNSS {
             return;
         }
 
-        for (String anAdditional: additional) {
-        	logger.debug("process additional == {}...",anAdditional);
-            try {
-                String name = new File(anAdditional).getName();
+        if (jargs.isCompile()) {
+            System.exit(compile(additional) ? 0 : 1);
+        }
 
-                logger.info("Parsing: " + anAdditional);
+        bindZones.loadAll(additional, jargs.getZoneLoadThreads());
 
-                if (name.endsWith(".db")) {
-                    name = name.replaceFirst("\\.db$", "");
-                    if (Character.isDigit(name.charAt(0))) {
-                        name = Utils.reverseIP(name);
-                        name = name + ".in-addr.arpa";
-                        logger.info("name: {}",name);
-                    }
-                }
-
-                BindZone zone = new BindZone(name);
-                new Parser(new FileInputStream(anAdditional), zone).RRs();
-                logger.trace(zone);
+        bindZones.reloadOnSignal();
+        if (jargs.isWatchZones()) {
+            bindZones.watch();
+        }
+    }
 
-                // the name of the zone can change while parsing, so use
-                // the name from the zone
-                bindZones.put(zone.getName(), zone);
-            } catch (FileNotFoundException e) {
-                logger.warn("Couldn't open file " + anAdditional + '\n' + e);
+    /**
+     * Write each zone file out as an image a MappedZone can serve from,
+     * next to it with MappedZone.EXTENSION added.
+     *
+     * @return whether they all could be
+     */
+    private static boolean compile(final String[] files) {
+        boolean ok = true;
+        for (String file : files) {
+            try {
+                if (file.endsWith(MappedZone.EXTENSION)) {
+                    logger.warn(file + " is already compiled");
+                    continue;
+                }
+                final Zone zone = ZoneRegistry.parse(file);
+                if (!(zone instanceof CompiledZone)) {
+                    logger.warn("--compile and --offHeapZones don't go together");
+                    return false;
+                }
+                MappedZone.write((CompiledZone) zone, new File(file + MappedZone.EXTENSION).toPath());
+                System.out.println(file + " -> " + file + MappedZone.EXTENSION);
+            } catch (IOException e) {
+                logger.error("Couldn't compile " + file + ": " + e);
+                ok = false;
             }
         }
+        return ok;
     }
 
     /**
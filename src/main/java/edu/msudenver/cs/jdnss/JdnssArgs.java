@@ -11,6 +11,16 @@ enum JDNSSLogLevels {
 class jdnssArgs {
     private boolean once = false;
     private int threads = 10;
+    private String executor = "fixed"; // or virtual
+    private int tcpIdleTimeout = 10000; // milliseconds
+    private int tcpMaxQueries = 100; // per connection
+    private int responseCacheSize = 10000; // responses; 0 turns it off
+    private boolean watchZones = false; // reload zone files when they change
+    private boolean compile = false; // write the zone files out for MappedZone and exit
+    private boolean offHeapZones = false; // keep zones in direct buffers instead of on the heap
+    private int zoneLoadThreads = Runtime.getRuntime().availableProcessors(); // parsing zone files at startup
+    private int metricsPort = 0; // Prometheus text at /metrics; 0 turns it off
+    private String metricsAddress = "127.0.0.1";
     private boolean version;
     String[] IPaddresses = {"TLS@0.0.0.0@853", "TCP@0.0.0.0@53", "UDP@0.0.0.0@53"}; // "MC@224.0.0.251@5353"
     int backlog = 4;
@@ -37,6 +47,56 @@ class jdnssArgs {
         return this.threads;
     }
 
+    @java.lang.SuppressWarnings("all")
+    public String getExecutor() {
+        return this.executor;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getTcpIdleTimeout() {
+        return this.tcpIdleTimeout;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getTcpMaxQueries() {
+        return this.tcpMaxQueries;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getResponseCacheSize() {
+        return this.responseCacheSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getZoneLoadThreads() {
+        return this.zoneLoadThreads;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getMetricsPort() {
+        return this.metricsPort;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public String getMetricsAddress() {
+        return this.metricsAddress;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public boolean isCompile() {
+        return this.compile;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public boolean isOffHeapZones() {
+        return this.offHeapZones;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public boolean isWatchZones() {
+        return this.watchZones;
+    }
+
     @java.lang.SuppressWarnings("all")
     public boolean isVersion() {
         return this.version;
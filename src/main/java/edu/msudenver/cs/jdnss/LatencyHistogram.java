@@ -0,0 +1,77 @@
+package edu.msudenver.cs.jdnss;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in microseconds into buckets a sixty-fourth of a power
+ * of two wide, so a percentile is within about 1.5% of the true one
+ * whatever the range, from a few microseconds to minutes, in a fixed 15 KB.
+ * Recording is safe from any number of threads and allocates nothing.
+ */
+class LatencyHistogram {
+    // the exact values below this, then SUB_BUCKETS buckets per power of two
+    private static final int EXACT = 128;
+    private static final int SUB_BUCKETS = 64;
+    private static final int BUCKETS = SUB_BUCKETS * 30;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    static int index(final long micros) {
+        if (micros < EXACT) {
+            return (int) Math.max(0, micros);
+        }
+        // keep the top seven bits
+        final int shift = 63 - Long.numberOfLeadingZeros(micros) - 6;
+        return Math.min(BUCKETS - 1, SUB_BUCKETS * shift + (int) (micros >>> shift));
+    }
+
+    /**
+     * @return the smallest value that goes into bucket index
+     */
+    static long lowest(final int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        return (long) (index - SUB_BUCKETS * shift) << shift;
+    }
+
+    void record(final long micros) {
+        counts.incrementAndGet(index(micros));
+    }
+
+    long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param fraction e.g. 0.99 for the 99th percentile
+     * @return the value that fraction of the latencies are at or under, to
+     * the width of its bucket; 0 if there are none
+     */
+    long percentile(final double fraction) {
+        final long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return lowest(i);
+            }
+        }
+        return lowest(BUCKETS - 1);
+    }
+
+    @java.lang.Override
+    @java.lang.SuppressWarnings("all")
+    public java.lang.String toString() {
+        return "LatencyHistogram(count=" + this.count() + ")";
+    }
+}
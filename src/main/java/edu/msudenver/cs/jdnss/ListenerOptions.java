@@ -0,0 +1,39 @@
+package edu.msudenver.cs.jdnss;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The optional key=value settings that may follow the address and port in
+ * a listener specification, e.g. "UDPNIO@0.0.0.0@53@loops=4@rcvbuf=1048576".
+ */
+class ListenerOptions {
+    private final Map<String, String> options = new HashMap<>();
+
+    ListenerOptions(final String[] parts) {
+        for (int i = 3; i < parts.length; i++) {
+            String[] keyAndValue = parts[i].split("=", 2);
+            if (keyAndValue.length != 2) {
+                throw new IllegalArgumentException("Invalid listener option: " + parts[i]);
+            }
+            options.put(keyAndValue[0], keyAndValue[1]);
+        }
+    }
+
+    int getInt(final String key, final int defaultValue) {
+        String value = options.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value);
+    }
+
+    String getString(final String key, final String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    @java.lang.Override
+    public java.lang.String toString() {
+        return "ListenerOptions(options=" + this.options + ")";
+    }
+}
@@ -0,0 +1,380 @@
+package edu.msudenver.cs.jdnss;
+
+import edu.msudenver.cs.jclo.JCLO;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a file of queries against a DNS server over UDP, TCP, TLS or
+ * DoH and reports what came back, for capacity tests without dnsperf:
+ *
+ * java -cp jdnss-2.1.jar edu.msudenver.cs.jdnss.LoadGenerator \
+ *     --port=5300 --protocol=UDP --qps=50000 --duration=30 queries.txt
+ *
+ * Each line of the file is a name and optionally a type (A if there is
+ * none), as dnsperf takes them; blank lines and lines starting with ; or #
+ * are skipped.  The file is gone through over and over until --duration
+ * seconds are up.
+ *
+ * In the closed loop (the default) there are always --outstanding queries
+ * waiting, and a new one goes out as each is answered or times out, so
+ * what is measured is the rate the server keeps up with.  In the open loop
+ * queries go out at --qps whatever the server does, one that would be more
+ * than --outstanding is counted as not sent rather than delayed, and a
+ * query's latency is from when it was due, not when it was sent, so a
+ * generator that falls behind can't hide the server's stalls.  --qps also
+ * caps the rate of the closed loop.
+ */
+public class LoadGenerator {
+    // an ID is free when nothing was sent with it
+    private static final long FREE = 0;
+    private static final int IDS = 65536;
+
+    static class Args {
+        private String server = "127.0.0.1";
+        private int port = 53;
+        private String protocol = "UDP"; // TCP, TLS or DoH
+        private String mode = "closed"; // or open
+        private int qps = 0; // 0 for as fast as the closed loop goes
+        private int outstanding = 100; // at most 65536
+        private int duration = 10; // seconds
+        private int timeout = 5000; // milliseconds
+        private int clients = 1; // sockets, connections or HTTP clients
+        private int queriesPerConnection = 100; // TCP and TLS; as the server's --tcpMaxQueries
+        private boolean edns = true;
+        private boolean dnssec = false; // set DO
+        private boolean insecure = false; // TLS and DoH: accept any certificate
+        private boolean help;
+        private String[] additional;
+    }
+
+    private final Args args;
+    private final List<byte[]> queries;
+    // by ID: when the query was sent (or due) as nanoseconds since origin
+    private final AtomicLongArray sent = new AtomicLongArray(IDS);
+    private final int permits;
+    private final Semaphore outstanding;
+    private final long origin = System.nanoTime() - 1;
+    private final long timeoutNanos;
+    private int nextId;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder[] rcodes = new LongAdder[16];
+    private final LongAdder queriesSent = new LongAdder();
+    private final LongAdder notSent = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder truncated = new LongAdder();
+    private final LongAdder unexpected = new LongAdder();
+    private final LongAdder answered = new LongAdder();
+
+    LoadGenerator(final Args args, final List<byte[]> queries) {
+        this.args = args;
+        this.queries = queries;
+        permits = Math.min(IDS, Math.max(1, args.outstanding));
+        outstanding = new Semaphore(permits);
+        timeoutNanos = TimeUnit.MILLISECONDS.toNanos(args.timeout);
+        for (int i = 0; i < rcodes.length; i++) {
+            rcodes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return the queries in in, as CodecBenchmark.query makes them, with
+     * ID 0
+     */
+    static List<byte[]> readQueries(final Reader in, final boolean edns, final boolean DNSSEC)
+        throws IOException {
+        final List<byte[]> queries = new ArrayList<>();
+        final BufferedReader reader = new BufferedReader(in);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith(";") || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.split("\\s+");
+            final RRCode type = fields.length > 1 ? RRCode.valueOf(fields[1].toUpperCase())
+                : RRCode.A;
+            queries.add(query(fields[0], type, edns, DNSSEC));
+        }
+        return queries;
+    }
+
+    static byte[] query(final String name, final RRCode type, final boolean edns,
+                        final boolean DNSSEC) {
+        final DnsMessageWriter w = new DnsMessageWriter();
+        w.putShort(0);
+        // RD
+        w.putShort(0x0100);
+        w.putShort(1);
+        w.putShort(0);
+        w.putShort(0);
+        w.putShort(edns ? 1 : 0);
+        w.putName(name);
+        w.putShort(type.getCode());
+        w.putShort(1);
+        if (edns) {
+            w.putByte(0);
+            w.putShort(RRCode.OPT.getCode());
+            w.putShort(1232);
+            w.putByte(0);
+            w.putByte(0);
+            w.putShort(DNSSEC ? 0x8000 : 0);
+            w.putShort(0);
+        }
+        return w.toByteArray();
+    }
+
+    private long now() {
+        return System.nanoTime() - origin;
+    }
+
+    /**
+     * @return an ID no query is waiting on
+     */
+    private int claim() {
+        while (sent.get(nextId) != FREE) {
+            nextId = (nextId + 1) & (IDS - 1);
+        }
+        final int id = nextId;
+        nextId = (nextId + 1) & (IDS - 1);
+        return id;
+    }
+
+    /**
+     * Count a response; called by the transport's threads.
+     */
+    void received(final byte[] response) {
+        final long arrived = now();
+        if (response.length < 12) {
+            errors.increment();
+            return;
+        }
+        final int id = (response[0] & 0xff) << 8 | response[1] & 0xff;
+        final long when = sent.getAndSet(id, FREE);
+        if (when == FREE) {
+            // after it timed out, or not ours
+            unexpected.increment();
+            return;
+        }
+        outstanding.release();
+        answered.increment();
+        latencies.record(TimeUnit.NANOSECONDS.toMicros(arrived - when));
+        // see Header for the bits
+        if ((response[2] & 0x02) != 0) {
+            truncated.increment();
+        }
+        rcodes[response[3] & 0x0f].increment();
+    }
+
+    /**
+     * Give up on the queries that have waited longer than --timeout.
+     */
+    void expire() {
+        final long now = now();
+        for (int id = 0; id < IDS; id++) {
+            final long when = sent.get(id);
+            if (when != FREE && now - when > timeoutNanos && sent.compareAndSet(id, when, FREE)) {
+                timeouts.increment();
+                outstanding.release();
+            }
+        }
+    }
+
+    /**
+     * Send queries for --duration seconds, then wait up to --timeout for
+     * the last of them.
+     *
+     * @return how long queries were being sent, in nanoseconds
+     */
+    long run(final LoadTransport transport) throws InterruptedException {
+        final boolean open = "open".equalsIgnoreCase(args.mode);
+        final long interval = args.qps > 0 ? TimeUnit.SECONDS.toNanos(1) / args.qps : 0;
+        final long start = now();
+        final long end = start + TimeUnit.SECONDS.toNanos(args.duration);
+        final long sweep = Math.max(TimeUnit.MILLISECONDS.toNanos(1), timeoutNanos / 10);
+
+        final Thread expirer = LoadTransport.daemon("expirer", () -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(sweep);
+                expire();
+            }
+        });
+
+        long due = start;
+        int next = 0;
+        while (true) {
+            long now = now();
+            if (interval > 0) {
+                if (due - now > 0) {
+                    LockSupport.parkNanos(due - now);
+                    now = now();
+                }
+                if (due >= end) {
+                    break;
+                }
+            } else if (now >= end) {
+                break;
+            }
+
+            if (open) {
+                if (!outstanding.tryAcquire()) {
+                    notSent.increment();
+                    due += interval;
+                    continue;
+                }
+            } else if (!outstanding.tryAcquire(Math.max(0, end - now), TimeUnit.NANOSECONDS)) {
+                break;
+            }
+
+            final int id = claim();
+            final byte[] query = queries.get(next).clone();
+            next = (next + 1) % queries.size();
+            query[0] = (byte) (id >> 8);
+            query[1] = (byte) id;
+            final long when = open ? due : now();
+            sent.set(id, when);
+            due += interval;
+            try {
+                transport.send(id, query);
+                queriesSent.increment();
+            } catch (IOException ioe) {
+                errors.increment();
+                if (sent.compareAndSet(id, when, FREE)) {
+                    outstanding.release();
+                }
+            }
+        }
+        final long sending = now() - start;
+
+        // everything is answered or has timed out when all the permits are back
+        if (outstanding.tryAcquire(permits, timeoutNanos + 2 * sweep, TimeUnit.NANOSECONDS)) {
+            outstanding.release(permits);
+        }
+        expirer.interrupt();
+        return sending;
+    }
+
+    void report(final PrintStream out, final long nanos) {
+        final double seconds = nanos / 1e9;
+        final long sentCount = queriesSent.sum();
+        final long answeredCount = answered.sum();
+
+        out.printf("Queries sent:         %d%n", sentCount);
+        out.printf("Queries completed:    %d (%.2f%%)%n", answeredCount,
+            percent(answeredCount, sentCount));
+        out.printf("Queries lost:         %d (%.2f%%)%n", timeouts.sum(),
+            percent(timeouts.sum(), sentCount));
+        if (notSent.sum() > 0) {
+            out.printf("Not sent:             %d (over --outstanding)%n", notSent.sum());
+        }
+        if (errors.sum() > 0) {
+            out.printf("Errors:               %d%n", errors.sum());
+        }
+        if (unexpected.sum() > 0) {
+            out.printf("Late or unexpected:   %d%n", unexpected.sum());
+        }
+        out.printf("Run time (s):         %.3f%n", seconds);
+        out.printf("Queries per second:   %.1f%n", answeredCount / seconds);
+        out.printf("TC set:               %d (%.2f%%)%n", truncated.sum(),
+            percent(truncated.sum(), answeredCount));
+
+        out.print("Response codes:      ");
+        for (int rcode = 0; rcode < rcodes.length; rcode++) {
+            final long count = rcodes[rcode].sum();
+            if (count > 0) {
+                out.printf(" %s %d (%.2f%%)", ErrorCodes.name(rcode), count, percent(count, answeredCount));
+            }
+        }
+        out.println();
+
+        out.println("Latency (ms):");
+        final double[] fractions = {0.5, 0.9, 0.99, 0.999, 1};
+        final String[] names = {"p50", "p90", "p99", "p99.9", "max"};
+        for (int i = 0; i < fractions.length; i++) {
+            out.printf("  %-8s %10.3f%n", names[i], latencies.percentile(fractions[i]) / 1e3);
+        }
+    }
+
+    private static double percent(final long part, final long whole) {
+        return whole == 0 ? 0 : part * 100.0 / whole;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    long getAnswered() {
+        return this.answered.sum();
+    }
+
+    @java.lang.SuppressWarnings("all")
+    long getTimeouts() {
+        return this.timeouts.sum();
+    }
+
+    @java.lang.SuppressWarnings("all")
+    long getTruncated() {
+        return this.truncated.sum();
+    }
+
+    @java.lang.SuppressWarnings("all")
+    long getRcode(final int rcode) {
+        return this.rcodes[rcode].sum();
+    }
+
+    public static void main(String[] arguments) throws IOException, InterruptedException {
+        final Args args = new Args();
+        final JCLO jclo = new JCLO(args);
+        jclo.parse(arguments);
+
+        if (args.help || args.additional == null || args.additional.length != 1) {
+            System.out.println("LoadGenerator [options...] queryfile");
+            System.out.println(jclo.usage());
+            System.exit(args.help ? 0 : 1);
+        }
+
+        final List<byte[]> queries;
+        try (Reader in = new FileReader(args.additional[0])) {
+            queries = readQueries(in, args.edns || args.dnssec, args.dnssec);
+        }
+        if (queries.isEmpty()) {
+            System.err.println("No queries in " + args.additional[0]);
+            System.exit(1);
+        }
+
+        final LoadGenerator generator = new LoadGenerator(args, queries);
+        final LoadTransport transport = LoadTransport.open(args.protocol,
+            new InetSocketAddress(args.server, args.port), Math.max(1, args.clients),
+            args.queriesPerConnection, args.insecure, generator::received);
+        final long nanos;
+        try {
+            nanos = generator.run(transport);
+        } finally {
+            transport.close();
+        }
+        generator.report(System.out, nanos);
+    }
+
+    @java.lang.Override
+    @java.lang.SuppressWarnings("all")
+    public java.lang.String toString() {
+        return "LoadGenerator(protocol=" + this.args.protocol + ", mode=" + this.args.mode
+            + ", queries=" + this.queries.size() + ")";
+    }
+}
@@ -0,0 +1,393 @@
+package edu.msudenver.cs.jdnss;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * How LoadGenerator gets queries to a server and responses back, one
+ * subclass per kind of listener.  send() must not wait for the response;
+ * each response, as it arrives, goes to the Consumer given when the
+ * transport was made, on whatever thread read it.
+ */
+abstract class LoadTransport {
+    private static final int MAXIMUM_MESSAGE = 65535;
+
+    final Consumer<byte[]> responses;
+
+    LoadTransport(final Consumer<byte[]> responses) {
+        this.responses = responses;
+    }
+
+    /**
+     * @param id the query's ID, for spreading queries over clients
+     */
+    abstract void send(int id, byte[] query) throws IOException;
+
+    abstract void close();
+
+    /**
+     * @param protocol UDP, TCP, TLS or DoH
+     * @param clients how many sockets, connections or HTTP clients to use
+     */
+    static LoadTransport open(final String protocol, final InetSocketAddress server,
+                              final int clients, final int queriesPerConnection,
+                              final boolean insecure, final Consumer<byte[]> responses)
+        throws IOException {
+        switch (protocol.toUpperCase()) {
+            case "UDP":
+                return new UDPTransport(server, clients, responses);
+            case "TCP":
+                return new StreamTransport(SocketFactory.getDefault(), server, clients,
+                    queriesPerConnection, responses);
+            case "TLS":
+                return new StreamTransport(insecure ? trustAll().getSocketFactory()
+                    : SSLSocketFactory.getDefault(), server, clients, queriesPerConnection,
+                    responses);
+            case "DOH":
+                return new DoHTransport(server, clients, insecure, responses);
+            default:
+                throw new IllegalArgumentException("Unknown protocol: " + protocol);
+        }
+    }
+
+    /**
+     * For servers with self-signed certificates, such as one started from
+     * a test keystore.
+     */
+    static SSLContext trustAll() {
+        final TrustManager[] trustAll = {new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }};
+        try {
+            final SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, trustAll, null);
+            return context;
+        } catch (GeneralSecurityException gse) {
+            throw new IllegalStateException(gse);
+        }
+    }
+
+    static Thread daemon(final String name, final Runnable runnable) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Connected datagram sockets, each with a thread reading its responses.
+     */
+    static class UDPTransport extends LoadTransport {
+        private final DatagramChannel[] channels;
+
+        UDPTransport(final InetSocketAddress server, final int clients,
+                     final Consumer<byte[]> responses) throws IOException {
+            super(responses);
+            channels = new DatagramChannel[clients];
+            for (int i = 0; i < clients; i++) {
+                final DatagramChannel channel = DatagramChannel.open();
+                channel.connect(server);
+                channels[i] = channel;
+                daemon("UDP receiver " + i, () -> receive(channel));
+            }
+        }
+
+        private void receive(final DatagramChannel channel) {
+            final ByteBuffer buffer = ByteBuffer.allocate(MAXIMUM_MESSAGE);
+            while (channel.isOpen()) {
+                try {
+                    buffer.clear();
+                    channel.read(buffer);
+                    buffer.flip();
+                    final byte[] response = new byte[buffer.remaining()];
+                    buffer.get(response);
+                    responses.accept(response);
+                } catch (IOException ioe) {
+                    // closed, or ICMP port unreachable; the queries time out
+                    if (!channel.isOpen()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        void send(final int id, final byte[] query) throws IOException {
+            channels[id % channels.length].write(ByteBuffer.wrap(query));
+        }
+
+        void close() {
+            for (DatagramChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * TCP or TLS: queries are pipelined on each connection, each preceded
+     * by its length, and each connection has a thread reading responses.
+     * The server closes a connection after --tcpMaxQueries queries, so
+     * after queriesPerConnection a client moves to a new connection and
+     * leaves the old one to finish.
+     *
+     * Clients are independent, each with its own lock, and connections
+     * are made on a connector thread: the next one is started when the
+     * current one is three quarters used, so the connect (and any TLS
+     * handshake) is normally done before it is wanted, and isn't timed
+     * as the server's latency.
+     */
+    static class StreamTransport extends LoadTransport {
+        private final SocketFactory factory;
+        private final InetSocketAddress server;
+        private final int queriesPerConnection;
+        private final Client[] clients;
+        private final ExecutorService connector = Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, "stream connector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private volatile boolean closed;
+
+        StreamTransport(final SocketFactory factory, final InetSocketAddress server,
+                        final int clients, final int queriesPerConnection,
+                        final Consumer<byte[]> responses) {
+            super(responses);
+            this.factory = factory;
+            this.server = server;
+            this.queriesPerConnection = queriesPerConnection;
+            this.clients = new Client[clients];
+            for (int i = 0; i < clients; i++) {
+                this.clients[i] = new Client(i);
+            }
+        }
+
+        /**
+         * One connection and the thread reading its responses.
+         */
+        private final class Connection {
+            private final Socket socket;
+            private final OutputStream out;
+
+            Connection(final int client) throws IOException {
+                socket = factory.createSocket(server.getAddress(), server.getPort());
+                socket.setTcpNoDelay(true);
+                out = socket.getOutputStream();
+                final DataInputStream in = new DataInputStream(socket.getInputStream());
+                daemon("stream receiver " + client, () -> receive(socket, in));
+            }
+        }
+
+        private final class Client {
+            private final int index;
+            // guarded by this
+            private Connection current;
+            private Future<Connection> next;
+            private int sent;
+
+            Client(final int index) {
+                this.index = index;
+                next = connectLater();
+            }
+
+            private Future<Connection> connectLater() {
+                return connector.submit(() -> new Connection(index));
+            }
+
+            /**
+             * @return the connection to send on, waiting for the next one
+             * only if it isn't ready yet
+             */
+            private Connection connection() throws IOException {
+                if (current != null && !current.socket.isClosed()
+                    && sent < queriesPerConnection) {
+                    if (next == null && sent >= queriesPerConnection * 3 / 4) {
+                        next = connectLater();
+                    }
+                    return current;
+                }
+
+                if (current != null && !current.socket.isClosed()) {
+                    // done sending; the receiver closes it at EOF
+                    current.socket.shutdownOutput();
+                }
+                if (next == null) {
+                    next = connectLater();
+                }
+                final Future<Connection> f = next;
+                next = null;
+                sent = 0;
+                try {
+                    current = f.get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ie);
+                } catch (ExecutionException ee) {
+                    current = null;
+                    throw ee.getCause() instanceof IOException
+                        ? (IOException) ee.getCause() : new IOException(ee.getCause());
+                }
+                if (current.socket.isClosed()) {
+                    // the server gave up on it while it waited
+                    current = new Connection(index);
+                }
+                return current;
+            }
+
+            synchronized void send(final byte[] framed) throws IOException {
+                if (closed) {
+                    throw new IOException("closed");
+                }
+                final Connection connection = connection();
+                sent++;
+                try {
+                    connection.out.write(framed);
+                } catch (IOException ioe) {
+                    connection.socket.close();
+                    throw ioe;
+                }
+            }
+
+            synchronized void close() {
+                if (current != null) {
+                    try {
+                        current.socket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                if (next != null) {
+                    next.cancel(true);
+                    try {
+                        if (next.isDone() && !next.isCancelled()) {
+                            next.get().socket.close();
+                        }
+                    } catch (InterruptedException | ExecutionException | IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        private void receive(final Socket socket, final DataInputStream in) {
+            try {
+                while (true) {
+                    final byte[] response = new byte[in.readUnsignedShort()];
+                    in.readFully(response);
+                    responses.accept(response);
+                }
+            } catch (EOFException eofe) {
+                // the server closed it
+            } catch (IOException ioe) {
+                // reset or closed; unanswered queries time out
+            }
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        void send(final int id, final byte[] query) throws IOException {
+            final byte[] framed = new byte[query.length + 2];
+            framed[0] = (byte) (query.length >> 8);
+            framed[1] = (byte) query.length;
+            System.arraycopy(query, 0, framed, 2, query.length);
+            clients[id % clients.length].send(framed);
+        }
+
+        void close() {
+            closed = true;
+            for (Client client : clients) {
+                client.close();
+            }
+            connector.shutdownNow();
+        }
+    }
+
+    /**
+     * DNS over HTTPS, RFC 8484: each query POSTed to /dns-query as
+     * application/dns-message.  JDNSS's HTTPS listener answers with the
+     * response in base64 and no content type, which is taken as well as
+     * a raw application/dns-message body.
+     */
+    static class DoHTransport extends LoadTransport {
+        private static final String TYPE = "application/dns-message";
+
+        private final HttpClient[] clients;
+        private final URI uri;
+
+        DoHTransport(final InetSocketAddress server, final int clients, final boolean insecure,
+                     final Consumer<byte[]> responses) {
+            super(responses);
+            if (insecure) {
+                // read once, when the first HttpClient is built
+                System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+            }
+            uri = URI.create("https://" + server.getHostString() + ":" + server.getPort()
+                + "/dns-query");
+            this.clients = new HttpClient[clients];
+            for (int i = 0; i < clients; i++) {
+                final HttpClient.Builder builder = HttpClient.newBuilder();
+                if (insecure) {
+                    builder.sslContext(trustAll());
+                }
+                this.clients[i] = builder.build();
+            }
+        }
+
+        void send(final int id, final byte[] query) {
+            final HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", TYPE)
+                .header("Accept", TYPE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(query))
+                .build();
+            clients[id % clients.length].sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenAccept(response -> {
+                    // anything else is left to time out, as a lost datagram is
+                    if (response.statusCode() == 200) {
+                        responses.accept(body(response));
+                    }
+                });
+        }
+
+        static byte[] body(final HttpResponse<byte[]> response) {
+            if (response.headers().firstValue("Content-Type").orElse("").startsWith(TYPE)) {
+                return response.body();
+            }
+            return Base64.getDecoder().decode(response.body());
+        }
+
+        void close() {
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package edu.msudenver.cs.jdnss;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A zone served from a compiled image outside the heap: either a file
+ * mapped into memory, so that starting up costs a checksum over the file
+ * and a NameFilter made from the hashes in it instead of a parse, and the
+ * records live in the page cache; or, with --offHeapZones, a direct
+ * buffer built as the zone file is loaded.  Either way a record costs no
+ * objects until it is asked for, which is what lets zones with millions
+ * of records (big reverse zones, say) be served without gigabytes of heap
+ * and the collections that go with it.
+ *
+ * An image is written by --compile (see write()) and is, big-endian:
+ *
+ * header, 32 bytes:
+ *   int magic "JDNZ", short version, short 0,
+ *   long CRC32 of everything after the header,
+ *   int table offset, int table slots (a power of two),
+ *   int zone name offset, int node count
+ * the zone name: a length byte and the name
+ * the nodes, one per name:
+ *   a length byte and the canonical name, short record count, and then
+ *   each record: short type, short type covered (RRSIGs, otherwise 0),
+ *   int TTL, short RDATA length, RDATA in wire format, uncompressed
+ * the table: an int per slot, the offset of a node or 0, placed by the
+ *   name's NameFilter.hash and linear probing
+ * the hashes: each node's NameFilter.hash, an int each in node order, so
+ *   the NameFilter is made without reading the names
+ *
+ * Records with names in their RDATA that Response reads (NS, CNAME, MX,
+ * SOA) are turned back into the usual RR objects when asked for, those of
+ * the zone's SOA and NS once, when the image is opened; everything else,
+ * PTRs included, is handed out as a WireRR that copies its RDATA straight
+ * from the image, uncompressed.
+ */
+class MappedZone extends Zone {
+    static final String EXTENSION = ".jdnssz";
+
+    private static final int MAGIC = 0x4a444e5a;
+    private static final short VERSION = 3;
+    private static final int HEADER_LENGTH = 32;
+
+    // read-only, and only ever read with absolute gets, so it is shared by
+    // every thread without copying
+    private final ByteBuffer image;
+    private final String name;
+    private final int tableOffset;
+    private final int tableSlots;
+    private final NameFilter filter;
+    // every answer looks these up, so they are decoded once
+    private final int apex;
+    private final RRset soa;
+    private final RRset ns;
+
+    private MappedZone(final ByteBuffer image) throws IOException {
+        if (image.capacity() < HEADER_LENGTH || image.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled zone");
+        }
+        if (image.getShort(4) != VERSION) {
+            throw new IOException("Compiled zone version " + image.getShort(4)
+                + ", expected " + VERSION);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(image.duplicate().position(HEADER_LENGTH));
+        if (crc.getValue() != image.getLong(8)) {
+            throw new IOException("Compiled zone checksum mismatch");
+        }
+
+        this.image = image;
+        this.tableOffset = image.getInt(16);
+        this.tableSlots = image.getInt(20);
+        this.name = readString(image.getInt(24));
+
+        final int[] hashes = new int[image.getInt(28)];
+        final int hashesOffset = tableOffset + tableSlots * 4;
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = image.getInt(hashesOffset + i * 4);
+        }
+        this.filter = new NameFilter(hashes);
+
+        this.apex = find(name);
+        this.soa = apex < 0 ? RRset.EMPTY : lookup(RRCode.SOA, name, apex, true);
+        this.ns = apex < 0 ? RRset.EMPTY : lookup(RRCode.NS, name, apex, true);
+    }
+
+    /**
+     * Map a compiled zone.
+     *
+     * @throws IOException if it can't be read or isn't a good image
+     */
+    static MappedZone open(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedZone(image);
+        }
+    }
+
+    /**
+     * Copy zone into a direct buffer, after which zone (and the BindZone it
+     * came from) can be collected.  The buffer is sized first and written
+     * in place, so nothing else the size of the image is made on the way.
+     *
+     * @throws UncheckedIOException if the image would be too big
+     */
+    static MappedZone offHeap(final CompiledZone zone) {
+        try {
+            final ByteBuffer direct = ByteBuffer.allocateDirect(size(zone));
+            image(zone, direct);
+            return new MappedZone(direct);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write zone as an image.  It goes to a temporary file that is then
+     * renamed, so a server that has the old image mapped keeps reading the
+     * old one; the file is mapped and written in place, like offHeap.
+     */
+    static void write(final CompiledZone zone, final Path path) throws IOException {
+        final int size = size(zone);
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            final MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            image(zone, image);
+            image.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return how many bytes zone's image takes
+     * @throws IOException if that's more than the int offsets in an image
+     * can reach
+     */
+    static int size(final CompiledZone zone) throws IOException {
+        final Map<String, CompiledZone.Node> nodes = zone.getNodes();
+        long size = HEADER_LENGTH + 1 + zone.getName().length();
+        for (Map.Entry<String, CompiledZone.Node> entry : nodes.entrySet()) {
+            size += 1 + entry.getKey().length() + 2;
+            for (RRset rrset : entry.getValue().getRRsets().values()) {
+                for (RR rr : rrset.getRecords()) {
+                    size += 10 + rr.getBytes().length;
+                }
+            }
+        }
+        size += 4L * slots(nodes.size()) + 4L * nodes.size();
+        return checkSize(zone.getName(), size);
+    }
+
+    /**
+     * @return size, if an image can be that big
+     */
+    static int checkSize(final String name, final long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Zone " + name + " needs a " + size
+                + " byte image; images can be at most " + Integer.MAX_VALUE + " bytes");
+        }
+        return (int) size;
+    }
+
+    // twice the nodes, rounded up to a power of two
+    private static int slots(final int nodes) {
+        return Integer.highestOneBit(Math.max(nodes, 1) * 2 - 1) * 2;
+    }
+
+    /**
+     * Write zone's image into image, which must be exactly size(zone)
+     * bytes from position 0.
+     */
+    private static void image(final CompiledZone zone, final ByteBuffer image) {
+        final Map<String, CompiledZone.Node> nodes = zone.getNodes();
+
+        image.position(HEADER_LENGTH);
+        final int nameOffset = image.position();
+        putString(image, zone.getName());
+
+        final int slots = slots(nodes.size());
+        final int[] table = new int[slots];
+        final int[] hashes = new int[nodes.size()];
+        int n = 0;
+        for (Map.Entry<String, CompiledZone.Node> entry : nodes.entrySet()) {
+            hashes[n] = NameFilter.hash(entry.getKey());
+            int slot = spread(hashes[n++]) & (slots - 1);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            table[slot] = image.position();
+            writeNode(image, entry.getKey(), entry.getValue());
+        }
+
+        final int tableOffset = image.position();
+        for (int offset : table) {
+            image.putInt(offset);
+        }
+        for (int h : hashes) {
+            image.putInt(h);
+        }
+        assert !image.hasRemaining();
+
+        final CRC32 crc = new CRC32();
+        crc.update(image.duplicate().position(HEADER_LENGTH));
+        image.putInt(0, MAGIC);
+        image.putShort(4, VERSION);
+        image.putLong(8, crc.getValue());
+        image.putInt(16, tableOffset);
+        image.putInt(20, slots);
+        image.putInt(24, nameOffset);
+        image.putInt(28, nodes.size());
+        image.clear();
+    }
+
+    private static void writeNode(final ByteBuffer image, final String name,
+                                  final CompiledZone.Node node) {
+        putString(image, name);
+        final int count = image.position();
+        image.position(count + 2);
+        int records = 0;
+        for (Map.Entry<RRCode, RRset> rrset : node.getRRsets().entrySet()) {
+            // the RRSIGs are all in the RRSIG set too, so signatures are left
+            for (RR rr : rrset.getValue().getRecords()) {
+                final byte[] rdata = rr.getBytes();
+                image.putShort((short) rr.getType().getCode());
+                image.putShort((short) (rr instanceof RRSIG
+                    ? ((RRSIG) rr).getTypeCovered().getCode() : 0));
+                image.putInt(rr.getTtl());
+                image.putShort((short) rdata.length);
+                image.put(rdata);
+                records++;
+            }
+        }
+        image.putShort(count, (short) records);
+    }
+
+    private static void putString(final ByteBuffer image, final String s) {
+        assert s.length() <= 255;
+        image.put((byte) s.length());
+        for (int i = 0; i < s.length(); i++) {
+            image.put((byte) s.charAt(i));
+        }
+    }
+
+    private String readString(final int offset) {
+        final int length = image.get(offset) & 0xff;
+        final char[] c = new char[length];
+        for (int i = 0; i < length; i++) {
+            c[i] = (char) (image.get(offset + 1 + i) & 0xff);
+        }
+        return new String(c);
+    }
+
+    // NameFilter.hash is in lower case and leaves off a trailing dot, so
+    // a name is found as it was asked for, without making it canonical
+    private static int hash(final String name) {
+        return spread(NameFilter.hash(name));
+    }
+
+    private static int spread(final int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the offset of the node for name, in any case and with or
+     * without a trailing dot, or -1
+     */
+    private int find(final String name) {
+        int slot = hash(name) & (tableSlots - 1);
+        while (true) {
+            final int node = image.getInt(tableOffset + slot * 4);
+            if (node == 0) {
+                return -1;
+            }
+            if (matches(node, name)) {
+                return node;
+            }
+            slot = (slot + 1) & (tableSlots - 1);
+        }
+    }
+
+    private boolean matches(final int offset, final String name) {
+        final int length = name.endsWith(".") ? name.length() - 1 : name.length();
+        if ((image.get(offset) & 0xff) != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final int c = Character.toLowerCase(name.charAt(i));
+            if ((image.get(offset + 1 + i) & 0xff) != (c & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    RRset getRRset(final RRCode type, final String name) {
+        return getRRset(type, name, true);
+    }
+
+    @Override
+    RRset getRRset(final RRCode type, final String name, final boolean signed) {
+        final int node = find(name);
+        if (node < 0) {
+            return RRset.EMPTY;
+        }
+        if (node == apex && type == RRCode.SOA) {
+            return soa;
+        }
+        if (node == apex && type == RRCode.NS) {
+            return ns;
+        }
+        return lookup(type, name, node, signed);
+    }
+
+    /**
+     * The records are counted before they are made, so each RRset is made
+     * at its size, and the RRSIGs are neither counted nor made unless
+     * they're wanted.  Records are named as name was asked for.
+     */
+    private RRset lookup(final RRCode type, final String name, final int node,
+                         final boolean signed) {
+        final int code = type.getCode();
+        final int rrsig = signed ? RRCode.RRSIG.getCode() : -1;
+        final int first = node + 1 + (image.get(node) & 0xff) + 2;
+        final int count = image.getShort(first - 2) & 0xffff;
+        int records = 0;
+        int signatures = 0;
+        for (int i = 0, offset = first; i < count; i++) {
+            final int rrType = image.getShort(offset) & 0xffff;
+            if (rrType == code) {
+                records++;
+            } else if (rrType == rrsig && (image.getShort(offset + 2) & 0xffff) == code) {
+                signatures++;
+            }
+            offset += 10 + (image.getShort(offset + 8) & 0xffff);
+        }
+        if (records == 0) {
+            return RRset.EMPTY;
+        }
+
+        final RR[] rrs = new RR[records];
+        final RR[] sigs = signatures == 0 ? null : new RR[signatures];
+        records = 0;
+        signatures = 0;
+        for (int i = 0, offset = first; i < count; i++) {
+            final int rrType = image.getShort(offset) & 0xffff;
+            final int ttl = image.getInt(offset + 4);
+            final int length = image.getShort(offset + 8) & 0xffff;
+            final int rdata = offset + 10;
+            if (rrType == code) {
+                rrs[records++] = decode(name, type, ttl, rdata, length);
+            } else if (rrType == rrsig && (image.getShort(offset + 2) & 0xffff) == code) {
+                sigs[signatures++] = new WireRR(name, RRCode.RRSIG, ttl, image, rdata, length);
+            }
+            offset = rdata + length;
+        }
+        return new RRset(Arrays.asList(rrs),
+            sigs == null ? null : new RRset(Arrays.asList(sigs), null));
+    }
+
+    @Override
+    List<RR> get(final RRCode type, final String name) {
+        return getRRset(type, name, false).getRecords();
+    }
+
+    private RR decode(final String owner, final RRCode type, final int ttl, final int offset,
+                      final int length) {
+        switch (type) {
+            case NS:
+                return new NSRR(owner, ttl, readName(offset));
+            case CNAME:
+                return new CNAMERR(owner, ttl, readName(offset));
+            case MX:
+                return new MXRR(owner, ttl, readName(offset + 2), image.getShort(offset) & 0xffff);
+            case SOA:
+                // five ints end the RDATA
+                final int numbers = offset + length - 20;
+                int contact = skipName(offset);
+                while (contact < numbers - 1 && image.get(contact) == 0) {
+                    contact++;
+                }
+                return new SOARR(owner, readName(offset), readName(contact),
+                    image.getInt(numbers), image.getInt(numbers + 4), image.getInt(numbers + 8),
+                    image.getInt(numbers + 12), image.getInt(numbers + 16), ttl);
+            default:
+                return new WireRR(owner, type, ttl, image, offset, length);
+        }
+    }
+
+    /**
+     * @return the uncompressed wire name at offset as text, without the
+     * trailing dot
+     */
+    private String readName(int offset) {
+        final StringBuilder sb = new StringBuilder();
+        int length;
+        while ((length = image.get(offset) & 0xff) != 0) {
+            if (sb.length() > 0) {
+                sb.append('.');
+            }
+            for (int i = 1; i <= length; i++) {
+                sb.append((char) (image.get(offset + i) & 0xff));
+            }
+            offset += length + 1;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the offset just past the zero byte ending the wire name at
+     * offset; names written like Utils.convertString may have another zero
+     * for a trailing dot after that
+     */
+    private int skipName(int offset) {
+        int length;
+        while ((length = image.get(offset) & 0xff) != 0) {
+            offset += length + 1;
+        }
+        offset++;
+        return offset;
+    }
+
+    @Override
+    boolean isEmpty() {
+        return false;
+    }
+
+    @Override
+    NameFilter getNameFilter() {
+        return filter;
+    }
+
+    @Override
+    boolean contains(final String name) {
+        return find(name) >= 0;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public String getName() {
+        return this.name;
+    }
+
+    @java.lang.Override
+    @java.lang.SuppressWarnings("all")
+    public java.lang.String toString() {
+        return "MappedZone(name=" + this.name + ", nodes=" + this.image.getInt(28) + ")";
+    }
+}
@@ -0,0 +1,211 @@
+package edu.msudenver.cs.jdnss;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of what the server has answered since it started, published in
+ * the Prometheus text format at /metrics on --metricsPort:
+ *
+ * jdnss_query_duration_seconds  a histogram per listener of the time from
+ *                               having a query's bytes to having its
+ *                               response's, leaving out the network
+ * jdnss_responses_total         by rcode
+ * jdnss_queries_by_type_total   by the type asked for
+ * jdnss_zone_queries_total      by the zone that answered
+ *
+ * and the NameFilter, ResponseCache and zone counts.  Everything is a
+ * LongAdder, which threads increment without contending, and nothing is
+ * allocated to count a query; the sums are only added up when scraped.
+ * Counting is always on, it costs a few increments a query, and so is
+ * the same whether or not anything reads it.
+ */
+class Metrics {
+    private static final Logger logger = JDNSS.logger;
+
+    // upper bounds of the buckets, in nanoseconds
+    private static final long[] BOUNDS = {
+        25_000, 50_000, 100_000, 250_000, 500_000,
+        1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000, 50_000_000,
+        100_000_000, 250_000_000, 500_000_000, 1_000_000_000
+    };
+
+    /**
+     * Where a query came in; the NIO listeners count as the listeners
+     * they stand in for.
+     */
+    enum Listener {
+        UDP, TCP, TLS, HTTPS, MC;
+
+        // the last is for everything over the last bound
+        private final LongAdder[] buckets = adders(BOUNDS.length + 1);
+        private final LongAdder nanos = new LongAdder();
+
+        /**
+         * Count a query answered that started at start, from System.nanoTime().
+         */
+        void answered(final long start) {
+            final long elapsed = System.nanoTime() - start;
+            int i = 0;
+            while (i < BOUNDS.length && elapsed > BOUNDS[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            nanos.add(elapsed);
+        }
+    }
+
+    private static final LongAdder[] rcodes = adders(16);
+    private static final LongAdder[] types = adders(RRCode.values().length);
+    private static final Map<String, LongAdder> zones = new ConcurrentHashMap<>();
+
+    private static LongAdder[] adders(final int n) {
+        final LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Count a response by its rcode, the type asked for and the zone that
+     * answered, if there was one.
+     */
+    static void answered(final Query query, final byte[] response) {
+        rcodes[response[3] & 0x0f].increment();
+        final Queries[] queries = query.getQueries();
+        if (queries != null && queries.length > 0) {
+            types[queries[0].getType().ordinal()].increment();
+        }
+        final Zone zone = query.getZone();
+        if (zone != null && zone.getName() != null) {
+            zone.getQueries().increment();
+        }
+    }
+
+    /**
+     * @return the counter of queries zone answered; the same one for every
+     * Zone of that name, so it keeps counting across reloads
+     */
+    static LongAdder zone(final String name) {
+        return zones.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Serve /metrics on port until the server stops.
+     */
+    static void serve(final String address, final int port) {
+        try {
+            final HttpServer server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getByName(address), port), 0);
+            server.createContext("/metrics", exchange -> {
+                final byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            });
+            // scrapes are rare; one thread is plenty
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                final Thread t = new Thread(r, "metrics");
+                t.setDaemon(true);
+                return t;
+            }));
+            server.start();
+            logger.info("Serving metrics on " + address + ":" + port);
+        } catch (IOException ioe) {
+            logger.catching(ioe);
+        }
+    }
+
+    /**
+     * @return everything, in the Prometheus text exposition format
+     */
+    static String scrape() {
+        final StringBuilder sb = new StringBuilder();
+
+        help(sb, "jdnss_query_duration_seconds", "histogram",
+            "Time from reading a query to having its response, by listener.");
+        for (Listener listener : Listener.values()) {
+            final String name = listener.name().toLowerCase();
+            long cumulative = 0;
+            for (int i = 0; i < listener.buckets.length; i++) {
+                cumulative += listener.buckets[i].sum();
+                final String le = i < BOUNDS.length ? seconds(BOUNDS[i]) : "+Inf";
+                sb.append("jdnss_query_duration_seconds_bucket{listener=\"").append(name)
+                    .append("\",le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append("jdnss_query_duration_seconds_sum{listener=\"").append(name).append("\"} ")
+                .append(seconds(listener.nanos.sum())).append('\n');
+            sb.append("jdnss_query_duration_seconds_count{listener=\"").append(name).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+
+        help(sb, "jdnss_responses_total", "counter", "Responses, by rcode.");
+        for (int rcode = 0; rcode < rcodes.length; rcode++) {
+            final long count = rcodes[rcode].sum();
+            if (count > 0) {
+                sb.append("jdnss_responses_total{rcode=\"").append(ErrorCodes.name(rcode))
+                    .append("\"} ").append(count).append('\n');
+            }
+        }
+
+        help(sb, "jdnss_queries_by_type_total", "counter", "Queries, by the type asked for.");
+        for (RRCode type : RRCode.values()) {
+            final long count = types[type.ordinal()].sum();
+            if (count > 0) {
+                sb.append("jdnss_queries_by_type_total{qtype=\"").append(type.name())
+                    .append("\"} ").append(count).append('\n');
+            }
+        }
+
+        help(sb, "jdnss_zone_queries_total", "counter", "Queries, by the zone that answered.");
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(zones).entrySet()) {
+            sb.append("jdnss_zone_queries_total{zone=\"").append(escape(e.getKey()))
+                .append("\"} ").append(e.getValue().sum()).append('\n');
+        }
+
+        help(sb, "jdnss_name_filter_hits_total", "counter",
+            "Queries the zones' NameFilters answered as certainly not there.");
+        sb.append("jdnss_name_filter_hits_total ").append(NameFilter.getHits()).append('\n');
+        help(sb, "jdnss_name_filter_false_positives_total", "counter",
+            "Names the NameFilters let through that weren't there.");
+        sb.append("jdnss_name_filter_false_positives_total ")
+            .append(NameFilter.getFalsePositives()).append('\n');
+
+        help(sb, "jdnss_response_cache_entries", "gauge", "Responses in the ResponseCache.");
+        sb.append("jdnss_response_cache_entries ").append(JDNSS.responseCache.size()).append('\n');
+        help(sb, "jdnss_zones", "gauge", "Zones loaded from files.");
+        sb.append("jdnss_zones ").append(JDNSS.bindZones.size()).append('\n');
+
+        return sb.toString();
+    }
+
+    private static void help(final StringBuilder sb, final String name, final String type,
+                             final String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String seconds(final long nanos) {
+        return Double.toString(nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    // label values are quoted; zone names could, in principle, have anything
+    private static String escape(final String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,159 @@
+package edu.msudenver.cs.jdnss;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The owners of a signed zone's NSECs in canonical order (RFC 4034 6.1),
+ * so that an NXDOMAIN can carry the NSEC whose span covers the name asked
+ * for, and the one covering the wildcard that could have matched it,
+ * rather than one that proves nothing (RFC 4035 3.1.3.2).
+ *
+ * The owners are found once, by following the chain's next names from
+ * the zone's name, and looked up by binary search.  Like the zone, a
+ * chain is never changed once built.
+ */
+class NSECChain {
+    private final String[] owners;
+
+    private NSECChain(final String[] owners) {
+        this.owners = owners;
+    }
+
+    /**
+     * @return the chain, or null if zone has no NSEC at its name
+     */
+    static NSECChain build(final Zone zone) {
+        final List<String> owners = new ArrayList<>();
+        final Set<String> seen = new HashSet<>();
+        String owner = ZoneIndex.canonical(zone.getName());
+        while (seen.add(owner)) {
+            final List<RR> nsec = zone.get(RRCode.NSEC, owner);
+            if (nsec == null || nsec.isEmpty()) {
+                break;
+            }
+            owners.add(owner);
+            owner = ZoneIndex.canonical(next(nsec.get(0).getRdataBytes()));
+        }
+        if (owners.isEmpty()) {
+            return null;
+        }
+        final String[] sorted = owners.toArray(new String[0]);
+        Arrays.sort(sorted, NSECChain::compare);
+        return new NSECChain(sorted);
+    }
+
+    // the next domain name, which starts an NSEC's RDATA uncompressed
+    private static String next(final byte[] rdata) {
+        final StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < rdata.length && rdata[i] != 0) {
+            final int length = rdata[i] & 0x3f;
+            if (sb.length() > 0) {
+                sb.append('.');
+            }
+            sb.append(new String(rdata, i + 1, length, StandardCharsets.UTF_8));
+            i += length + 1;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the owner of the NSEC at name, or of the one whose span
+     * covers it if there is none at name
+     */
+    String cover(final String name) {
+        return owners[index(ZoneIndex.canonical(name))];
+    }
+
+    /**
+     * The closest encloser of a name that isn't there: the longest of its
+     * ancestors that is, which is the longer of what it has in common with
+     * the two ends of the span covering it.
+     */
+    String closestEncloser(final String name) {
+        final String canonical = ZoneIndex.canonical(name);
+        final int i = index(canonical);
+        final String before = common(canonical, owners[i]);
+        final String after = common(canonical, owners[(i + 1) % owners.length]);
+        return after.length() > before.length() ? after : before;
+    }
+
+    // the last owner at or before name; the first is the zone's name,
+    // which is before everything in the zone
+    private int index(final String name) {
+        int low = 0;
+        int high = owners.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (compare(owners[middle], name) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Canonical order: label by label from the right, each compared as
+     * its lower cased bytes, and a name before all of its descendants.
+     * Both names must already be lower cased.
+     */
+    static int compare(final String a, final String b) {
+        int endA = a.length();
+        int endB = b.length();
+        while (endA > 0 && endB > 0) {
+            final int startA = a.lastIndexOf('.', endA - 1) + 1;
+            final int startB = b.lastIndexOf('.', endB - 1) + 1;
+            final int c = compareLabels(a, startA, endA, b, startB, endB);
+            if (c != 0) {
+                return c;
+            }
+            endA = startA - 1;
+            endB = startB - 1;
+        }
+        return Integer.compare(endA, endB);
+    }
+
+    private static int compareLabels(final String a, final int startA, final int endA,
+                                     final String b, final int startB, final int endB) {
+        final int lengthA = endA - startA;
+        final int lengthB = endB - startB;
+        for (int i = 0; i < Math.min(lengthA, lengthB); i++) {
+            final int c = Character.compare(a.charAt(startA + i), b.charAt(startB + i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(lengthA, lengthB);
+    }
+
+    // the labels a and b end with in common
+    private static String common(final String a, final String b) {
+        int i = a.length();
+        int j = b.length();
+        int start = a.length();
+        while (i > 0 && j > 0) {
+            final int labelA = a.lastIndexOf('.', i - 1) + 1;
+            final int labelB = b.lastIndexOf('.', j - 1) + 1;
+            if (i - labelA != j - labelB || !a.regionMatches(labelA, b, labelB, i - labelA)) {
+                break;
+            }
+            start = labelA;
+            i = labelA - 1;
+            j = labelB - 1;
+        }
+        return a.substring(start);
+    }
+
+    @java.lang.Override
+    @java.lang.SuppressWarnings("all")
+    public java.lang.String toString() {
+        return "NSECChain(owners=" + this.owners.length + ")";
+    }
+}
@@ -0,0 +1,149 @@
+package edu.msudenver.cs.jdnss;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Bloom filter over every name in a zone that has records, so that a
+ * query for a name that isn't there (which is what a random-subdomain
+ * flood is made of) can go straight to the negative answer instead of
+ * through findRR, lookForCNAME and dealWithOther.  It can say a name might
+ * be there when it isn't, about one time in a hundred, but never the other
+ * way around.
+ *
+ * Names are hashed as Queries.decode already hashes the name in the
+ * question, FNV-1a over the wire name in lower case, so asking costs no
+ * more hashing.  The filter is blocked: all of a name's bits are in one
+ * 64 byte block, so asking is at most one cache miss however big the
+ * zone.
+ *
+ * A filter is built with its zone and never changed, like the zone.
+ */
+class NameFilter {
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+    private static final int PROBES = 6;
+    private static final int BITS_PER_NAME = 12;
+
+    // for every zone, since the server started
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder falsePositives = new LongAdder();
+
+    private final long[] bits;
+    private final int blockMask;
+
+    /**
+     * @param hashes the hash of each name, as hash() makes it
+     */
+    NameFilter(final int[] hashes) {
+        final long wanted = Math.max(1, ((long) hashes.length * BITS_PER_NAME + BLOCK_BITS - 1)
+            / BLOCK_BITS);
+        final int blocks = Integer.highestOneBit((int) Math.min(wanted * 2 - 1, 1 << 26));
+        bits = new long[blocks * BLOCK_LONGS];
+        blockMask = blocks - 1;
+        for (int h : hashes) {
+            add(h);
+        }
+    }
+
+    /**
+     * @param names canonical names, see ZoneIndex.canonical
+     */
+    static NameFilter of(final Collection<String> names) {
+        final int[] hashes = new int[names.size()];
+        int i = 0;
+        for (String name : names) {
+            hashes[i++] = hash(name);
+        }
+        return new NameFilter(hashes);
+    }
+
+    /**
+     * @return what Queries.decode makes of name in the question: FNV-1a
+     * over its wire form in lower case, the terminating zero included
+     */
+    static int hash(final String name) {
+        int hash = 0x811c9dc5;
+        int start = 0;
+        while (start < name.length()) {
+            int dot = name.indexOf('.', start);
+            int stop = dot == -1 ? name.length() : dot;
+            if (stop > start) {
+                hash = (hash ^ (stop - start)) * 0x01000193;
+                for (int i = start; i < stop; i++) {
+                    int c = name.charAt(i);
+                    if (c >= 'A' && c <= 'Z') {
+                        c += 'a' - 'A';
+                    }
+                    hash = (hash ^ (c & 0xff)) * 0x01000193;
+                }
+            }
+            start = stop + 1;
+        }
+        return hash * 0x01000193;
+    }
+
+    // the last step of MurmurHash3's 64 bit finalizer, to spread FNV's bits
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private void add(final int hash) {
+        final long probes = mix(hash & 0xffffffffL);
+        final int block = (int) mix(probes) & blockMask;
+        for (int i = 0; i < PROBES; i++) {
+            final int bit = (int) (probes >>> (i * 9)) & (BLOCK_BITS - 1);
+            bits[block * BLOCK_LONGS + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if there is certainly nothing at the name hash is of;
+     * true if there might be
+     */
+    boolean mightContain(final int hash) {
+        final long probes = mix(hash & 0xffffffffL);
+        final int block = (int) mix(probes) & blockMask;
+        for (int i = 0; i < PROBES; i++) {
+            final int bit = (int) (probes >>> (i * 9)) & (BLOCK_BITS - 1);
+            if ((bits[block * BLOCK_LONGS + (bit >>> 6)] & 1L << bit) == 0) {
+                hits.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count a name the filter let through that turned out not to be there.
+     */
+    static void falsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * @return how many queries the filters have answered as certainly not
+     * there
+     */
+    static long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return how many names the filters let through that weren't there
+     */
+    static long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    @java.lang.Override
+    @java.lang.SuppressWarnings("all")
+    public java.lang.String toString() {
+        return "NameFilter(bytes=" + this.bits.length * 8 + ")";
+    }
+}
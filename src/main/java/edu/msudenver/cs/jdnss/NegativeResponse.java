@@ -0,0 +1,119 @@
+package edu.msudenver.cs.jdnss;
+
+import java.util.List;
+
+/**
+ * The authority section of a zone's NXDOMAIN and NODATA answers, written
+ * once and copied into every one of them: the SOA and, for queries with DO
+ * set, the SOA's RRSIGs, the NSEC at the zone's name and its RRSIGs.  A
+ * flood of queries for random names in a zone is almost all such answers,
+ * and this way each costs a copy instead of the lookups, Entries and
+ * encoding of building the section again.  The NSEC at the zone's name
+ * only proves anything about the zone's name, so with DO set the section
+ * is only used there; Response proves other names aren't there with
+ * NSECChain.
+ *
+ * The section is written after a question that is just the zone's name,
+ * so its names compress against that as they would against any question
+ * in the zone, which always ends with the zone's name.  Copied after a
+ * real question, every pointer (into the question or into the section
+ * itself) is off by the same amount, the difference in the two questions'
+ * lengths, and is moved by that.
+ */
+class NegativeResponse {
+    // a pointer has 14 bits for the offset
+    private static final int MAXIMUM_POINTER = 0x3fff;
+    private static final int POINTER = 0xc000;
+
+    private final byte[] section;
+    // where section started in the message it was written in
+    private final int start;
+    // where in section each pointer is
+    private final int[] pointers;
+    private final int count;
+
+    private NegativeResponse(final byte[] section, final int start, final int[] pointers,
+                             final int count) {
+        this.section = section;
+        this.start = start;
+        this.pointers = pointers;
+        this.count = count;
+    }
+
+    /**
+     * Write the section for zone as Response would.
+     *
+     * @param DNSSEC whether for queries with DO set
+     * @return the section, or null if zone has no SOA
+     */
+    static NegativeResponse build(final Zone zone, final boolean DNSSEC) {
+        final String name = zone.getName();
+        final List<RR> soas = zone.get(RRCode.SOA, name);
+        if (soas == null || soas.isEmpty()) {
+            return null;
+        }
+        final SOARR soa = (SOARR) soas.get(0);
+        final int minimum = soa.getMinimum();
+
+        final DnsMessageWriter writer = new DnsMessageWriter(DnsMessageWriter.DEFAULT_CAPACITY, true);
+        writer.skip(12);
+        writer.putCompressedName(name);
+        writer.putShort(RRCode.SOA.getCode());
+        writer.putShort(1);
+        final int start = writer.position();
+        writer.keepPointers();
+
+        int count = 0;
+        soa.write(writer, name, minimum);
+        count++;
+        if (DNSSEC) {
+            count += write(writer, zone.getRRset(RRCode.SOA, name).getSignatures(), name, minimum);
+            final RRset nsec = zone.getRRset(RRCode.NSEC, name);
+            if (!nsec.isEmpty()) {
+                nsec.getRecords().get(0).write(writer, name, minimum);
+                count++;
+                count += write(writer, nsec.getSignatures(), name, minimum);
+            }
+        }
+
+        final List<Integer> kept = writer.getPointers();
+        final int[] pointers = new int[kept.size()];
+        for (int i = 0; i < pointers.length; i++) {
+            pointers[i] = kept.get(i) - start;
+        }
+        return new NegativeResponse(writer.toByteArray(start, writer.position()), start, pointers,
+            count);
+    }
+
+    private static int write(final DnsMessageWriter writer, final RRset rrset, final String name,
+                             final int minimum) {
+        for (RR rr : rrset.getRecords()) {
+            rr.write(writer, name, minimum);
+        }
+        return rrset.getRecords().size();
+    }
+
+    /**
+     * Copy the section in after the question, which must be a single name
+     * in the zone written out in full.
+     *
+     * @return how many records were written
+     */
+    int write(final DnsMessageWriter writer) {
+        final int position = writer.position();
+        final int moved = position - start;
+        writer.putBytes(section);
+        for (int p : pointers) {
+            final int offset = ((section[p] & 0x3f) << 8 | section[p + 1] & 0xff) + moved;
+            assert offset >= 0 && offset <= MAXIMUM_POINTER;
+            writer.putShortAt(position + p, POINTER | offset);
+        }
+        return count;
+    }
+
+    @java.lang.Override
+    @java.lang.SuppressWarnings("all")
+    public java.lang.String toString() {
+        return "NegativeResponse(length=" + this.section.length + ", count=" + this.count + ")";
+    }
+}
@@ -2,6 +2,7 @@
 package edu.msudenver.cs.jdnss;
 
 import org.apache.logging.log4j.Logger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 class OPTRR {
@@ -19,6 +20,8 @@ class OPTRR {
     private byte[] clientCookie;
     private byte[] serverCookie;
     private byte[] original;
+    private boolean tcpKeepalive;
+    private int tcpKeepaliveTimeout = -1;
 
     /*
     If a query message with more than one
@@ -31,52 +34,65 @@ class OPTRR {
         constructs a new OPTRR from a query
      */
     OPTRR(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /*
+        constructs a new OPTRR from the query in buffer, where it runs from
+        start to end, reading it in place
+     */
+    OPTRR(ByteBuffer buffer, int start, int end) {
         logger.traceEntry();
-        assert bytes[0] == 0;
-        int location = 1;
-        location = parseHeader(bytes, location);
+        assert buffer.get(start) == 0;
+        int location = start + 1;
+        location = parseHeader(buffer, location);
         int total_length = location + rdLength;
         while (location < total_length) {
-            optionCode = Utils.addThem(bytes[location++], bytes[location++]);
-            logger.trace(optionCode);
-            optionLength = Utils.addThem(bytes[location++], bytes[location++]);
-            logger.trace(optionLength);
+            final int code = buffer.getShort(location) & 0xffff;
+            final int length = buffer.getShort(location + 2) & 0xffff;
+            location += 4;
             // https://www.iana.org/assignments/dns-parameters/dns-parameters.xhtml#dns-parameters-11
-            switch (optionCode) {
+            switch (code) {
             case 10: 
                 cookie = true;
-                clientCookie = Arrays.copyOfRange(bytes, location, location + 8);
-                location += 8;
+                optionCode = code;
+                optionLength = length;
+                clientCookie = new byte[8];
+                buffer.get(location, clientCookie);
                 if (optionLength > 8) {
                     // server cookie returned
                     // OPTION-LENGTH >= 16, <= 40 [rfc7873]
                     assert optionLength == 16 || optionLength == 24 || optionLength == 32 || optionLength == 40;
-                    serverCookie = Arrays.copyOfRange(bytes, location, location + optionLength - 8);
+                    serverCookie = new byte[optionLength - 8];
+                    buffer.get(location + 8, serverCookie);
                 }
                 break;
+            case 11:
+                // edns-tcp-keepalive [rfc7828]; clients send it without a
+                // TIMEOUT, and a server ignores it on UDP.
+                tcpKeepalive = true;
+                break;
             case 12: 
-                location += optionLength;
-                original = Arrays.copyOfRange(bytes, 0, bytes.length);
+                original = new byte[end - start];
+                buffer.get(start, original);
                 break;
             }
+            // skip whatever we didn't consume, including unknown options
+            location += length;
         }
     }
 
-    private int parseHeader(byte[] bytes, int location) {
-        type = Utils.addThem(bytes[location++], bytes[location++]);
+    private int parseHeader(ByteBuffer buffer, int location) {
+        type = buffer.getShort(location) & 0xffff;
         assert type == 41;
-        payloadSize = Utils.addThem(bytes[location++], bytes[location++]);
-        logger.trace(payloadSize);
-        extendedrcode = bytes[location++];
-        logger.trace(extendedrcode);
-        version = bytes[location++];
+        payloadSize = buffer.getShort(location + 2) & 0xffff;
+        extendedrcode = buffer.get(location + 4);
+        version = buffer.get(location + 5);
         assert version == 0;
-        flags = Utils.addThem(bytes[location++], bytes[location++]);
+        flags = buffer.getShort(location + 6) & 0xffff;
         DNSSEC = flags >> 15 == 1; // DNSSEC OK bit as defined by [RFC3225].
-        logger.trace(DNSSEC);
-        rdLength = Utils.addThem(bytes[location++], bytes[location++]);
-        logger.trace(rdLength);
-        return location;
+        rdLength = buffer.getShort(location + 8) & 0xffff;
+        return location + 10;
     }
 
     /*
@@ -97,22 +113,52 @@ class OPTRR {
     }
 
     byte[] getBytes() {
+        final DnsMessageWriter writer = new DnsMessageWriter(64);
+        write(writer);
+        return writer.toByteArray();
+    }
+
+    /*
+    Writes the OPT record of the response: our cookie and keepalive options
+    if there are any, otherwise the query's own OPT record if it was padded,
+    otherwise one without options.
+     */
+    void write(final DnsMessageWriter writer) {
+        final boolean keepalive = tcpKeepaliveTimeout >= 0;
+        if (!isCookie() && !keepalive && original != null) {
+            writer.putBytes(original);
+            return;
+        }
+
+        writer.putByte(0);
+        writer.putShort(this.type);
+        writer.putShort(this.payloadSize);
+        writer.putByte(this.extendedrcode);
+        writer.putByte(this.version);
+        writer.putShort(this.flags);
+        final int rdlength = writer.skip(2);
         if (isCookie()) {
-            byte[] a = {(byte) 0};
-            a = Utils.combine(a, Utils.getTwoBytes(this.type, 2));
-            a = Utils.combine(a, Utils.getTwoBytes(this.payloadSize, 2));
-            a = Utils.combine(a, this.extendedrcode);
-            a = Utils.combine(a, this.version);
-            a = Utils.combine(a, Utils.getTwoBytes(this.flags, 2));
-            a = Utils.combine(a, Utils.getTwoBytes(this.rdLength, 2));
-            a = Utils.combine(a, Utils.getTwoBytes(this.optionCode, 2));
-            a = Utils.combine(a, Utils.getTwoBytes(this.optionLength, 2));
-            a = Utils.combine(a, this.clientCookie);
-            a = Utils.combine(a, this.serverCookie);
-            return a;
-        } else {
-            return original;
+            writer.putShort(this.optionCode);
+            writer.putShort(this.optionLength);
+            writer.putBytes(this.clientCookie);
+            writer.putBytes(this.serverCookie);
+        }
+        if (keepalive) {
+            writer.putShort(11);
+            writer.putShort(2);
+            writer.putShort(tcpKeepaliveTimeout);
         }
+        writer.putShortAt(rdlength, writer.position() - rdlength - 2);
+    }
+
+    /*
+    A DNS server that receives a query using TCP transport that includes
+    the edns-tcp-keepalive option ... MAY include the option in its response
+    to signal the idle timeout, in units of 100 milliseconds. [rfc7828]
+     */
+    void setTcpKeepaliveTimeout(final int milliseconds) {
+        assert tcpKeepalive;
+        this.tcpKeepaliveTimeout = Math.min(milliseconds / 100, 65535);
     }
 
     /*
@@ -141,6 +187,11 @@ class OPTRR {
         return this.cookie;
     }
 
+    @java.lang.SuppressWarnings("all")
+    public boolean isTcpKeepalive() {
+        return this.tcpKeepalive;
+    }
+
     @java.lang.SuppressWarnings("all")
     public int getPayloadSize() {
         return this.payloadSize;
@@ -3,7 +3,11 @@ package edu.msudenver.cs.jdnss;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ObjectMessage;
 
-import java.io.*;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -29,8 +33,27 @@ class Parser {
     private int globalTTL = -1;
     private int currentTTL = -1;
 
-    private StreamTokenizer st;
-    private final Map<String, RRCode> tokens = new Hashtable<>();
+    private ZoneLexer st;
+
+    private static final byte[][] KEYWORDS;
+    private static final RRCode[] KEYWORD_CODES = {
+        RRCode.SOA, RRCode.IN, RRCode.MX, RRCode.NS, RRCode.A, RRCode.AAAA,
+        RRCode.A6, RRCode.CNAME, RRCode.PTR, RRCode.TXT, RRCode.HINFO,
+        RRCode.RRSIG, RRCode.NSEC, RRCode.DNSKEY, RRCode.NSEC3, RRCode.NSEC3PARAM,
+        RRCode.DS, RRCode.INCLUDE, RRCode.ORIGIN, RRCode.TTL
+    };
+
+    static {
+        final String[] words = {
+            "SOA", "IN", "MX", "NS", "A", "AAAA", "A6", "CNAME", "PTR", "TXT",
+            "HINFO", "RRSIG", "NSEC", "DNSKEY", "NSEC3", "NSEC3PARAM", "DS",
+            "$INCLUDE", "$ORIGIN", "$TTL"
+        };
+        KEYWORDS = new byte[words.length][];
+        for (int i = 0; i < words.length; i++) {
+            KEYWORDS[i] = words[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
 
     private final BindZone zone;
     private final Logger logger = JDNSS.logger;
@@ -44,71 +67,27 @@ class Parser {
     Parser(final InputStream in, final BindZone zone) {
         this.zone = zone;
 
-        /*
-        ** set up the tokenizer
-        */
-        st = new StreamTokenizer(new InputStreamReader(in));
-
-        initTokenizer(st);
-
-        tokens.put("SOA", RRCode.SOA);
-        tokens.put("IN", RRCode.IN);
-        tokens.put("MX", RRCode.MX);
-        tokens.put("NS", RRCode.NS);
-        tokens.put("A", RRCode.A);
-        tokens.put("AAAA", RRCode.AAAA);
-        tokens.put("A6", RRCode.A6);
-        tokens.put("CNAME", RRCode.CNAME);
-        tokens.put("PTR", RRCode.PTR);
-        tokens.put("TXT", RRCode.TXT);
-        tokens.put("HINFO", RRCode.HINFO);
-        tokens.put("RRSIG", RRCode.RRSIG);
-        tokens.put("NSEC", RRCode.NSEC);
-        tokens.put("DNSKEY", RRCode.DNSKEY);
-        tokens.put("NSEC3", RRCode.NSEC3);
-        tokens.put("NSEC3PARAM", RRCode.NSEC3PARAM);
-        tokens.put("DS", RRCode.DS);
-        tokens.put("$INCLUDE", RRCode.INCLUDE);
-        tokens.put("$ORIGIN", RRCode.ORIGIN);
-        tokens.put("$TTL", RRCode.TTL);
-
+        st = new ZoneLexer(in);
         origin = zone.getName();
     }
 
-    private void initTokenizer(final StreamTokenizer st) {
-        st.commentChar(';');
-
-        /*
-        ** putting 0-9 into wordChars doesn't work unless one
-        ** first makes them ordinary.  weird.
-        */
-        st.ordinaryChars('0', '9');
-        st.wordChars('0', '9');
-        st.wordChars('.', '.');
-        st.wordChars(':', ':');
-        st.wordChars('$', '$');
-        st.wordChars('\\', '\\');
-        st.wordChars('[', '[');
-        st.wordChars(']', ']');
-        st.wordChars('/', '/');
-        st.wordChars('+', '+');
-        st.wordChars('=', '=');
-        st.wordChars('_', '_');
-
-        st.quoteChar('"');
-
-        st.slashSlashComments(true);
-        st.slashStarComments(true);
+    /**
+     * @return the keyword the current word is, or null
+     */
+    private RRCode keyword() {
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            if (st.equals(KEYWORDS[i])) {
+                return KEYWORD_CODES[i];
+            }
+        }
+        return null;
     }
 
-    private RRCode matcher(final String a) {
-        logger.traceEntry(new ObjectMessage(a));
+    private RRCode matcher() {
+        final int length = st.length();
 
-        /*
-        ** \\d matches digits
-        */
-        if (a.matches("(\\d+\\.){3}+\\d+")) {
-            stringValue = a;
+        if (st.isIPv4()) {
+            stringValue = st.text(0, length);
             logger.traceExit("IPV4ADDR");
             return RRCode.IPV4ADDR;
         }
@@ -118,33 +97,28 @@ class Parser {
         ** any number of hex digits separated by colons that
         ** end in an IPv4 address
         */
-        if (a.matches("(\\p{XDigit}*:)+\\p{XDigit}+")
-                || a.matches("(\\p{XDigit}*:)+(\\d+\\.){3}+\\d+")) {
-            stringValue = a.replaceFirst("(:0+)+", ":");
-            stringValue = stringValue.replaceFirst("^0+:", ":");
+        if (st.isIPv6()) {
+            stringValue = shortenIPv6(st.text(0, length));
             logger.trace(stringValue);
             logger.traceExit("IPV6ADDR");
             return RRCode.IPV6ADDR;
         }
 
-        final String b = a.toLowerCase();
-        if (b.matches("(\\d+\\.){4}+in-addr\\.arpa\\.")
-                || b.matches("(\\d+\\.){32}+in-addr\\.arpa\\.")
-                || b.matches("(\\d+\\.){32}+ip6\\.int\\.")) {
-            stringValue = b.replaceFirst("\\.$", "");
+        if (st.isReverseName()) {
+            stringValue = st.lowerCase(0, length - 1);
             logger.trace(stringValue);
             logger.traceExit("INADDR");
             return RRCode.INADDR;
         }
 
-        if (a.matches("\\d{14}")) {
-            calculateDate(a);
+        if (length == 14 && st.isDigits(0, length)) {
+            calculateDate(st.text(0, length));
             logger.traceExit("DATE");
             return RRCode.DATE;
         }
 
-        if (a.matches("\\d+")) {
-            intValue = Integer.parseInt(a);
+        if (st.isDigits(0, length)) {
+            intValue = st.intValue(0, length);
             logger.trace(intValue);
             logger.traceExit("INT");
             return RRCode.INT;
@@ -155,53 +129,78 @@ class Parser {
         ** 'M','H','D' or 'W', indicating a time-interval of minutes,
         ** hours, days and weeks respectively.)"
         */
-        if (a.matches("\\d+[MHDW]")) {
-            calculateMDWM(a);
+        if (st.isDigits(0, length - 1) && "MHDW".indexOf(st.at(length - 1)) >= 0) {
+            calculateMDWM(st.intValue(0, length - 1), (char) st.at(length - 1));
             logger.trace(intValue);
             logger.traceExit("INT");
             return RRCode.INT;
         }
 
-        if (a.matches("[0-9A-Fa-f]+")) {
-            stringValue = a;
+        if (st.isHex()) {
+            stringValue = st.text(0, length);
             return RRCode.HEX;
         }
 
         // FQDN's end with a dot
-        if (a.matches("([-a-zA-Z0-9_]+\\.)+")) {
+        if (st.isAbsoluteName()) {
             // remove the dot
-            stringValue = a.replaceFirst("\\.$", "");
+            stringValue = st.text(0, length - 1);
             logger.trace(stringValue);
             logger.traceExit("DN");
             return RRCode.DN;
         }
 
         // PQDN's don't
-        if (!inBase64 && a.matches("[-a-zA-Z0-9_]+(\\.[-a-zA-Z0-9_]+)*")) {
-            stringValue = a + "." + origin;
+        if (!inBase64 && st.isRelativeName()) {
+            stringValue = st.text(0, length) + "." + origin;
             logger.trace(stringValue);
             logger.traceExit("PQDN");
             return RRCode.DN;
         }
 
-        // if (a.matches("[a-zA-Z0-9/\\+]+(==?)?"))
-        String pattern = "^(?:[A-Za-z0-9+/]{4})*(?:[A-Za-z0-9+/]{2}==|[A-Za-z0-9+/]{3}=)?$";
-        if (inBase64 && a.matches(pattern)) {
-            stringValue = a.trim();
+        if (inBase64 && st.isBase64()) {
+            stringValue = st.text(0, length);
             logger.trace(stringValue);
             logger.traceExit("BASE64");
             return RRCode.BASE64;
         }
 
-        logger.fatal("Unknown token on line " + st.lineno() + ": " + a);
+        logger.fatal("Unknown token on line " + st.lineno() + ": " + st.text());
         return RRCode.NOTOK;
     }
 
-    private void calculateMDWM(final String a) {
-        intValue = Integer.parseInt(a.substring(0, a.length() - 1));
+    /**
+     * What a.replaceFirst("(:0+)+", ":").replaceFirst("^0+:", ":") did.
+     */
+    static String shortenIPv6(final String a) {
+        String s = a;
+        for (int i = 0; i + 1 < s.length(); i++) {
+            if (s.charAt(i) == ':' && s.charAt(i + 1) == '0') {
+                int j = i;
+                while (j + 1 < s.length() && s.charAt(j) == ':' && s.charAt(j + 1) == '0') {
+                    j++;
+                    while (j < s.length() && s.charAt(j) == '0') {
+                        j++;
+                    }
+                }
+                s = s.substring(0, i) + ":" + s.substring(j);
+                break;
+            }
+        }
+
+        int zeros = 0;
+        while (zeros < s.length() && s.charAt(zeros) == '0') {
+            zeros++;
+        }
+        if (zeros > 0 && zeros < s.length() && s.charAt(zeros) == ':') {
+            s = ":" + s.substring(zeros + 1);
+        }
+        return s;
+    }
 
+    private void calculateMDWM(final int value, final char MDWM) {
+        intValue = value;
 
-        char MDWM = a.charAt(a.length() - 1);
         switch (MDWM) {
             case 'W':
                 intValue *= DAYSINWEEK;    // fall through
@@ -232,7 +231,7 @@ class Parser {
         final int t;
 
         try {
-            t = st.nextToken();
+            t = st.next();
         } catch (IOException e) {
             logger.info("Error while reading token on line "
                     + st.lineno() + ": " + e);
@@ -240,42 +239,33 @@ class Parser {
             return NOTOK;
         }
 
-        logger.traceExit(t);
         return t;
     }
 
     private RRCode getNextToken() {
         final int t = getOneWord();
-        logger.trace("t = " + t);
+        logger.trace("t = {}", t);
 
         switch (t) {
-            case '"':
-                stringValue = st.sval;
+            case ZoneLexer.QUOTED:
+                stringValue = st.text();
                 logger.trace(stringValue);
                 logger.traceExit("STRING");
                 return RRCode.STRING;
-            case StreamTokenizer.TT_EOF:
+            case ZoneLexer.EOF:
                 logger.traceExit("EOF");
                 return RRCode.EOF;
-            case StreamTokenizer.TT_NUMBER:
+            case ZoneLexer.NUMBER:
                 // numbers are counted as words...
                 logger.traceExit("NOTOK");
                 return RRCode.NOTOK;
-            case StreamTokenizer.TT_WORD: {
-                final String a = st.sval;
-                logger.trace("a = " + a);
-
-                /*
-                ** is it in the tokens hash?
-                */
-                final RRCode i = tokens.get(a);
+            case ZoneLexer.WORD: {
+                final RRCode i = keyword();
                 if (i != null) {
                     return i;
                 }
 
-                final RRCode k = matcher(a);
-                logger.traceExit(k);
-                return k;
+                return matcher();
             }
             case '@':
                 stringValue = origin;
@@ -311,29 +301,27 @@ class Parser {
         // up.
 
         final int t = getOneWord();
-        assert t == StreamTokenizer.TT_WORD;
+        assert t == ZoneLexer.WORD;
 
         // save the old one so we can get back to it.  if we're called
         // recursively, we're still good to go...
-        final StreamTokenizer old = st;
+        final ZoneLexer old = st;
+        final String file = st.text();
 
-        final FileInputStream in;
-        try {
-            in = new FileInputStream(st.sval);
+        try (InputStream in = new FileInputStream(file)) {
+            st = new ZoneLexer(in);
+            RRs();
         } catch (FileNotFoundException e) {
             logger.info("Cannot open $INCLUDE file at line " + st.lineno()
-                    + ": " + st.sval);
-            return;
+                    + ": " + file);
+        } catch (IOException e) {
+            // only from close()
+            logger.catching(e);
+        } finally {
+            // restore the old one.
+            st = old;
         }
 
-        st = new StreamTokenizer(new InputStreamReader(in));
-        initTokenizer(st);
-
-        RRs();
-
-        // restore the old one.
-        st = old;
-
         logger.traceExit();
     }
 
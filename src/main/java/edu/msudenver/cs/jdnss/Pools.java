@@ -0,0 +1,95 @@
+package edu.msudenver.cs.jdnss;
+
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Where the listeners get the threads that answer queries.
+ *
+ * --executor=fixed (the default) gives each caller a pool of --threads
+ * platform threads.  --executor=virtual gives every task its own virtual
+ * thread, so a query blocked on a DBConnection lookup doesn't hold a pool
+ * thread that some other query could have used.  Virtual threads need a
+ * Java 21 runtime; they are found by reflection so the build still targets
+ * older ones, and on those we fall back to the fixed pool, saying so once
+ * when the arguments are checked.
+ */
+class Pools {
+    private static final Logger logger = JDNSS.logger;
+
+    private Pools() {}
+
+    /**
+     * Checks --executor before anything listens, warning if virtual threads
+     * were asked for and this runtime doesn't have them.
+     *
+     * @throws IllegalArgumentException if kind is neither fixed nor virtual
+     */
+    static void checkExecutor(final String kind) {
+        switch (kind) {
+            case "fixed":
+                return;
+            case "virtual":
+                if (!hasVirtualThreads()) {
+                    logger.warn("Virtual threads need Java 21, using fixed pools of --threads instead");
+                }
+                return;
+            default:
+                throw new IllegalArgumentException("Invalid executor: " + kind
+                    + ", expecting fixed or virtual");
+        }
+    }
+
+    /**
+     * @return whether this runtime has virtual threads
+     */
+    static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param threads the size of the pool if it is a fixed one
+     * @return a new ExecutorService of the kind asked for by --executor
+     */
+    static ExecutorService newPool(final int threads) {
+        return newPool(JDNSS.jargs.getExecutor(), threads);
+    }
+
+    static ExecutorService newPool(final String kind, final int threads) {
+        switch (kind) {
+            case "fixed":
+                return Executors.newFixedThreadPool(threads);
+            case "virtual":
+                ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+                if (virtual != null) {
+                    return virtual;
+                }
+                // checkExecutor has already warned
+                logger.debug("No virtual threads, using a fixed pool");
+                return Executors.newFixedThreadPool(threads);
+            default:
+                throw new IllegalArgumentException("Invalid executor: " + kind);
+        }
+    }
+
+    /**
+     * @return Executors.newVirtualThreadPerTaskExecutor() or null if this
+     * runtime doesn't have it
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -2,33 +2,163 @@
 package edu.msudenver.cs.jdnss;
 
 import org.apache.logging.log4j.Logger;
-import java.util.Arrays;
-import java.util.Map;
+import java.nio.ByteBuffer;
 
+/**
+ * One question, read in place from the query's buffer.  The name stays as
+ * wire bytes, with a hash of them ignoring case, and is only turned into a
+ * String if something asks for it, which answering from the ResponseCache
+ * doesn't.  Like its Query, it is only good while the buffer is.
+ */
 class Queries {
-    private final String name;
+    private String name;
     private final RRCode type;
     private final int qclass;
     private final boolean QU;
+    private final ByteBuffer buffer;
+    // where the name starts in buffer, and its length if it is all there,
+    // without compression, or -1
+    private final int nameOffset;
+    private final int nameLength;
+    private final int nameHash;
+    // where the question ends in buffer
+    private final int end;
 
-    Queries(final String name, final RRCode type, final int qclass, final boolean QU) {
-        this.name = name;
+    private Queries(final ByteBuffer buffer, final int nameOffset, final int nameLength,
+                    final int nameHash, final int end, final RRCode type, final int qclass,
+                    final boolean QU) {
+        this.buffer = buffer;
+        this.end = end;
+        this.nameOffset = nameOffset;
+        this.nameLength = nameLength;
+        this.nameHash = nameHash;
         this.type = type;
         this.qclass = qclass;
         this.QU = QU;
     }
 
+    /**
+     * Reads the question at offset in buffer.
+     */
+    static Queries decode(final ByteBuffer buffer, final int offset) {
+        // FNV-1a over the name in lower case, following any pointers
+        int hash = 0x811c9dc5;
+        int location = offset;
+        // where the question goes on after the first pointer, if there is one
+        int after = -1;
+        int hops = 0;
+        while (true) {
+            final int length = buffer.get(location) & 0xff;
+            if ((length & 0xc0) == 0xc0) {
+                if (after < 0) {
+                    after = location + 2;
+                }
+                if (++hops > 127) {
+                    throw new IllegalArgumentException("Compression loop in question");
+                }
+                location = (buffer.getShort(location) & 0x3fff);
+                continue;
+            }
+
+            hash = (hash ^ length) * 0x01000193;
+            location++;
+            for (int i = 0; i < (length & 0x3f); i++) {
+                int c = buffer.get(location++);
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                hash = (hash ^ (c & 0xff)) * 0x01000193;
+            }
+            if (length == 0) {
+                break;
+            }
+        }
+
+        if (after < 0) {
+            after = location;
+        }
+        final int nameLength = hops == 0 ? after - offset : -1;
+        final int qtype = buffer.getShort(after) & 0xffff;
+        final int qclass = buffer.getShort(after + 2) & 0xffff;
+        /*
+        ** Multicast DNS defines the top bit in the class field of a
+        ** DNS question as the unicast-response bit.  When this bit is
+        ** set in a question, it indicates that the querier is willing
+        ** to accept unicast replies in response to this specific
+        ** query, as well as the usual multicast responses.  These
+        ** questions requesting unicast responses are referred to as
+        ** "QU" questions, to distinguish them from the more usual
+        ** questions requesting multicast responses ("QM" questions).
+        */
+        final boolean QU = (qclass & 49152) == 49152;
+        return new Queries(buffer, offset, nameLength, hash, after + 4, RRCode.findCode(qtype),
+            qclass, QU);
+    }
+
+    /**
+     * @return the name at offset in buffer as text, without a trailing dot
+     */
+    private static String decodeName(final ByteBuffer buffer, int offset) {
+        final StringBuilder sb = new StringBuilder();
+        int hops = 0;
+        int length;
+        while ((length = buffer.get(offset) & 0xff) != 0) {
+            if ((length & 0xc0) == 0xc0) {
+                if (++hops > 127) {
+                    throw new IllegalArgumentException("Compression loop in question");
+                }
+                offset = buffer.getShort(offset) & 0x3fff;
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('.');
+            }
+            for (int i = 1; i <= (length & 0x3f); i++) {
+                sb.append((char) buffer.get(offset + i));
+            }
+            offset += (length & 0x3f) + 1;
+        }
+        return sb.toString();
+    }
+
     @java.lang.Override
     @java.lang.SuppressWarnings("all")
     public java.lang.String toString() {
         return "Queries(name=" + this.getName() + ", type=" + this.getType() + ", qclass=" + this.getQclass() + ", QU=" + this.isQU() + ")";
     }
 
-    @java.lang.SuppressWarnings("all")
     public String getName() {
+        if (name == null) {
+            name = decodeName(buffer, nameOffset);
+        }
         return this.name;
     }
 
+    @java.lang.SuppressWarnings("all")
+    ByteBuffer getBuffer() {
+        return this.buffer;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    int getNameOffset() {
+        return this.nameOffset;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    int getNameLength() {
+        return this.nameLength;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    int getNameHash() {
+        return this.nameHash;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    int getEnd() {
+        return this.end;
+    }
+
     @java.lang.SuppressWarnings("all")
     public RRCode getType() {
         return this.type;
@@ -45,17 +175,34 @@ class Queries {
     }
 }
 
+/**
+ * A query, read in place from the buffer it arrived in: nothing is copied
+ * out of it but what the response needs to keep (cookies, and an OPT
+ * record to echo).  The buffer must not change until the query has been
+ * answered.
+ */
 class Query {
     private final Logger logger = JDNSS.logger;
     private final Header header;
-    private final byte[] buffer;
+    private final ByteBuffer buffer;
     private Queries[] queries;
     private OPTRR optrr;
+    // the zone that answered, for Metrics
+    private Zone zone;
 
     /**
      * creates a Query from a packet
      */
     Query(byte[] buffer) {
+        this(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * creates a Query from the packet between position 0 and the limit of
+     * buffer
+     */
+    Query(ByteBuffer buffer) {
+        assert buffer.position() == 0;
         this.buffer = buffer;
         this.header = new Header(buffer);
     }
@@ -85,22 +232,8 @@ class Query {
         int location = 12;
         queries = new Queries[header.getNumQuestions()];
         for (int i = 0; i < header.getNumQuestions(); i++) {
-            Map.Entry<String, Integer> StringAndNumber = Utils.parseName(location, buffer);
-            location = StringAndNumber.getValue();
-            int qtype = Utils.addThem(buffer[location++], buffer[location++]);
-            int qclass = Utils.addThem(buffer[location++], buffer[location++]);
-            boolean QU = (qclass & 49152) == 49152;
-            queries[i] = new Queries(StringAndNumber.getKey(), RRCode.findCode(qtype), qclass, QU);
-            /*
-            ** Multicast DNS defines the top bit in the class field of a
-            ** DNS question as the unicast-response bit.  When this bit is
-            ** set in a question, it indicates that the querier is willing
-            ** to accept unicast replies in response to this specific
-            ** query, as well as the usual multicast responses.  These
-            ** questions requesting unicast responses are referred to as
-            ** "QU" questions, to distinguish them from the more usual
-            ** questions requesting multicast responses ("QM" questions).
-            */
+            queries[i] = Queries.decode(buffer, location);
+            location = queries[i].getEnd();
         }
         /* For servers with DNS Cookies enabled, the QUERY opcode behavior is
         extended to support queries with an empty Question Section (a QDCOUNT
@@ -118,7 +251,7 @@ class Query {
             // When an OPT RR is included within any DNS message, it
             // MUST be the only OPT RR in that message.
             assert header.getNumAdditionals() == 1;
-            this.optrr = new OPTRR(Arrays.copyOfRange(buffer, location, buffer.length));
+            this.optrr = new OPTRR(buffer, location, buffer.limit());
             //process and transform? optrr for a resonse
             // need to set the RCODE in header for the response needs to be FORMERR
             if (optrr.hasFormErr()) {
@@ -130,13 +263,35 @@ class Query {
         }
     }
 
-    byte[] buildResponseQueries() {
-        byte[] questions = new byte[0];
-        for (Queries query : this.getQueries()) {
-            questions = Utils.combine(questions, Utils.convertString(query.getName()));
-            questions = Utils.combine(questions, Utils.getTwoBytes(query.getType().getCode(), 2));
-            questions = Utils.combine(questions, Utils.getTwoBytes(query.getQclass(), 2));
+    /**
+     * @return where the question section ends in the packet
+     */
+    private int getQuestionsEnd() {
+        return queries.length == 0 ? 12 : queries[queries.length - 1].getEnd();
+    }
+
+    /**
+     * Writes the question section as it came, copied from the packet, so the
+     * case of the names (0x20 randomization) is kept and nothing is encoded
+     * again.  It must go at offset 12, as the query's did, for any pointers
+     * in it to stay right.  A compressing writer is told where the names
+     * are, so later names can point at them.
+     */
+    void writeQuestions(final DnsMessageWriter writer) {
+        assert writer.position() == 12;
+        writer.putBytes(buffer, 12, getQuestionsEnd() - 12);
+        if (writer.isCompressing()) {
+            for (Queries q : queries) {
+                if (q.getNameLength() >= 0) {
+                    writer.rememberName(q.getNameOffset());
+                }
+            }
         }
+    }
+
+    byte[] buildResponseQueries() {
+        final byte[] questions = new byte[getQuestionsEnd() - 12];
+        buffer.get(12, questions);
         return questions;
     }
 
@@ -151,9 +306,16 @@ class Query {
         return this.header;
     }
 
-    @java.lang.SuppressWarnings("all")
+    /**
+     * @return the packet, copied if it isn't all of an array
+     */
     public byte[] getBuffer() {
-        return this.buffer;
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.array().length == buffer.limit()) {
+            return buffer.array();
+        }
+        final byte[] b = new byte[buffer.limit()];
+        buffer.get(0, b);
+        return b;
     }
 
     @java.lang.SuppressWarnings("all")
@@ -165,4 +327,14 @@ class Query {
     public OPTRR getOptrr() {
         return this.optrr;
     }
+
+    @java.lang.SuppressWarnings("all")
+    public Zone getZone() {
+        return this.zone;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setZone(final Zone zone) {
+        this.zone = zone;
+    }
 }
\ No newline at end of file
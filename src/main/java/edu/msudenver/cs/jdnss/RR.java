@@ -32,6 +32,9 @@ abstract class RR {
     private final RRCode type;
     private final int rrclass = 1;
     private final int ttl;
+    // the RDATA encoded by encode(), or null if it is written as the
+    // response is
+    private byte[] rdata;
 
     boolean isEmpty() {
         return false;
@@ -55,32 +58,65 @@ abstract class RR {
     }
 
     /**
-     * converts all the internal data to a byte array
-     * @return the resource record to put in the response
+     * writes the whole resource record into a response
+     * @param question the name that owns the record in the response
      */
-    public byte[] getBytes(final String question, final int TTLminimum) {
+    void write(final DnsMessageWriter writer, final String question, final int TTLminimum) {
         final int minttl = ttl == 0 ? TTLminimum : ttl;
-        final byte[] name = Utils.convertString(question);
-        final byte[] rdata = getBytes();
-        final int rdatalen = rdata.length;
-        final int count = name.length + 2 + 2 + 4 + 2 + rdatalen;
-        final byte[] a = new byte[count];
-        System.arraycopy(name, 0, a, 0, name.length);
-        int where = name.length;
-        a[where++] = Utils.getByte(type.getCode(), 2);
-        a[where++] = Utils.getByte(type.getCode(), 1);
-        a[where++] = Utils.getByte(rrclass, 2);
-        a[where++] = Utils.getByte(rrclass, 1);
-        a[where++] = Utils.getByte(minttl, 4);
-        a[where++] = Utils.getByte(minttl, 3);
-        a[where++] = Utils.getByte(minttl, 2);
-        a[where++] = Utils.getByte(minttl, 1);
-        a[where++] = Utils.getByte(rdatalen, 2);
-        a[where++] = Utils.getByte(rdatalen, 1);
-        System.arraycopy(rdata, 0, a, where, rdata.length);
-        return a;
+        writer.putCompressedName(question);
+        writer.putShort(type.getCode());
+        writer.putShort(rrclass);
+        writer.putInt(minttl);
+        // the length isn't known until the RDATA is written
+        final int rdlength = writer.skip(2);
+        if (rdata != null) {
+            writer.putBytes(rdata);
+        } else {
+            writeRdata(writer);
+        }
+        writer.putShortAt(rdlength, writer.position() - rdlength - 2);
     }
 
+    /**
+     * Encode the RDATA now, so that writing the record is only a copy of
+     * it.  For records that won't change and whose RDATA has no names to
+     * compress; CompiledZone does it for every record it is built from,
+     * before any thread answering queries can see them.
+     */
+    void encode() {
+        if (rdata == null) {
+            rdata = getBytes();
+        }
+    }
+
+    /**
+     * @return the RDATA encoded by encode(), or null
+     */
+    byte[] getRdata() {
+        return rdata;
+    }
+
+    /**
+     * writes just the RDATA; subclasses that can write it directly should
+     * instead of going through getBytes()
+     */
+    void writeRdata(final DnsMessageWriter writer) {
+        writer.putBytes(getBytes());
+    }
+
+    /**
+     * for subclasses that override writeRdata
+     * @return what writeRdata writes
+     */
+    byte[] getRdataBytes() {
+        final DnsMessageWriter writer = new DnsMessageWriter(64);
+        writeRdata(writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * @return the RDATA
+     */
     protected abstract byte[] getBytes();
 
     @java.lang.Override
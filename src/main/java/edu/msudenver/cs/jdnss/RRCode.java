@@ -42,6 +42,22 @@ enum RRCode {
 
     private int code;
 
+    // code -> RRCode, for the real ones
+    private static final RRCode[] BY_CODE;
+
+    static {
+        int maximum = 0;
+        for (RRCode rrCode : values()) {
+            maximum = Math.max(maximum, rrCode.code);
+        }
+        BY_CODE = new RRCode[maximum + 1];
+        for (RRCode rrCode : values()) {
+            if (rrCode.code != 0) {
+                BY_CODE[rrCode.code] = rrCode;
+            }
+        }
+    }
+
     RRCode() {
     }
 
@@ -55,10 +71,8 @@ enum RRCode {
     }
 
     static RRCode findCode(final int number) {
-        for (RRCode rrCode : values()) {
-            if (number == rrCode.getCode()) {
-                return rrCode;
-            }
+        if (number > 0 && number < BY_CODE.length && BY_CODE[number] != null) {
+            return BY_CODE[number];
         }
 
         throw new IllegalArgumentException(number + " not an RRCode");
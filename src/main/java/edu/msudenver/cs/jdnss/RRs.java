@@ -2,6 +2,7 @@ package edu.msudenver.cs.jdnss;
 
 import org.apache.logging.log4j.Logger;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Map;
@@ -211,16 +212,20 @@ class SOARR extends RR {
         return minimum;
     }
 
+    @Override
+    void writeRdata(final DnsMessageWriter writer) {
+        writer.putCompressedName(server);
+        writer.putCompressedName(contact);
+        writer.putInt(serial);
+        writer.putInt(refresh);
+        writer.putInt(retry);
+        writer.putInt(expire);
+        writer.putInt(minimum);
+    }
+
     @Override
     protected byte[] getBytes() {
-        byte[] a = Utils.convertString(server);
-        a = Utils.combine(a, Utils.convertString(contact));
-        a = Utils.combine(a, Utils.getBytes(serial));
-        a = Utils.combine(a, Utils.getBytes(refresh));
-        a = Utils.combine(a, Utils.getBytes(retry));
-        a = Utils.combine(a, Utils.getBytes(expire));
-        a = Utils.combine(a, Utils.getBytes(minimum));
-        return a;
+        return getRdataBytes();
     }
 
     @java.lang.Override
@@ -289,9 +294,15 @@ class HINFORR extends RR {
         this.OS = OS;
     }
 
+    @Override
+    void writeRdata(final DnsMessageWriter writer) {
+        writer.putCharacterString(CPU);
+        writer.putCharacterString(OS);
+    }
+
     @Override
     protected byte[] getBytes() {
-        return Utils.combine(Utils.toCS(CPU), Utils.toCS(OS));
+        return getRdataBytes();
     }
 
     @java.lang.Override
@@ -345,12 +356,15 @@ class MXRR extends RR {
         this.preference = preference;
     }
 
+    @Override
+    void writeRdata(final DnsMessageWriter writer) {
+        writer.putShort(preference);
+        writer.putCompressedName(host);
+    }
+
     @Override
     protected byte[] getBytes() {
-        byte[] c = new byte[2];
-        c[0] = Utils.getByte(preference, 2);
-        c[1] = Utils.getByte(preference, 1);
-        return Utils.combine(c, Utils.convertString(host));
+        return getRdataBytes();
     }
 
     @java.lang.Override
@@ -408,9 +422,14 @@ abstract class STRINGRR extends RR {
         super(name, type, ttl);
     }
 
+    @Override
+    void writeRdata(final DnsMessageWriter writer) {
+        writer.putCompressedName(string);
+    }
+
     @Override
     protected byte[] getBytes() {
-        return Utils.convertString(string);
+        return getRdataBytes();
     }
 
     @java.lang.Override
@@ -461,8 +480,8 @@ class TXTRR extends STRINGRR {
     }
 
     @Override
-    protected byte[] getBytes() {
-        return Utils.toCS(string);
+    void writeRdata(final DnsMessageWriter writer) {
+        writer.putCharacterString(string);
     }
 }
 
@@ -574,17 +593,20 @@ class DNSKEYRR extends RR {
     }
 
     @Override
-    protected byte[] getBytes() {
-        byte[] a = new byte[0];
-        a = Utils.combine(a, Utils.getTwoBytes(flags, 2));
-        a = Utils.combine(a, Utils.getByte(protocol, 1));
-        a = Utils.combine(a, Utils.getByte(algorithm, 1));
+    void writeRdata(final DnsMessageWriter writer) {
+        writer.putShort(flags);
+        writer.putByte(protocol);
+        writer.putByte(algorithm);
         try {
-            a = Utils.combine(a, Base64.getDecoder().decode(publicKey.getBytes()));
+            writer.putBytes(Base64.getDecoder().decode(publicKey.getBytes()));
         } catch (Exception e) {
             assert false;
         }
-        return a;
+    }
+
+    @Override
+    protected byte[] getBytes() {
+        return getRdataBytes();
     }
 
     @java.lang.Override
@@ -800,24 +822,25 @@ class RRSIG extends RR {
     }
 
     @Override
-    protected byte[] getBytes() {
-        byte[] a = new byte[0];
-        a = Utils.combine(a, Utils.getTwoBytes(typeCovered.getCode(), 2));
-        a = Utils.combine(a, Utils.getByte(algorithm, 1));
-        a = Utils.combine(a, Utils.getByte(labels, 1));
-        a = Utils.combine(a, Utils.getBytes(originalttl));
-        a = Utils.combine(a, Utils.getTwoBytes(signatureExpiration, 4));
-        a = Utils.combine(a, Utils.getTwoBytes(signatureExpiration, 2));
-        a = Utils.combine(a, Utils.getTwoBytes(signatureInception, 4));
-        a = Utils.combine(a, Utils.getTwoBytes(signatureInception, 2));
-        a = Utils.combine(a, Utils.getTwoBytes(keyTag, 2));
-        a = Utils.combine(a, Utils.convertString(signersName));
+    void writeRdata(final DnsMessageWriter writer) {
+        writer.putShort(typeCovered.getCode());
+        writer.putByte(algorithm);
+        writer.putByte(labels);
+        writer.putInt(originalttl);
+        writer.putInt(signatureExpiration);
+        writer.putInt(signatureInception);
+        writer.putShort(keyTag);
+        writer.putName(signersName);
         try {
-            a = Utils.combine(a, Base64.getDecoder().decode(signature.getBytes()));
+            writer.putBytes(Base64.getDecoder().decode(signature.getBytes()));
         } catch (Exception e) {
             assert false;
         }
-        return a;
+    }
+
+    @Override
+    protected byte[] getBytes() {
+        return getRdataBytes();
     }
 
     @java.lang.Override
@@ -893,15 +916,18 @@ class NSECRR extends RR {
         this.resourceRecords = resourceRecords;
     }
 
+    @Override
+    void writeRdata(final DnsMessageWriter writer) {
+        writer.putName(nextDomainName);
+        writeBitMap(writer);
+    }
+
     @Override
     protected byte[] getBytes() {
-        byte[] a = new byte[0];
-        a = Utils.combine(a, Utils.convertString(nextDomainName));
-        a = Utils.combine(a, buildBitMap());
-        return a;
+        return getRdataBytes();
     }
 
-    private byte[] buildBitMap() {
+    private void writeBitMap(final DnsMessageWriter writer) {
         int largestRcode = 0;
         for (RRCode rr : resourceRecords) {
             if (rr.getCode() > largestRcode) {
@@ -910,10 +936,10 @@ class NSECRR extends RR {
         }
         int length = (largestRcode + 8) / 8;
         byte[] bitMap = new byte[length];
-        byte[] a = {0};
-        a = Utils.combine(a, (byte) length);
-        a = Utils.combine(a, setBits(bitMap));
-        return a;
+        // window block 0
+        writer.putByte(0);
+        writer.putByte(length);
+        writer.putBytes(setBits(bitMap));
     }
 
     private byte[] setBits(byte[] bitMap) {
@@ -1018,3 +1044,37 @@ class NSECRR extends RR {
         return result;
     }
 }
+
+/**
+ * A record whose RDATA is already in wire format somewhere else, e.g. in a
+ * MappedZone's image, and is copied straight from there into responses.
+ */
+class WireRR extends RR {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    WireRR(final String name, final RRCode type, final int ttl, final ByteBuffer buffer,
+           final int offset, final int length) {
+        super(name, type, ttl);
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    void writeRdata(final DnsMessageWriter writer) {
+        writer.putBytes(buffer, offset, length);
+    }
+
+    @Override
+    protected byte[] getBytes() {
+        return getRdataBytes();
+    }
+
+    @java.lang.Override
+    @java.lang.SuppressWarnings("all")
+    public java.lang.String toString() {
+        return "WireRR(super=" + super.toString() + ", length=" + this.length + ")";
+    }
+}
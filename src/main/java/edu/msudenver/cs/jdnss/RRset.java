@@ -0,0 +1,45 @@
+package edu.msudenver.cs.jdnss;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The records of one type at one name and the RRSIGs that cover them.
+ */
+class RRset {
+    static final RRset EMPTY = new RRset(Collections.emptyList(), null);
+
+    private final List<RR> records;
+    private final RRset signatures;
+
+    /**
+     * @param signatures the covering RRSIGs; null if there are none
+     */
+    RRset(final List<RR> records, final RRset signatures) {
+        assert records != null;
+        this.records = records;
+        this.signatures = signatures;
+    }
+
+    boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public List<RR> getRecords() {
+        return this.records;
+    }
+
+    /**
+     * @return the RRSIGs covering this set, never null
+     */
+    RRset getSignatures() {
+        return signatures == null ? EMPTY : signatures;
+    }
+
+    @java.lang.Override
+    @java.lang.SuppressWarnings("all")
+    public java.lang.String toString() {
+        return "RRset(records=" + this.records + ", signatures=" + this.signatures + ")";
+    }
+}
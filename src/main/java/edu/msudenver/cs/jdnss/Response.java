@@ -10,19 +10,48 @@ enum ResponseSection {
 
 class Response {
     private final Logger logger = JDNSS.logger;
+    // what findRR returns when there is no answer
+    private static final Map.Entry<String, RRset> NOT_FOUND = Map.entry("", RRset.EMPTY);
+    // one writer per thread, reused for every response it builds
+    private static final ThreadLocal<DnsMessageWriter> writers = ThreadLocal.withInitial(
+        () -> new DnsMessageWriter(DnsMessageWriter.DEFAULT_CAPACITY, true));
     private final Header header;
-    private byte[] additional;
-    private int numAdditionals;
-    private byte[] authority = new byte[0];
-    private int numAuthorities;
+    // what will go in each section, written out all at once by write()
+    private final List<Entry> answers = new ArrayList<>();
+    private final List<Entry> authorities = new ArrayList<>();
+    private final List<Entry> additionals = new ArrayList<>();
     private Zone zone;
     private int minimum;
     private boolean DNSSEC = false;
-    private byte[] responses = new byte[0];
     private int maximumPayload = 512;
     private SOARR SOA;
     private final boolean UDP;
     private final Query query;
+    private byte[] bytes;
+    // the zone's authority section for a negative answer, copied in whole
+    // by write() instead of the authorities; null otherwise
+    private NegativeResponse negative;
+    // whether this is an NXDOMAIN or NODATA, with or without a template
+    private boolean denial;
+    // where the answer section starts and the OPT record starts in bytes
+    private int sectionsStart;
+    private int sectionsEnd;
+
+    /**
+     * A resource record and the name it is written under.  RRSIGs are
+     * optional: they are left out one by one when they don't fit.
+     */
+    private static class Entry {
+        private final RR rr;
+        private final String name;
+        private final boolean optional;
+
+        Entry(final RR rr, final String name, final boolean optional) {
+            this.rr = rr;
+            this.name = name;
+            this.optional = optional;
+        }
+    }
 
     Response(final Query query, final boolean UDP) {
         this.query = query;
@@ -34,7 +63,6 @@ class Response {
         for (Queries q : query.getQueries()) {
             String name = q.getName();
             final RRCode type = q.getType();
-            List<RR> v = new ArrayList<>();
             if (!setZone(name)) {
                 break;
             }
@@ -45,55 +73,63 @@ class Response {
                 DNSSEC = query.getOptrr().isDNSSEC();
                 maximumPayload = query.getOptrr().getPayloadSize();
             }
-            final Map.Entry<String, List<RR>> stringAndArrayList = findRR(type, name);
-            if (stringAndArrayList.getValue().isEmpty()) {
-                noResourceRecord();
+            final NameFilter filter = zone.getNameFilter();
+            final boolean mightExist = filter == null || filter.mightContain(q.getNameHash());
+            final Map.Entry<String, RRset> found;
+            if (mightExist) {
+                found = findRR(type, name);
             } else {
-                name = stringAndArrayList.getKey();
-                v = stringAndArrayList.getValue();
+                // nothing at all at name, which is what findRR would find
+                // the long way
+                nameNotFound(type, name);
+                found = NOT_FOUND;
             }
-            boolean firstTime = true;
-            for (RR rr : v) {
-                doOneRR(name, type, v, firstTime, rr);
-                firstTime = false;
+            if (found.getValue().isEmpty()) {
+                if (filter != null && mightExist && !zone.contains(name)) {
+                    NameFilter.falsePositive();
+                }
+                denial = true;
+                // a lone question written out in full (as they always are)
+                // gets the zone's NegativeResponse; with DO set only at the
+                // zone's name, the one name the NSEC there proves anything of
+                if (query.getQueries().length == 1 && q.getNameLength() >= 0
+                    && (!DNSSEC || zone.getName().equalsIgnoreCase(name))) {
+                    negative = zone.getNegativeResponse(DNSSEC);
+                }
+                if (negative == null) {
+                    noResourceRecord(name);
+                }
+                continue;
+            }
+            name = found.getKey();
+            final RRset rrset = found.getValue();
+            for (int i = 0; i < rrset.getRecords().size(); i++) {
+                doOneRR(name, type, rrset, i);
             }
-            addAuthorities();
-            addAdditionals();
-        }
-        if (query.getOptrr() != null && header.getNumAdditionals() > 1) {
-            header.setNumAdditionals(header.getNumAdditionals() + 1);
         }
-        header.build();
+        write(writers.get());
     }
 
-    private void noResourceRecord() {
+    private void noResourceRecord(final String name) {
         logger.traceEntry();
-        authority = Utils.combine(authority, SOA.getBytes(zone.getName(), minimum));
-        numAuthorities = 1;
+        authorities.add(new Entry(SOA, zone.getName(), false));
         if (DNSSEC) {
-            numAuthorities++;
-            addRRSignature(RRCode.SOA, zone.getName(), authority, ResponseSection.AUTHORITY);
-            addNSECRecords(zone.getName());
-            addRRSignature(RRCode.NSEC, zone.getName(), authority, ResponseSection.AUTHORITY);
+            addRRSignature(zone.getRRset(RRCode.SOA, zone.getName()), zone.getName(), ResponseSection.AUTHORITY);
+            addNSECRecords(name);
         }
         logger.traceExit();
     }
 
-    private void doOneRR(final String name, final RRCode type, final List<RR> v, final boolean firstTime, final RR rr) {
+    private void doOneRR(final String name, final RRCode type, final RRset rrset, final int i) {
         logger.traceEntry();
-        final byte[] add = rr.getBytes(name, minimum);
-        if (UDP && (responses != null) && ((responses.length + add.length) > maximumPayload)) {
-            header.setTC(true);
-        }
-        responses = Utils.combine(responses, add);
-        header.incrementNumAnswers();
+        final RR rr = rrset.getRecords().get(i);
+        answers.add(new Entry(rr, name, false));
         //Add RRSIG Records Corresponding to Type
         //seems right to add answers somewhere close but we only want to do it once on last
-        //TODO Check the stuff to assure its doing what I want it to
-        if ((v.indexOf(rr) + 1 == v.size()) && DNSSEC) {
-            addRRSignature(rr.getType(), name, responses, ResponseSection.ANSWER);
+        if (i + 1 == rrset.getRecords().size() && DNSSEC) {
+            addRRSignature(rrset, name, ResponseSection.ANSWER);
         }
-        if (firstTime && type != RRCode.NS && type != RRCode.DNSKEY) {
+        if (i == 0 && type != RRCode.NS && type != RRCode.DNSKEY) {
             logger.trace("Before calling createAuthorities");
             createAuthorities(name);
             logger.trace("After calling createAuthorities");
@@ -105,8 +141,10 @@ class Response {
             createAorAAAA(rr.getString(), name);
         }
         if (DNSSEC && type == RRCode.SOA) {
-            final List<RR> dnsKeyArrayList = zone.get(RRCode.DNSKEY, name);
-            createAdditionals(dnsKeyArrayList, name);
+            final RRset dnsKeys = zone.getRRset(RRCode.DNSKEY, name);
+            if (!dnsKeys.isEmpty()) {
+                createAdditionals(dnsKeys, name);
+            }
         }
         logger.traceExit();
     }
@@ -141,32 +179,6 @@ class Response {
         return true;
     }
 
-    private void addAuthorities() {
-        logger.traceEntry();
-        logger.trace(numAuthorities);
-        if (numAuthorities > 0) {
-            if (!UDP || responses.length + authority.length < maximumPayload) {
-                responses = Utils.combine(responses, authority);
-                header.setNumAuthorities(numAuthorities);
-            } else if (responses.length + authority.length >= maximumPayload) {
-                header.setTC(true);
-            }
-        }
-    }
-
-    private void addAdditionals() {
-        logger.traceEntry();
-        logger.trace(numAdditionals);
-        if (numAdditionals > 0) {
-            if (!UDP || responses.length + additional.length < maximumPayload) {
-                responses = Utils.combine(responses, additional);
-                header.setNumAdditionals(numAdditionals);
-            } else if (responses.length + additional.length >= maximumPayload) {
-                header.setTC(true);
-            }
-        }
-    }
-
     /**
      * Given a zone and an MX or NS hostname, see if there is an A or AAAA
      * record we can also send back...
@@ -180,116 +192,108 @@ class Response {
         }
         logger.traceEntry();
         for (RRCode rrCode : Arrays.asList(RRCode.A, RRCode.AAAA)) {
-            final List<RR> v = zone.get(rrCode, host);
+            final RRset v = zone.getRRset(rrCode, host, DNSSEC);
             if (!v.isEmpty()) {
                 createAdditionals(v, host);
             }
         }
     }
 
-    // put the possible additionals in, but don't add to response until we know there is room for them.
-    private void createAdditionals(final List<RR> v, final String host) {
+    // put the possible additionals in; write() decides if there is room for them.
+    private void createAdditionals(final RRset v, final String host) {
         logger.traceEntry();
-        final RRCode type = v.get(0).getType();
-        for (RR rr : v) {
-            additional = Utils.combine(additional, rr.getBytes(host, minimum));
-            numAdditionals++;
+        for (int i = 0; i < v.getRecords().size(); i++) {
+            additionals.add(new Entry(v.getRecords().get(i), host, false));
         }
         if (DNSSEC) {
-            addRRSignature(type, host, additional, ResponseSection.ADDITIONAL);
+            addRRSignature(v, host, ResponseSection.ADDITIONAL);
         }
     }
 
-    // put the possible authorities in, but don't add to response until we know
-    // there is room for them.
+    // put the possible authorities in; write() decides if there is room for
+    // them.
     private void createAuthorities(final String name) {
         logger.traceEntry(name);
-        final List<RR> v = zone.get(RRCode.NS, zone.getName());
-        for (RR nsrr : v) {
-            authority = Utils.combine(authority, nsrr.getBytes(nsrr.getName(), minimum));
-            numAuthorities++;
+        final RRset v = zone.getRRset(RRCode.NS, zone.getName(), DNSSEC);
+        for (int i = 0; i < v.getRecords().size(); i++) {
+            final RR nsrr = v.getRecords().get(i);
+            authorities.add(new Entry(nsrr, nsrr.getName(), false));
             createAorAAAA(nsrr.getString(), name);
         }
         if (DNSSEC) {
-            addRRSignature(RRCode.NS, zone.getName(), authority, ResponseSection.AUTHORITY);
+            addRRSignature(v, zone.getName(), ResponseSection.AUTHORITY);
         }
     }
 
-    private void addRRSignature(final RRCode type, final String name, final byte[] destination, final ResponseSection section) {
+    private void addRRSignature(final RRset rrset, final String name, final ResponseSection section) {
         logger.traceEntry(name);
-        final List<RR> rrsigv = zone.get(RRCode.RRSIG, name);
-        for (RR foo : rrsigv) {
-            final RRSIG rrsig = (RRSIG) foo;
-            if (rrsig.getTypeCovered() == type) {
-                final byte[] add = rrsig.getBytes(name, minimum);
-                foo(section, add, destination);
-            }
-        }
-    }
-
-    private void foo(final ResponseSection section, final byte[] add, final byte[] destination) {
-        switch (section) {
-        case ANSWER: 
-            if (UDP && (responses.length + add.length > maximumPayload)) {
-                header.setTC(true);
+        final RRset rrsigv = rrset.getSignatures();
+        for (int i = 0; i < rrsigv.getRecords().size(); i++) {
+            final RR rrsig = rrsigv.getRecords().get(i);
+            switch (section) {
+            case ANSWER:
+                answers.add(new Entry(rrsig, name, true));
                 break;
-            }
-            responses = Utils.combine(destination, add);
-            header.incrementNumAnswers();
-            break;
-        case AUTHORITY: 
-            if (UDP && (responses.length + add.length > maximumPayload)) {
-                header.setTC(true);
-            }
-            authority = Utils.combine(destination, add);
-            numAuthorities++;
-            break;
-        case ADDITIONAL: 
-            if (UDP && (responses.length + add.length > maximumPayload)) {
-                //if bigger then max payload exit without adding RRSIG
+            case AUTHORITY:
+                authorities.add(new Entry(rrsig, name, false));
                 break;
-            } else {
-                additional = Utils.combine(destination, add);
-                numAdditionals++;
+            case ADDITIONAL:
+                additionals.add(new Entry(rrsig, name, true));
+                break;
+            default:
+                logger.error("Shouldn\'t get here.");
                 break;
             }
-        default: 
-            logger.error("Shouldn\'t get here.");
-            break;
         }
     }
 
+    /*
+    The NSEC at name shows it has none of the type asked for.  If there is
+    nothing at name, the NSEC covering it shows that, and the one covering
+    the wildcard at its closest encloser shows nothing could have been
+    synthesized for it (RFC 4035 3.1.3.2); often they are the same one.
+     */
     private void addNSECRecords(final String name) {
         logger.traceEntry();
-        final List<RR> nsecv = zone.get(RRCode.NSEC, zone.getName());
-        final NSECRR nsec = (NSECRR) nsecv.get(0);
-        final byte[] add = nsec.getBytes(name, minimum);
-        authority = Utils.combine(authority, add);
-        numAuthorities++;
+        final NSECChain chain = zone.getNSECChain();
+        if (chain == null) {
+            return;
+        }
+        final String owner = chain.cover(name);
+        addNSEC(owner);
+        if (!owner.equals(ZoneIndex.canonical(name))) {
+            final String wildcard = chain.cover("*." + chain.closestEncloser(name));
+            if (!wildcard.equals(owner)) {
+                addNSEC(wildcard);
+            }
+        }
+    }
+
+    private void addNSEC(final String owner) {
+        final RRset nsec = zone.getRRset(RRCode.NSEC, owner);
+        authorities.add(new Entry(nsec.getRecords().get(0), owner, false));
+        addRRSignature(nsec, owner, ResponseSection.AUTHORITY);
     }
 
-    private Map.Entry<String, List<RR>> findRR(final RRCode type, final String name) {
+    private Map.Entry<String, RRset> findRR(final RRCode type, final String name) {
         logger.traceEntry();
-        List<RR> list = zone.get(type, name);
-        if (list.isEmpty()) {
+        final RRset rrset = zone.getRRset(type, name, DNSSEC);
+        if (rrset.isEmpty()) {
             logger.debug("Didn\'t find: " + name);
             if (type != RRCode.AAAA && type != RRCode.A) {
                 nameNotFound(type, name);
-                return Map.entry("", Collections.emptyList());
+                return NOT_FOUND;
             } else {
                 return lookForCNAME(type, name);
             }
         }
-        Map.Entry<java.lang.String, List<edu.msudenver.cs.jdnss.RR>> ret = Map.entry(name, list);
+        Map.Entry<String, RRset> ret = Map.entry(name, rrset);
         logger.traceExit(ret);
         return ret;
     }
 
     private void nameNotFound(final RRCode type, final String name) {
         logger.traceEntry();
-        if (DNSSEC) {
-            throw new AssertionError();
-        }
         if (type == RRCode.MX) {
             logger.debug("\'" + type.toString() + "\' lookup of " + name + " failed");
             header.setRcode(ErrorCodes.NOERROR.getCode());
@@ -299,23 +303,21 @@ class Response {
         }
     }
 
-    private Map.Entry<String, List<RR>> lookForCNAME(final RRCode type, final String name) {
+    private Map.Entry<String, RRset> lookForCNAME(final RRCode type, final String name) {
         logger.traceEntry();
         logger.debug("Looking for a CNAME for " + name);
-        final Map.Entry<String, List<RR>> empty = Map.entry("", Collections.emptyList());
-        final List<RR> u = zone.get(RRCode.CNAME, name);
+        final RRset u = zone.getRRset(RRCode.CNAME, name, false);
         if (u.isEmpty()) {
             dealWithOther(type, name);
-            return empty;
+            return NOT_FOUND;
         }
-        final String s = u.get(0).getString();
-        final List<RR> v = zone.get(type, s);
+        final String s = u.getRecords().get(0).getString();
+        final RRset v = zone.getRRset(type, s, DNSSEC);
         if (!v.isEmpty()) {
-            responses = Utils.combine(responses, u.get(0).getBytes(name, minimum));
-            header.incrementNumAnswers();
+            answers.add(new Entry(u.getRecords().get(0), name, false));
             return Map.entry(s, v);
         }
-        return empty;
+        return NOT_FOUND;
     }
 
     /*
@@ -338,32 +340,149 @@ class Response {
         if (v.isEmpty()) {
             logger.debug(type.toString() + " lookup of " + name + " failed");
             header.setRcode(ErrorCodes.NAMEERROR.getCode());
-            return;
-        }
-        if (DNSSEC) {
-            addNSECRecords(name);
         }
     }
 
-    byte[] getBytes() {
-        logger.traceEntry();
-        byte[] abc = new byte[0];
-        abc = Utils.combine(abc, header.getHeader());
-        abc = Utils.combine(abc, query.buildResponseQueries());
-        abc = Utils.combine(abc, responses);
+    /**
+     * @return whether, over UDP, the sections written so far are too big
+     */
+    private boolean tooBig(final DnsMessageWriter writer, final boolean orEqual) {
+        final int length = writer.position() - sectionsStart;
+        return UDP && (length > maximumPayload || orEqual && length == maximumPayload);
+    }
+
+    /*
+    Writes the whole response in one pass.  Only the sections count against
+    the payload size, as they always have.  Every answer is written, but TC
+    is set if they don't fit, and an answer RRSIG that doesn't fit is left
+    out.  The authority and additional sections go in whole or not at all,
+    setting TC if not; additional RRSIGs that don't fit are just left out.
+     */
+    private void write(final DnsMessageWriter writer) {
+        writer.clear();
+        writer.skip(12);
+        query.writeQuestions(writer);
+        sectionsStart = writer.position();
+
+        int numAnswers = 0;
+        for (Entry e : answers) {
+            final int mark = writer.position();
+            e.rr.write(writer, e.name, minimum);
+            if (tooBig(writer, false)) {
+                header.setTC(true);
+                if (e.optional) {
+                    writer.reset(mark);
+                    continue;
+                }
+            }
+            numAnswers++;
+        }
+
+        final int numAuthorities = negative != null ? writeNegative(writer)
+            : writeSection(writer, authorities);
+        final int numAdditionals = writeSection(writer, additionals);
+        sectionsEnd = writer.position();
+
         /*
         If an OPT record is present in a received request, compliant
         responders MUST include an OPT record in their respective responses.
          */
-        if (query.getOptrr() != null) {
-            abc = Utils.combine(abc, query.getOptrr().getBytes());
+        final OPTRR optrr = query.getOptrr();
+        if (optrr != null) {
+            optrr.write(writer);
+        }
+
+        header.setNumAnswers(numAnswers);
+        header.setNumAuthorities(numAuthorities);
+        header.setNumAdditionals(numAdditionals + (optrr != null ? 1 : 0));
+        header.build();
+        writer.putBytesAt(0, header.getHeader());
+
+        bytes = writer.toByteArray();
+    }
+
+    /**
+     * @return how many records were written
+     */
+    private int writeSection(final DnsMessageWriter writer, final List<Entry> section) {
+        final int start = writer.position();
+        int count = 0;
+        for (Entry e : section) {
+            final int mark = writer.position();
+            e.rr.write(writer, e.name, minimum);
+            if (e.optional && tooBig(writer, false)) {
+                writer.reset(mark);
+                continue;
+            }
+            count++;
         }
-        return abc;
+
+        if (count > 0 && tooBig(writer, true)) {
+            writer.reset(start);
+            header.setTC(true);
+            return 0;
+        }
+        return count;
+    }
+
+    /**
+     * writeSection for the NegativeResponse
+     */
+    private int writeNegative(final DnsMessageWriter writer) {
+        final int start = writer.position();
+        final int count = negative.write(writer);
+        if (tooBig(writer, true)) {
+            writer.reset(start);
+            header.setTC(true);
+            return 0;
+        }
+        return count;
+    }
+
+    /**
+     * Answers a parsed query, from the ResponseCache when it can.
+     *
+     * @return the complete response
+     */
+    static byte[] answer(final Query query, final boolean UDP) {
+        final ResponseCache cache = JDNSS.responseCache;
+        final byte[] cached = cache.get(query, UDP);
+        if (cached != null) {
+            Metrics.answered(query, cached);
+            return cached;
+        }
+
+        // the Response changes the query's Header, so ask first; and take
+        // the generation before the zones are looked at, in case they are
+        // reloaded while we answer
+        final boolean cacheable = ResponseCache.isCacheable(query);
+        final int generation = cache.getGeneration();
+        final Response r = new Response(query, UDP);
+        // negative answers are nearly as cheap to make as to look up, and a
+        // flood of them for random names would push everything else out
+        if (cacheable && !(r.zone instanceof DBZone) && !r.denial) {
+            cache.put(query, UDP, generation, r.zone, r.header.getHeader(), r.getSections());
+        }
+        query.setZone(r.zone);
+        final byte[] bytes = r.getBytes();
+        Metrics.answered(query, bytes);
+        return bytes;
+    }
+
+    /**
+     * @return the answer, authority and additional sections
+     */
+    byte[] getSections() {
+        return Arrays.copyOfRange(bytes, sectionsStart, sectionsEnd);
+    }
+
+    byte[] getBytes() {
+        return bytes;
     }
 
     @java.lang.Override
     @java.lang.SuppressWarnings("all")
     public java.lang.String toString() {
-        return "Response(logger=" + this.logger + ", header=" + this.header + ", additional=" + java.util.Arrays.toString(this.additional) + ", numAdditionals=" + this.numAdditionals + ", authority=" + java.util.Arrays.toString(this.authority) + ", numAuthorities=" + this.numAuthorities + ", zone=" + this.zone + ", minimum=" + this.minimum + ", DNSSEC=" + this.DNSSEC + ", responses=" + java.util.Arrays.toString(this.responses) + ", maximumPayload=" + this.maximumPayload + ", SOA=" + this.SOA + ", UDP=" + this.UDP + ", query=" + this.query + ")";
+        return "Response(logger=" + this.logger + ", header=" + this.header + ", answers=" + this.answers.size() + ", authorities=" + this.authorities.size() + ", additionals=" + this.additionals.size() + ", zone=" + this.zone + ", minimum=" + this.minimum + ", DNSSEC=" + this.DNSSEC + ", bytes=" + java.util.Arrays.toString(this.bytes) + ", maximumPayload=" + this.maximumPayload + ", SOA=" + this.SOA + ", UDP=" + this.UDP + ", query=" + this.query + ")";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,264 @@
+package edu.msudenver.cs.jdnss;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finished responses, so that a popular name doesn't go through the zone
+ * lookups and all the RR.getBytes and Utils.combine copying every time.
+ *
+ * What is kept is the response without the parts that differ from one
+ * query to the next: the header minus its ID (and the RD bit, which is
+ * echoed), and the answer, authority and additional sections.  On a hit
+ * the question is echoed and the OPT record built fresh, so cookies and
+ * keepalives are still per query.  The sections can hold compression
+ * pointers into the question; they stay right because the question always
+ * starts at offset 12 and the echoed one is the same name as the cached one.
+ *
+ * Only zone file answers with a single question are cached (Response
+ * doesn't put answers from a DBZone, which can change under us), and an
+ * error the query itself caused (FORMERR, a bad cookie) says nothing about
+ * the next query.  Whenever the zones change call invalidate(), which bumps
+ * a generation so everything cached before is ignored.
+ *
+ * Entries are found by the question's name as it is on the wire, ignoring
+ * case, so a lookup doesn't need the name as a String; it goes through a
+ * Key per thread that is pointed at each query in turn.
+ */
+class ResponseCache {
+    private static final int HEADER_LENGTH = 12;
+    private static final int RD_BIT = 1;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final int maximumEntries;
+    // for looking up, never put in entries
+    private final ThreadLocal<Key> probes = ThreadLocal.withInitial(Key::new);
+    // for putting a response back together
+    private static final ThreadLocal<DnsMessageWriter> writers = ThreadLocal.withInitial(
+        () -> new DnsMessageWriter(DnsMessageWriter.DEFAULT_CAPACITY));
+
+    /**
+     * @param maximumEntries how many responses to hold; 0 disables the cache
+     */
+    ResponseCache(final int maximumEntries) {
+        assert maximumEntries >= 0;
+        this.maximumEntries = maximumEntries;
+    }
+
+    /**
+     * @return the complete response to the query, or null if it isn't cached
+     */
+    byte[] get(final Query query, final boolean UDP) {
+        if (maximumEntries == 0 || !isCacheable(query)) {
+            return null;
+        }
+
+        Entry entry = entries.get(probes.get().set(query, UDP));
+        if (entry == null || entry.generation != generation.get()) {
+            return null;
+        }
+
+        query.setZone(entry.zone);
+        return entry.toBytes(query, writers.get());
+    }
+
+    /**
+     * Remember a response built by Response.
+     *
+     * @param query what was asked; it must have been cacheable before the
+     * Response was built, as the Response shares and changes its Header
+     * @param header the 12 header bytes of the response
+     * @param sections everything after the question and before the OPT
+     */
+    void put(final Query query, final boolean UDP, final byte[] header,
+             final byte[] sections) {
+        put(query, UDP, getGeneration(), null, header, sections);
+    }
+
+    /**
+     * @param generation getGeneration() from before the Response was built;
+     * if the zones have changed since, the response isn't kept
+     * @param zone the zone that answered, for Metrics
+     */
+    void put(final Query query, final boolean UDP, final int generation, final Zone zone,
+             final byte[] header, final byte[] sections) {
+        if (maximumEntries == 0 || generation != this.generation.get()) {
+            return;
+        }
+
+        int rcode = header[3] & 0x0f;
+        if (rcode != ErrorCodes.NOERROR.getCode() && rcode != ErrorCodes.NAMEERROR.getCode()) {
+            return;
+        }
+
+        // crude, but a flood of random names can't grow us without bound and
+        // the popular names come straight back
+        if (entries.size() >= maximumEntries) {
+            entries.clear();
+        }
+
+        entries.put(new Key().set(query, UDP).copy(), new Entry(generation, zone, header, sections));
+    }
+
+    /**
+     * Forget everything; to be called when the zones change.
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    int getGeneration() {
+        return generation.get();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Whether a query can be answered from, or its response put in, the
+     * cache.  This has to be asked before the Response is built.
+     */
+    static boolean isCacheable(final Query query) {
+        Header header = query.getHeader();
+        return header.getNumQuestions() == 1 && header.getRcode() == ErrorCodes.NOERROR.getCode()
+            && query.getQueries().length == 1 && query.getQueries()[0].getNameLength() >= 0;
+    }
+
+    private static class Entry {
+        private final int generation;
+        private final Zone zone;
+        // header bytes 2 through 11, with RD cleared
+        private final byte[] flagsAndCounts;
+        private final byte[] sections;
+
+        Entry(final int generation, final Zone zone, final byte[] header, final byte[] sections) {
+            this.generation = generation;
+            this.zone = zone;
+            this.flagsAndCounts = new byte[HEADER_LENGTH - 2];
+            System.arraycopy(header, 2, flagsAndCounts, 0, flagsAndCounts.length);
+            flagsAndCounts[0] &= ~RD_BIT;
+            this.sections = sections;
+        }
+
+        byte[] toBytes(final Query query, final DnsMessageWriter writer) {
+            Header header = query.getHeader();
+
+            writer.clear();
+            writer.putShort(header.getId());
+            writer.putByte(flagsAndCounts[0] | (header.isRD() ? RD_BIT : 0));
+            writer.putBytes(flagsAndCounts, 1, flagsAndCounts.length - 1);
+            query.writeQuestions(writer);
+            writer.putBytes(sections);
+            if (query.getOptrr() != null) {
+                query.getOptrr().write(writer);
+            }
+            return writer.toByteArray();
+        }
+    }
+
+    /**
+     * Everything about a query that changes the cacheable part of its
+     * response.  The name is length bytes at offset in buffer, with no
+     * compression pointers.
+     */
+    private static class Key {
+        private ByteBuffer buffer;
+        private int offset;
+        private int length;
+        private int nameHash;
+        private RRCode type;
+        private int qclass;
+        private boolean CD;
+        private boolean OPT;
+        private boolean DNSSEC;
+        // the size that decides truncation; only UDP truncates
+        private int payload;
+
+        Key set(final Query query, final boolean UDP) {
+            Queries q = query.getQueries()[0];
+            OPTRR optrr = query.getOptrr();
+
+            this.buffer = q.getBuffer();
+            this.offset = q.getNameOffset();
+            this.length = q.getNameLength();
+            this.nameHash = q.getNameHash();
+            this.type = q.getType();
+            this.qclass = q.getQclass();
+            this.CD = query.getHeader().isCD();
+            this.OPT = optrr != null;
+            this.DNSSEC = OPT && optrr.isDNSSEC();
+            this.payload = !UDP ? 0 : OPT ? optrr.getPayloadSize() : 512;
+            return this;
+        }
+
+        /**
+         * @return a Key with a copy of the name, as the query's buffer is
+         * going to be reused
+         */
+        Key copy() {
+            final Key k = new Key();
+            final byte[] name = new byte[length];
+            buffer.get(offset, name);
+            k.buffer = ByteBuffer.wrap(name);
+            k.offset = 0;
+            k.length = length;
+            k.nameHash = nameHash;
+            k.type = type;
+            k.qclass = qclass;
+            k.CD = CD;
+            k.OPT = OPT;
+            k.DNSSEC = DNSSEC;
+            k.payload = payload;
+            return k;
+        }
+
+        private boolean nameEquals(final Key other) {
+            if (length != other.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                int a = buffer.get(offset + i);
+                int b = other.buffer.get(other.offset + i);
+                if (a != b) {
+                    if (a >= 'A' && a <= 'Z') {
+                        a += 'a' - 'A';
+                    }
+                    if (b >= 'A' && b <= 'Z') {
+                        b += 'a' - 'A';
+                    }
+                    if (a != b) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return nameHash == other.nameHash && type == other.type && qclass == other.qclass
+                && CD == other.CD && OPT == other.OPT && DNSSEC == other.DNSSEC
+                && payload == other.payload && nameEquals(other);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = nameHash;
+            result = result * 31 + type.ordinal();
+            result = result * 31 + qclass;
+            result = result * 31 + (CD ? 1 : 0);
+            result = result * 31 + (OPT ? 1 : 0);
+            result = result * 31 + (DNSSEC ? 1 : 0);
+            result = result * 31 + payload;
+            return result;
+        }
+    }
+}
@@ -10,10 +10,12 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 class TCP extends Thread {
     private final Logger logger = JDNSS.logger;
@@ -21,6 +23,8 @@ class TCP extends Thread {
     private int backlog;
     private String address;
     private int port;
+    // accepted and not yet closed, whether or not they have a thread yet
+    private final Set<TCPThread> connections = ConcurrentHashMap.newKeySet();
 
     TCP(final String[] parts) {
         type = parts[0];
@@ -66,7 +70,10 @@ class TCP extends Thread {
                 return;
         }
 
-        ExecutorService pool = Executors.newFixedThreadPool(JDNSS.jargs.getThreads());
+        // connections stay open for many queries, so they read on one pool
+        // and answer on another.
+        ExecutorService pool = Pools.newPool(JDNSS.jargs.getThreads());
+        ExecutorService workers = Pools.newPool(JDNSS.jargs.getThreads());
 
         while (true) {
             Socket socket = null;
@@ -80,7 +87,23 @@ class TCP extends Thread {
 
             logger.trace("Received TCP packet");
 
-            Future f = pool.submit(new TCPThread(socket));
+            // each connection holds a thread; if this one would have to wait
+            // for one, make room
+            if (pool instanceof ThreadPoolExecutor
+                && connections.size() >= ((ThreadPoolExecutor) pool).getMaximumPoolSize()) {
+                closeIdlest();
+            }
+
+            final TCPThread connection = new TCPThread(socket, workers,
+                type.equals("TLS") ? Metrics.Listener.TLS : Metrics.Listener.TCP);
+            connections.add(connection);
+            Future f = pool.submit(() -> {
+                try {
+                    connection.run();
+                } finally {
+                    connections.remove(connection);
+                }
+            });
 
             // if we're only supposed to answer once, and we're the first,
             // bring everything down with us.
@@ -95,4 +118,26 @@ class TCP extends Thread {
             }
         }
     }
+
+    /**
+     * Close the connection that has been idle the longest, if any is.
+     * Busy connections are left alone, and a new client waits for one of
+     * them as before.
+     */
+    private void closeIdlest() {
+        TCPThread idlest = null;
+        long longest = -1;
+        for (TCPThread connection : connections) {
+            final long idle = connection.idleNanos();
+            if (idle > longest) {
+                idlest = connection;
+                longest = idle;
+            }
+        }
+        if (idlest != null && idlest.closeIfIdle()) {
+            // it no longer needs a thread, though it takes a moment to let go
+            connections.remove(idlest);
+            logger.debug("Closing a connection idle for {} ms for a new client", longest / 1000000);
+        }
+    }
 }
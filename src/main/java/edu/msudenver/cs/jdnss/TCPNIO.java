@@ -0,0 +1,492 @@
+package edu.msudenver.cs.jdnss;
+
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-blocking alternative to TCP, specified as "TCPNIO@address@port" or
+ * "TLSNIO@address@port".  One selector thread accepts, reads and writes
+ * every connection; TLS is done with an SSLEngine rather than an
+ * SSLServerSocket.  Complete queries are parsed and answered on a separate
+ * pool of workers, and the responses are handed back to the selector
+ * thread to be written, so an idle or slow client costs buffers rather
+ * than a thread.  Connections follow the same rules as TCPThread:
+ * pipelined queries, out of order responses, --tcpIdleTimeout and
+ * --tcpMaxQueries.
+ */
+class TCPNIO extends Thread {
+    // how many queries from one connection may be waiting on the workers
+    private static final int MAXIMUM_OUTSTANDING = 32;
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final Logger logger = JDNSS.logger;
+    private final boolean tls;
+    private ServerSocketChannel server;
+    private Selector selector;
+    private SSLContext sslContext;
+    private ExecutorService workers;
+    // connections that the workers have something new for
+    private final Queue<Connection> pending = new ConcurrentLinkedQueue<>();
+    private long lastIdleCheck;
+
+    TCPNIO(final String[] parts) {
+        tls = parts[0].equals("TLSNIO");
+
+        try {
+            if (tls) {
+                sslContext = HTTPS.getSslContext();
+            }
+
+            int port = Integer.parseInt(parts[2]);
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getByName(parts[1]), port),
+                JDNSS.jargs.backlog);
+            server.configureBlocking(false);
+
+            selector = Selector.open();
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (Exception e) {
+            logger.catching(e);
+        }
+    }
+
+    public void run() {
+        logger.traceEntry();
+
+        workers = Pools.newPool(JDNSS.jargs.getThreads());
+
+        while (true) {
+            try {
+                selector.select(1000);
+            } catch (IOException ioe) {
+                logger.catching(ioe);
+                continue;
+            }
+
+            Connection c;
+            while ((c = pending.poll()) != null) {
+                c.resume();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                if (!key.isValid()) {
+                    continue;
+                }
+
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+
+                c = (Connection) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        c.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        c.write();
+                    }
+                } catch (IOException ioe) {
+                    logger.debug(ioe);
+                    c.close();
+                }
+            }
+
+            closeIdle();
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = server.accept();
+            if (channel == null) {
+                return;
+            }
+
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            SSLEngine engine = null;
+            if (tls) {
+                engine = sslContext.createSSLEngine();
+                engine.setUseClientMode(false);
+                engine.beginHandshake();
+            }
+
+            Connection c = new Connection(channel, engine);
+            c.key = channel.register(selector, SelectionKey.OP_READ, c);
+        } catch (IOException ioe) {
+            logger.catching(ioe);
+        }
+    }
+
+    private void closeIdle() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck < 1000) {
+            return;
+        }
+        lastIdleCheck = now;
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                Connection c = (Connection) key.attachment();
+                if (c.isIdle() && now - c.lastActivity > JDNSS.jargs.getTcpIdleTimeout()) {
+                    logger.debug("Closing idle connection from " + c.clientAddress);
+                    c.close();
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer grow(final ByteBuffer buffer, final int minimum) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, minimum));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private class Connection {
+        private final SocketChannel channel;
+        private final SSLEngine engine;
+        private final String clientAddress;
+        private SelectionKey key;
+        // what the client sent; for TLS the still encrypted bytes
+        private ByteBuffer netIn;
+        // TLS only: the decrypted bytes
+        private ByteBuffer appIn;
+        // TLS only: encrypted bytes waiting to be written, kept flipped
+        private ByteBuffer netOut;
+        // length prefixed responses, in plain text, from the workers
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean runningTasks;
+        // the client has closed its side
+        private boolean eof;
+        private int queries;
+        private long lastActivity = System.currentTimeMillis();
+
+        Connection(final SocketChannel channel, final SSLEngine engine) {
+            this.channel = channel;
+            this.engine = engine;
+            this.clientAddress = channel.socket().getInetAddress().toString();
+
+            if (engine == null) {
+                netIn = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            } else {
+                netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+                netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                netOut.flip();
+            }
+        }
+
+        boolean isIdle() {
+            return inFlight.get() == 0 && responses.isEmpty()
+                && (netOut == null || !netOut.hasRemaining());
+        }
+
+        void read() throws IOException {
+            if (channel.read(netIn) == -1) {
+                eof = true;
+            }
+            lastActivity = System.currentTimeMillis();
+            process();
+        }
+
+        /**
+         * Called on the selector thread when a worker has finished a
+         * response or a TLS task.
+         */
+        void resume() {
+            if (!key.isValid()) {
+                return;
+            }
+
+            try {
+                process();
+                write();
+            } catch (IOException ioe) {
+                logger.debug(ioe);
+                close();
+            }
+        }
+
+        private void process() throws IOException {
+            if (engine == null) {
+                extract(netIn);
+            } else {
+                unwrap();
+                extract(appIn);
+            }
+
+            updateInterest();
+            closeIfDone();
+        }
+
+        private void unwrap() throws IOException {
+            while (!runningTasks) {
+                switch (engine.getHandshakeStatus()) {
+                    case NEED_TASK:
+                        runTasks();
+                        return;
+                    case NEED_WRAP:
+                        if (!flush()) {
+                            return;
+                        }
+                        wrap(EMPTY);
+                        continue;
+                    default:
+                        break;
+                }
+
+                netIn.flip();
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                netIn.compact();
+
+                switch (result.getStatus()) {
+                    case BUFFER_OVERFLOW:
+                        appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                        continue;
+                    case BUFFER_UNDERFLOW:
+                        if (netIn.remaining() == 0) {
+                            netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+                        }
+                        return;
+                    case CLOSED:
+                        eof = true;
+                        return;
+                    default:
+                        break;
+                }
+
+                if (result.bytesConsumed() == 0
+                        && result.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NEED_WRAP
+                        && result.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    return;
+                }
+            }
+        }
+
+        // the expensive parts of the handshake go to the workers too
+        private void runTasks() {
+            runningTasks = true;
+            workers.execute(() -> {
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                runningTasks = false;
+                pending.add(this);
+                selector.wakeup();
+            });
+        }
+
+        private void wrap(final ByteBuffer source) throws IOException {
+            netOut.clear();
+            SSLEngineResult result = engine.wrap(source, netOut);
+            netOut.flip();
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                eof = true;
+            }
+            flush();
+        }
+
+        /**
+         * @return true if all the encrypted output has been written
+         */
+        private boolean flush() throws IOException {
+            channel.write(netOut);
+            return !netOut.hasRemaining();
+        }
+
+        /**
+         * Pull every complete length-prefixed query out of the buffer and
+         * send it to the workers.
+         */
+        private void extract(final ByteBuffer buffer) {
+            buffer.flip();
+
+            while (buffer.remaining() >= 2 && queries < JDNSS.jargs.getTcpMaxQueries()
+                    && inFlight.get() < MAXIMUM_OUTSTANDING) {
+                int length = buffer.getShort(buffer.position()) & 0xffff;
+                if (buffer.remaining() < length + 2) {
+                    break;
+                }
+
+                buffer.position(buffer.position() + 2);
+                byte[] query = new byte[length];
+                buffer.get(query);
+                submit(query);
+                queries++;
+            }
+
+            // a query bigger than the buffer
+            int needed = buffer.remaining() >= 2
+                ? (buffer.getShort(buffer.position()) & 0xffff) + 2 : 0;
+            buffer.compact();
+
+            if (needed > buffer.capacity()) {
+                ByteBuffer bigger = grow(buffer, needed);
+                if (engine == null) {
+                    netIn = bigger;
+                } else {
+                    appIn = bigger;
+                }
+            }
+        }
+
+        private void submit(final byte[] query) {
+            inFlight.incrementAndGet();
+            workers.execute(() -> {
+                try {
+                    byte[] b = answer(query);
+                    if (b != null) {
+                        ByteBuffer response = ByteBuffer.allocate(b.length + 2);
+                        response.putShort((short) b.length);
+                        response.put(b);
+                        response.flip();
+                        responses.add(response);
+                    }
+                } finally {
+                    inFlight.decrementAndGet();
+                    pending.add(this);
+                    selector.wakeup();
+                }
+            });
+        }
+
+        // runs on a worker
+        private byte[] answer(final byte[] query) {
+            try {
+                final long start = System.nanoTime();
+                Query q = new Query(query);
+                q.parseQueries(clientAddress);
+
+                OPTRR optrr = q.getOptrr();
+                if (optrr != null && optrr.isTcpKeepalive()) {
+                    optrr.setTcpKeepaliveTimeout(JDNSS.jargs.getTcpIdleTimeout());
+                }
+
+                final byte[] b = Response.answer(q, false);
+                (tls ? Metrics.Listener.TLS : Metrics.Listener.TCP).answered(start);
+                return b;
+            } catch (RuntimeException | AssertionError e) {
+                // one bad query shouldn't cost the others on this connection
+                logger.catching(e);
+                return null;
+            }
+        }
+
+        void write() throws IOException {
+            ByteBuffer response;
+
+            while ((response = responses.peek()) != null) {
+                if (engine == null) {
+                    channel.write(response);
+                    if (response.hasRemaining()) {
+                        break;
+                    }
+                } else {
+                    if (!flush()) {
+                        break;
+                    }
+                    // a TLS record may hold only part of a large response
+                    wrap(response);
+                    if (response.hasRemaining()) {
+                        continue;
+                    }
+                }
+
+                responses.poll();
+                lastActivity = System.currentTimeMillis();
+
+                // if we're only supposed to answer once, and we're the first,
+                // bring everything down with us.
+                if (JDNSS.jargs.isOnce()) {
+                    if (engine != null) {
+                        flush();
+                    }
+                    System.exit(0);
+                }
+            }
+
+            // a handshake that stopped on a full send buffer goes on from
+            // here, since nothing the client sends will drive it
+            if (engine != null && flush()) {
+                final SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+                if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP
+                        || status == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                    process();
+                }
+            }
+
+            updateInterest();
+            closeIfDone();
+        }
+
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+
+            int ops = 0;
+            if (!eof && queries < JDNSS.jargs.getTcpMaxQueries()
+                    && inFlight.get() < MAXIMUM_OUTSTANDING) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!responses.isEmpty() || (netOut != null && netOut.hasRemaining())) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        private void closeIfDone() {
+            if ((eof || queries >= JDNSS.jargs.getTcpMaxQueries()) && isIdle()) {
+                close();
+            }
+        }
+
+        void close() {
+            if (engine != null && key.isValid()) {
+                // best effort at a close_notify
+                try {
+                    engine.closeOutbound();
+                    if (flush()) {
+                        wrap(EMPTY);
+                    }
+                } catch (IOException ioe) {
+                    logger.debug(ioe);
+                }
+            }
+
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                logger.catching(ioe);
+            }
+        }
+    }
+}
@@ -6,16 +6,55 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
+/**
+ * Serves one TCP or TLS connection.  Following RFC 7766, the connection
+ * stays open for up to --tcpMaxQueries queries until the client closes it
+ * or it has been idle for --tcpIdleTimeout milliseconds.  Queries are read
+ * as they arrive (pipelined) and, when there is a pool of workers, answered
+ * concurrently, so responses are written as they complete and possibly out
+ * of order.
+ *
+ * Each open connection holds a thread of its listener's pool, so when the
+ * pool is full and another client is waiting, TCP closes the connection
+ * that has been idle the longest (RFC 7766 6.2.3) with closeIfIdle().
+ */
 class TCPThread implements Runnable {
+    // how many queries from one connection may be waiting on the workers
+    private static final int MAXIMUM_OUTSTANDING = 32;
+
     private final Socket socket;
+    private final ExecutorService workers;
+    private final Metrics.Listener listener;
     private final Logger logger = JDNSS.logger;
+    private final Semaphore outstanding = new Semaphore(MAXIMUM_OUTSTANDING);
     private InputStream is;
     private OutputStream os;
+    // blocked on the first byte of the next query's length; set and
+    // cleared, like closedIdle, only while holding this
+    private volatile boolean waiting;
+    // when a query was last read or a response written
+    private volatile long lastActivity = System.nanoTime();
+    private volatile boolean closedIdle;
+
     /**
      * @param socket the socket to talk to
      */
-    TCPThread(Socket socket) { this.socket = socket; }
+    TCPThread(Socket socket) { this(socket, null, Metrics.Listener.TCP); }
+
+    /**
+     * @param socket the socket to talk to
+     * @param workers where to answer queries; null to answer them in order
+     * @param listener what to count the queries as, TCP or TLS
+     */
+    TCPThread(Socket socket, ExecutorService workers, Metrics.Listener listener) {
+        this.socket = socket;
+        this.workers = workers;
+        this.listener = listener;
+    }
 
     private void openStreams() throws IOException {
         is = socket.getInputStream();
@@ -23,39 +62,130 @@ class TCPThread implements Runnable {
     }
 
     private void closeStreams() throws IOException {
-        is.close();
-        os.close();
+        if (is != null) {
+            is.close();
+            os.close();
+        }
         socket.close();
     }
 
+    private boolean readFully(byte[] buffer) throws IOException {
+        int count = 0;
+        while (count < buffer.length) {
+            int read = is.read(buffer, count, buffer.length - count);
+            if (read == -1) {
+                return false;
+            }
+            count += read;
+        }
+        return true;
+    }
+
+    /**
+     * @return the length of the next query, or -1 if the client is done
+     */
     private int getLength() throws IOException{
         // in TCP, the first two bytes signify the length of the request
         byte buffer[] = new byte[2];
 
-        assert is.read(buffer, 0, 2) == 2;
+        // idle only until the first byte arrives; the rest of a query is
+        // in progress
+        synchronized (this) {
+            waiting = true;
+        }
+        final int first = is.read();
+        synchronized (this) {
+            waiting = false;
+            if (closedIdle) {
+                return -1;
+            }
+        }
+        if (first == -1) {
+            return -1;
+        }
+        buffer[0] = (byte) first;
+
+        if (is.read(buffer, 1, 1) != 1) {
+            return -1;
+        }
 
         return Utils.addThem(buffer[0], buffer[1]);
     }
 
-    private Query getQuery() throws IOException{
-        byte query[] = new byte[getLength()];
-        assert is.read(query) == query.length;
+    /**
+     * @return the next query, or null if the client is done
+     */
+    private byte[] getQuery() throws IOException{
+        int length = getLength();
+        if (length == -1) {
+            return null;
+        }
 
-        Query q = new Query(query);
-        q.parseQueries(socket.getInetAddress().toString());
-        return q;
+        byte query[] = new byte[length];
+        if (!readFully(query)) {
+            return null;
+        }
+        return query;
     }
 
-    private void sendResponse (Query q) throws IOException{
-        Response r = new Response(q, false);
-        byte b[] = r.getBytes();
+    private void sendResponse (Query q, long start) throws IOException{
+        OPTRR optrr = q.getOptrr();
+        if (optrr != null && optrr.isTcpKeepalive()) {
+            optrr.setTcpKeepaliveTimeout(JDNSS.jargs.getTcpIdleTimeout());
+        }
+
+        byte b[] = Response.answer(q, false);
+        listener.answered(start);
 
         byte buffer[] = new byte[2];
         int count = b.length;
         buffer[0] = Utils.getByte(count, 2);
         buffer[1] = Utils.getByte(count, 1);
 
-        os.write(Utils.combine(buffer, b));
+        // responses may complete on several workers at once
+        synchronized (os) {
+            os.write(Utils.combine(buffer, b));
+            os.flush();
+        }
+        lastActivity = System.nanoTime();
+    }
+
+    private void answer(byte[] query) {
+        try {
+            final long start = System.nanoTime();
+            Query q = new Query(query);
+            q.parseQueries(socket.getInetAddress().toString());
+            sendResponse(q, start);
+        } catch (IOException ioe) {
+            logger.catching(ioe);
+        } catch (RuntimeException | AssertionError e) {
+            // one bad query shouldn't cost the others on this connection
+            logger.catching(e);
+        }
+    }
+
+    private void serveQueries() throws IOException {
+        for (int i = 0; i < JDNSS.jargs.getTcpMaxQueries(); i++) {
+            final byte[] query = getQuery();
+            if (query == null) {
+                return;
+            }
+            lastActivity = System.nanoTime();
+
+            if (workers == null) {
+                answer(query);
+                continue;
+            }
+
+            outstanding.acquireUninterruptibly();
+            workers.execute(() -> {
+                try {
+                    answer(query);
+                } finally {
+                    outstanding.release();
+                }
+            });
+        }
     }
 
     public void run() {
@@ -63,10 +193,58 @@ class TCPThread implements Runnable {
 
         try {
             openStreams();
-            sendResponse(getQuery());
+            socket.setSoTimeout(JDNSS.jargs.getTcpIdleTimeout());
+            serveQueries();
+        } catch (SocketTimeoutException ste) {
+            logger.debug("Closing idle connection from " + socket.getInetAddress());
+        } catch (IOException ioe) {
+            if (closedIdle) {
+                logger.debug("Closed idle connection from " + socket.getInetAddress()
+                    + " for another client");
+            } else {
+                logger.catching(ioe);
+            }
+        }
+
+        // let the answers already in progress go out before closing
+        outstanding.acquireUninterruptibly(MAXIMUM_OUTSTANDING);
+
+        try {
             closeStreams();
         } catch (IOException ioe) {
             logger.catching(ioe);
         }
     }
+
+    /**
+     * @return how long, in nanoseconds, the connection has been waiting for
+     * a query with nothing in progress, or -1 if it hasn't been
+     */
+    long idleNanos() {
+        if (!waiting || outstanding.availablePermits() != MAXIMUM_OUTSTANDING) {
+            return -1;
+        }
+        return System.nanoTime() - lastActivity;
+    }
+
+    /**
+     * Close the connection, if it is still idle, to free its thread.
+     *
+     * @return whether it was closed
+     */
+    synchronized boolean closeIfIdle() {
+        // checked again under the lock getLength() clears waiting with, so
+        // a query that has just started arriving isn't cut off
+        if (idleNanos() < 0) {
+            return false;
+        }
+        closedIdle = true;
+        waiting = false;
+        try {
+            socket.close();
+        } catch (IOException ioe) {
+            logger.catching(ioe);
+        }
+        return true;
+    }
 }
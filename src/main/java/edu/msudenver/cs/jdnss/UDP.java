@@ -5,29 +5,73 @@ import org.apache.logging.log4j.Logger;
 import java.io.IOException;
 import java.net.*;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 /**
  * This class is used by UDP and for extended for MC queries.
+ *
+ * With the option shards=#, e.g. "UDP@0.0.0.0@53@shards=8", UDP opens that
+ * many sockets bound to the same address and port with SO_REUSEPORT, each
+ * with its own receive loop and thread pool, so the kernel can spread
+ * flows across cores instead of queueing everything on one socket.
  */
 class UDP extends Thread
 {
     DatagramSocket dsocket;
     final Logger logger = JDNSS.logger;
+    private DatagramSocket[] shardSockets = new DatagramSocket[0];
 
     UDP() {} // needed for MC subclass
 
     public UDP(String[] parts) {
+        int shards = new ListenerOptions(parts).getInt("shards", 1);
+        if (shards < 1) {
+            throw new IllegalArgumentException("Invalid listener option: shards=" + shards);
+        }
+
         try {
             String address = parts[1];
             int port = Integer.parseInt(parts[2]);
-            dsocket = new DatagramSocket(port, InetAddress.getByName(address));
+            InetSocketAddress socketAddress =
+                new InetSocketAddress(InetAddress.getByName(address), port);
+
+            if (shards > 1 && !supportsReusePort()) {
+                logger.warn("SO_REUSEPORT not supported, using one socket");
+                shards = 1;
+            }
+
+            if (shards == 1) {
+                dsocket = new DatagramSocket(socketAddress);
+                return;
+            }
+
+            shardSockets = new DatagramSocket[shards];
+            for (int i = 0; i < shards; i++) {
+                shardSockets[i] = openShard(socketAddress);
+            }
+            dsocket = shardSockets[0];
         } catch (IOException ioe) {
             logger.catching(ioe);
         }
     }
 
+    private static boolean supportsReusePort() throws IOException {
+        try (DatagramSocket probe = new DatagramSocket(null)) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        }
+    }
+
+    private DatagramSocket openShard(InetSocketAddress socketAddress)
+        throws IOException
+    {
+        // the option has to be set before the bind, so don't let the
+        // constructor bind for us.
+        DatagramSocket socket = new DatagramSocket(null);
+        socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        socket.bind(socketAddress);
+        return socket;
+    }
+
     /**
      * This method is used by both UDP and MC
      */
@@ -35,6 +79,17 @@ class UDP extends Thread
     {
         logger.traceEntry();
 
+        for (int i = 1; i < shardSockets.length; i++) {
+            final DatagramSocket socket = shardSockets[i];
+            new Thread(() -> serve(socket), getName() + "-shard-" + i).start();
+        }
+
+        serve(dsocket);
+    }
+
+    private void serve(DatagramSocket socket)
+    {
+
         /*
         "Multicast DNS Messages carried by UDP may be up to the IP MTU of the
         physical interface, less the space required for the IP header(20
@@ -48,14 +103,15 @@ class UDP extends Thread
 
         byte[] buffer = new byte[size];
         DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-        int threadPoolSize = JDNSS.jargs.getThreads();
-        ExecutorService pool = Executors.newFixedThreadPool(threadPoolSize);
+        // split the threads among the shards, but give each at least one.
+        int threadPoolSize = Math.max(1, JDNSS.jargs.getThreads() / Math.max(1, shardSockets.length));
+        ExecutorService pool = Pools.newPool(threadPoolSize);
 
         while (true)
         {
             try
             {
-                dsocket.receive(packet);
+                socket.receive(packet);
             }
             catch (IOException ioe)
             {
@@ -66,7 +122,8 @@ class UDP extends Thread
             Future f = pool.submit(
                 new UDPThread(
                     Utils.trimByteArray(packet.getData(), packet.getLength()),
-                    dsocket, packet.getPort(), packet.getAddress()
+                    socket, packet.getPort(), packet.getAddress(),
+                    this instanceof MC ? Metrics.Listener.MC : Metrics.Listener.UDP
                 )
             );
 
@@ -0,0 +1,153 @@
+package edu.msudenver.cs.jdnss;
+
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * A non-blocking alternative to UDP, specified as "UDPNIO@address@port".
+ * One or more event loops each register the channel with their own
+ * Selector and answer queries inline, so there is no thread handoff per
+ * query.  Receive and send go through pooled direct buffers.
+ *
+ * Options (see ListenerOptions):
+ * loops=#   the number of event loop threads (default: 1)
+ * rcvbuf=#  SO_RCVBUF for the channel (default: the OS default)
+ * sndbuf=#  SO_SNDBUF for the channel (default: the OS default)
+ */
+class UDPNIO extends Thread {
+    private static final int MAXIMUM_UDP_SIZE = 65535;
+
+    private final Logger logger = JDNSS.logger;
+    private DatagramChannel channel;
+    private final int loops;
+    private final BufferPool receivePool;
+    private final BufferPool sendPool;
+
+    UDPNIO(final String[] parts) {
+        ListenerOptions options = new ListenerOptions(parts);
+        loops = options.getInt("loops", 1);
+        assert loops > 0;
+
+        // see UDP.run for why 512
+        receivePool = new BufferPool(512, loops);
+        sendPool = new BufferPool(MAXIMUM_UDP_SIZE, loops);
+
+        try {
+            String address = parts[1];
+            int port = Integer.parseInt(parts[2]);
+
+            channel = DatagramChannel.open();
+            int rcvbuf = options.getInt("rcvbuf", 0);
+            if (rcvbuf > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, rcvbuf);
+            }
+            int sndbuf = options.getInt("sndbuf", 0);
+            if (sndbuf > 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, sndbuf);
+            }
+            channel.bind(new InetSocketAddress(InetAddress.getByName(address), port));
+            channel.configureBlocking(false);
+        } catch (IOException ioe) {
+            logger.catching(ioe);
+        }
+    }
+
+    public void run() {
+        logger.traceEntry();
+
+        for (int i = 1; i < loops; i++) {
+            new Thread(new EventLoop(), getName() + "-loop-" + i).start();
+        }
+
+        new EventLoop().run();
+    }
+
+    private class EventLoop implements Runnable {
+        public void run() {
+            Selector selector;
+
+            try {
+                selector = Selector.open();
+                channel.register(selector, SelectionKey.OP_READ);
+            } catch (IOException ioe) {
+                logger.catching(ioe);
+                return;
+            }
+
+            while (true) {
+                try {
+                    selector.select();
+                    selector.selectedKeys().clear();
+                    drain();
+                } catch (IOException ioe) {
+                    logger.catching(ioe);
+                }
+            }
+        }
+
+        /**
+         * Read until the channel is empty; other loops may be reading the
+         * same channel, so an empty receive just means they got there first.
+         */
+        private void drain() throws IOException {
+            ByteBuffer in = receivePool.acquire();
+            ByteBuffer out = sendPool.acquire();
+
+            try {
+                SocketAddress from;
+                while ((from = channel.receive(in)) != null) {
+                    in.flip();
+                    answer(in, out, (InetSocketAddress) from);
+                    in.clear();
+                    out.clear();
+
+                    // if we're only supposed to answer once, and we're the
+                    // first, bring everything down with us.
+                    if (JDNSS.jargs.isOnce()) {
+                        System.exit(0);
+                    }
+                }
+            } finally {
+                receivePool.release(in);
+                sendPool.release(out);
+            }
+        }
+
+        private void answer(final ByteBuffer in, final ByteBuffer out,
+                            final InetSocketAddress from) throws IOException {
+            // Query reads the packet where it is; in isn't touched until
+            // the answer is sent
+            byte[] b;
+            try {
+                final long start = System.nanoTime();
+                Query query = new Query(in);
+                query.parseQueries(from.getAddress().toString());
+                b = Response.answer(query, true);
+                Metrics.Listener.UDP.answered(start);
+            } catch (RuntimeException | AssertionError e) {
+                // don't let one bad packet take down the loop
+                logger.catching(e);
+                return;
+            }
+
+            if (logger.isTraceEnabled()) {
+                logger.trace("\n" + Utils.toString(b));
+            }
+
+            out.put(b);
+            out.flip();
+            if (channel.send(out, from) == 0) {
+                logger.debug("Send buffer full, dropped response to " + from);
+            }
+        }
+    }
+}
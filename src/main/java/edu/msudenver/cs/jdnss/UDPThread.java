@@ -16,15 +16,18 @@ class UDPThread implements Runnable
     private final int port;
     private final InetAddress address;
     private final byte[] packet;
+    private final Metrics.Listener listener;
 
     /**
      * @param socket	the socket to respond through
      * @param packet	the query
+     * @param listener	what to count the query as
      */
     public UDPThread(byte[] packet, DatagramSocket socket, int port,
-        InetAddress address)
+        InetAddress address, Metrics.Listener listener)
     {
         this.packet = packet;
+        this.listener = listener;
         this.socket = socket;
         this.port = port;
         this.address = address;
@@ -54,11 +57,12 @@ class UDPThread implements Runnable
     {
         logger.traceEntry();
 
+        final long start = System.nanoTime();
         Query query = new Query (packet);
         query.parseQueries(address.toString());
 
-        Response r = new Response(query, true);
-        byte b[] = r.getBytes();
+        byte b[] = Response.answer(query, true);
+        listener.answered(start);
 
         DatagramPacket reply = new DatagramPacket(b, b.length, address, port);
 
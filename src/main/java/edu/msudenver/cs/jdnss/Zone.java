@@ -5,10 +5,119 @@ package edu.msudenver.cs.jdnss;
  * @version $Id: Zone.java,v 1.20 2011/02/14 16:30:32 drb80 Exp $
  */
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 abstract class Zone {
+    // for DO clear and DO set, made the first time each is wanted
+    private volatile NegativeResponse negative;
+    private volatile NegativeResponse negativeDNSSEC;
+    // the NSEC owners, looked for the first time they are wanted
+    private volatile NSECChain nsecChain;
+    private volatile boolean nsecChainBuilt;
+    // Metrics' count of the queries this zone answered
+    private volatile LongAdder queries;
+
     abstract boolean isEmpty();
     abstract List<RR> get(RRCode type, String name);
     abstract String getName();
+
+    /**
+     * The records of type at name together with the RRSIGs covering them.
+     * Zones that can do better than two lookups and a scan of the RRSIGs
+     * should.
+     *
+     * @return the RRset, empty if there is none
+     */
+    RRset getRRset(final RRCode type, final String name) {
+        final List<RR> records = get(type, name);
+        if (records == null || records.isEmpty()) {
+            return RRset.EMPTY;
+        }
+
+        final List<RR> signatures = new ArrayList<>();
+        final List<RR> rrsigs = get(RRCode.RRSIG, name);
+        if (rrsigs != null) {
+            for (RR rr : rrsigs) {
+                if (((RRSIG) rr).getTypeCovered() == type) {
+                    signatures.add(rr);
+                }
+            }
+        }
+        return new RRset(records, new RRset(signatures, null));
+    }
+
+    /**
+     * getRRset, for when the RRSIGs are only wanted if signed.  Zones that
+     * make the RRSIGs on every lookup should leave them out when they
+     * aren't.
+     */
+    RRset getRRset(final RRCode type, final String name, final boolean signed) {
+        return getRRset(type, name);
+    }
+
+    /**
+     * @return a filter over the names in this zone, or null if the zone
+     * doesn't keep one
+     */
+    NameFilter getNameFilter() {
+        return null;
+    }
+
+    /**
+     * Only asked of zones with a NameFilter, to count its false positives.
+     *
+     * @return whether there is anything at all at name
+     */
+    boolean contains(final String name) {
+        throw new IllegalStateException(getName() + " has no NameFilter");
+    }
+
+    /**
+     * The authority section of this zone's NXDOMAIN and NODATA answers.
+     * Zones are never changed once loaded, so it is made once, and two
+     * threads that both make it make the same thing.
+     *
+     * @return the section, or null if the zone has no SOA
+     */
+    NegativeResponse getNegativeResponse(final boolean DNSSEC) {
+        NegativeResponse n = DNSSEC ? negativeDNSSEC : negative;
+        if (n == null) {
+            n = NegativeResponse.build(this, DNSSEC);
+            if (DNSSEC) {
+                negativeDNSSEC = n;
+            } else {
+                negative = n;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * The owners of this zone's NSECs, for proving a name isn't there.
+     * Made once, like the NegativeResponses.
+     *
+     * @return the chain, or null if the zone isn't signed with NSECs
+     */
+    NSECChain getNSECChain() {
+        if (!nsecChainBuilt) {
+            nsecChain = NSECChain.build(this);
+            nsecChainBuilt = true;
+        }
+        return nsecChain;
+    }
+
+    /**
+     * @return Metrics' counter of the queries this zone answered, looked
+     * up once; the zone must have a name
+     */
+    LongAdder getQueries() {
+        LongAdder q = queries;
+        if (q == null) {
+            q = Metrics.zone(getName());
+            queries = q;
+        }
+        return q;
+    }
 }
@@ -0,0 +1,109 @@
+package edu.msudenver.cs.jdnss;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Zone names in a trie of their labels, last label first, so that the
+ * zone a name belongs to is found by walking the name's labels from the
+ * right: com, then test, then www for www.test.com.  That is O(labels)
+ * however many zones there are, where Utils.findLongest looked at every
+ * zone for every query.
+ *
+ * Names are compared ignoring case and a trailing dot, and only whole
+ * labels match: nottest.com is not in test.com.
+ *
+ * Not synchronized; fill it in before queries are answered from it.
+ *
+ * @param <V> what is kept for each zone
+ */
+class ZoneIndex<V> {
+    private static class Node<V> {
+        private final Map<String, Node<V>> children = new HashMap<>();
+        private V value;
+    }
+
+    private final Node<V> root = new Node<>();
+    private int size;
+
+    /**
+     * @return the name lower cased and without a trailing dot
+     */
+    static String canonical(final String name) {
+        final String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".") ? lower.substring(0, lower.length() - 1) : lower;
+    }
+
+    /**
+     * Add or replace a zone.
+     *
+     * @return what was there before, or null
+     */
+    V put(final String name, final V value) {
+        assert name != null && value != null;
+
+        final String key = canonical(name);
+        Node<V> node = root;
+        int end = key.length();
+        while (end > 0) {
+            final int dot = key.lastIndexOf('.', end - 1);
+            final String label = key.substring(dot + 1, end);
+            node = node.children.computeIfAbsent(label, l -> new Node<>());
+            end = dot;
+        }
+
+        final V old = node.value;
+        node.value = value;
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    /**
+     * @return the zone exactly named name, or null
+     */
+    V get(final String name) {
+        final String key = canonical(name);
+        Node<V> node = root;
+        int end = key.length();
+        while (end > 0 && node != null) {
+            final int dot = key.lastIndexOf('.', end - 1);
+            node = node.children.get(key.substring(dot + 1, end));
+            end = dot;
+        }
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Find the closest enclosing zone: the one with the most labels that
+     * name ends with.
+     *
+     * @return that zone, or null if name isn't in any
+     */
+    V findLongest(final String name) {
+        assert name != null;
+
+        final String key = canonical(name);
+        Node<V> node = root;
+        V longest = root.value;
+        int end = key.length();
+        while (end > 0) {
+            final int dot = key.lastIndexOf('.', end - 1);
+            node = node.children.get(key.substring(dot + 1, end));
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                longest = node.value;
+            }
+            end = dot;
+        }
+        return longest;
+    }
+
+    int size() {
+        return size;
+    }
+}
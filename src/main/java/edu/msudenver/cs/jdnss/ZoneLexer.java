@@ -0,0 +1,447 @@
+package edu.msudenver.cs.jdnss;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Splits a zone file into tokens, a byte at a time, the way Parser's
+ * StreamTokenizer used to: ';' starts a comment, '"' a quoted string,
+ * letters, digits and .:$\[]/+=_- make up words, and any other character
+ * is a token by itself.  Files are UTF-8, and every byte of a multi-byte
+ * character counts as part of a word, as the characters did.
+ *
+ * The file is read in large blocks straight from the stream, without a
+ * Reader decoding it, and a word is left in a byte array that is reused
+ * for every token.  What a word is (a number, an address, a name...) can
+ * be asked of the bytes directly, so a String is only made when the
+ * parser keeps the value.
+ */
+class ZoneLexer {
+    static final int EOF = -1;
+    static final int WORD = -3;
+    // a word starting with '.' or '-', which StreamTokenizer took for a number
+    static final int NUMBER = -2;
+    static final int QUOTED = '"';
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte WHITESPACE = 1;
+    private static final byte WORD_CHAR = 2;
+    private static final byte DIGIT = 4;
+    private static final byte HEX = 8;
+    // [-a-zA-Z0-9_], what a label is made of
+    private static final byte LABEL = 16;
+    // [A-Za-z0-9+/]
+    private static final byte BASE64 = 32;
+
+    private static final byte[] TYPES = new byte[256];
+
+    static {
+        for (int c = 0; c <= ' '; c++) {
+            TYPES[c] = WHITESPACE;
+        }
+        for (int c = 'a'; c <= 'z'; c++) {
+            TYPES[c] |= WORD_CHAR | LABEL | BASE64;
+            TYPES[Character.toUpperCase(c)] |= WORD_CHAR | LABEL | BASE64;
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            TYPES[c] |= WORD_CHAR | DIGIT | HEX | LABEL | BASE64;
+        }
+        for (int c = 'a'; c <= 'f'; c++) {
+            TYPES[c] |= HEX;
+            TYPES[Character.toUpperCase(c)] |= HEX;
+        }
+        // the bytes of UTF-8 characters past ASCII
+        for (int c = 128; c <= 255; c++) {
+            TYPES[c] = WORD_CHAR;
+        }
+        for (char c : ".:$\\[]/+=_-".toCharArray()) {
+            TYPES[c] |= WORD_CHAR;
+        }
+        TYPES['-'] |= LABEL;
+        TYPES['_'] |= LABEL;
+        TYPES['+'] |= BASE64;
+        TYPES['/'] |= BASE64;
+    }
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private int lineno = 1;
+
+    // the current word or quoted string
+    private byte[] token = new byte[256];
+    private int length;
+
+    ZoneLexer(final InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return -1 at the end of the file, the next byte otherwise
+     */
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private void unread() {
+        position--;
+    }
+
+    private void append(final int c) {
+        if (length == token.length) {
+            token = Arrays.copyOf(token, token.length * 2);
+        }
+        token[length++] = (byte) c;
+    }
+
+    /**
+     * @return EOF, WORD, NUMBER, QUOTED, or the character that is a token
+     * by itself
+     */
+    int next() throws IOException {
+        length = 0;
+
+        int c = read();
+        while (true) {
+            if (c < 0) {
+                return EOF;
+            }
+            if (c == ';') {
+                while ((c = read()) >= 0 && c != '\n' && c != '\r') {
+                    ;
+                }
+                continue;
+            }
+            if ((TYPES[c] & WHITESPACE) == 0) {
+                break;
+            }
+            if (c == '\n') {
+                lineno++;
+            } else if (c == '\r') {
+                lineno++;
+                if ((c = read()) == '\n') {
+                    c = read();
+                }
+                continue;
+            }
+            c = read();
+        }
+
+        if (c == '"') {
+            quoted();
+            return QUOTED;
+        }
+
+        if ((TYPES[c] & WORD_CHAR) == 0) {
+            return c;
+        }
+
+        final boolean number = c == '.' || c == '-';
+        do {
+            append(c);
+        } while ((c = read()) >= 0 && (TYPES[c] & WORD_CHAR) != 0);
+        if (c >= 0) {
+            unread();
+        }
+
+        if (number) {
+            if (length == 1 && token[0] == '-') {
+                return '-';
+            }
+            return NUMBER;
+        }
+        return WORD;
+    }
+
+    // up to the closing quote or the end of the line, with StreamTokenizer's
+    // escapes
+    private void quoted() throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != '"' && c != '\n' && c != '\r') {
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'a': c = 0x7; break;
+                    case 'b': c = '\b'; break;
+                    case 'f': c = 0xC; break;
+                    case 'n': c = '\n'; break;
+                    case 'r': c = '\r'; break;
+                    case 't': c = '\t'; break;
+                    case 'v': c = 0xB; break;
+                    default:
+                        if (c >= '0' && c <= '7') {
+                            int octal = c - '0';
+                            for (int i = c <= '3' ? 2 : 1; i > 0; i--) {
+                                c = read();
+                                if (c < '0' || c > '7') {
+                                    if (c >= 0) {
+                                        unread();
+                                    }
+                                    break;
+                                }
+                                octal = octal * 8 + c - '0';
+                            }
+                            c = octal;
+                        }
+                        break;
+                }
+                if (c < 0) {
+                    return;
+                }
+            }
+            append(c);
+        }
+        if (c == '\n' || c == '\r') {
+            unread();
+        }
+    }
+
+    int lineno() {
+        return lineno;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * @return the current word or quoted string
+     */
+    String text() {
+        return new String(token, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the current word from to to
+     */
+    String text(final int from, final int to) {
+        return new String(token, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the current word in lower case from to to
+     */
+    String lowerCase(final int from, final int to) {
+        final char[] c = new char[to - from];
+        for (int i = from; i < to; i++) {
+            final int b = token[i];
+            if (b < 0) {
+                // not ASCII
+                return text(from, to).toLowerCase(Locale.ROOT);
+            }
+            c[i - from] = (char) (b >= 'A' && b <= 'Z' ? b + 'a' - 'A' : b);
+        }
+        return new String(c);
+    }
+
+    boolean equals(final byte[] word) {
+        if (word.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word[i] != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int type(final int i) {
+        return TYPES[token[i] & 0xff];
+    }
+
+    private boolean all(final int from, final int to, final int type) {
+        for (int i = from; i < to; i++) {
+            if ((type(i) & type) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the word from from to to is one or more digits
+     */
+    boolean isDigits(final int from, final int to) {
+        return from < to && all(from, to, DIGIT);
+    }
+
+    /**
+     * @return whether the word is one or more hex digits
+     */
+    boolean isHex() {
+        return length > 0 && all(0, length, HEX);
+    }
+
+    private static final byte[] IN_ADDR_ARPA = "in-addr.arpa.".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IP6_INT = "ip6.int.".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * @return whether the word is, ignoring case, (\d+\.){4}in-addr\.arpa\.,
+     * (\d+\.){32}in-addr\.arpa\. or (\d+\.){32}ip6\.int\.
+     */
+    boolean isReverseName() {
+        int groups = 0;
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if ((type(i) & DIGIT) != 0) {
+                continue;
+            }
+            if (token[i] != '.' || i == start) {
+                break;
+            }
+            groups++;
+            start = i + 1;
+        }
+        if (groups == 4 || groups == 32) {
+            if (endsWithIgnoreCase(start, IN_ADDR_ARPA)) {
+                return true;
+            }
+        }
+        return groups == 32 && endsWithIgnoreCase(start, IP6_INT);
+    }
+
+    private boolean endsWithIgnoreCase(final int from, final byte[] suffix) {
+        if (length - from != suffix.length) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length; i++) {
+            final int b = token[from + i];
+            if ((b >= 'A' && b <= 'Z' ? b + 'a' - 'A' : b) != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the word is (\d+\.){3}\d+, an IPv4 address
+     */
+    boolean isIPv4() {
+        return isIPv4(0);
+    }
+
+    private boolean isIPv4(final int from) {
+        int dots = 0;
+        int start = from;
+        for (int i = from; i < length; i++) {
+            if (token[i] == '.') {
+                if (i == start || ++dots > 3) {
+                    return false;
+                }
+                start = i + 1;
+            } else if ((type(i) & DIGIT) == 0) {
+                return false;
+            }
+        }
+        return dots == 3 && start < length;
+    }
+
+    /**
+     * @return whether the word is (\p{XDigit}*:)+\p{XDigit}+ or
+     * (\p{XDigit}*:)+(\d+\.){3}\d+, an IPv6 address
+     */
+    boolean isIPv6() {
+        // the colon-separated part ends at the last colon
+        int colon = -1;
+        for (int i = 0; i < length; i++) {
+            if (token[i] == ':') {
+                colon = i;
+            } else if ((type(i) & HEX) == 0 && token[i] != '.') {
+                return false;
+            }
+        }
+        if (colon < 0 || colon == length - 1) {
+            return false;
+        }
+        for (int i = 0; i < colon; i++) {
+            if (token[i] != ':' && (type(i) & HEX) == 0) {
+                return false;
+            }
+        }
+        return all(colon + 1, length, HEX) || isIPv4(colon + 1);
+    }
+
+    /**
+     * @return whether the word is ([-a-zA-Z0-9_]+\.)+, a name with a dot
+     * at the end
+     */
+    boolean isAbsoluteName() {
+        return length > 0 && token[length - 1] == '.' && isLabels(length - 1);
+    }
+
+    /**
+     * @return whether the word is [-a-zA-Z0-9_]+(\.[-a-zA-Z0-9_]+)*, a name
+     * without a dot at the end
+     */
+    boolean isRelativeName() {
+        return isLabels(length);
+    }
+
+    private boolean isLabels(final int to) {
+        int start = 0;
+        for (int i = 0; i < to; i++) {
+            if (token[i] == '.') {
+                if (i == start) {
+                    return false;
+                }
+                start = i + 1;
+            } else if ((type(i) & LABEL) == 0) {
+                return false;
+            }
+        }
+        return start < to;
+    }
+
+    /**
+     * @return whether the word is groups of four base 64 characters, the
+     * last perhaps padded with '='
+     */
+    boolean isBase64() {
+        if (length % 4 != 0) {
+            return false;
+        }
+        int end = length;
+        if (end > 0 && token[end - 1] == '=') {
+            end--;
+            if (token[end - 1] == '=') {
+                end--;
+            }
+        }
+        return all(0, end, BASE64);
+    }
+
+    /**
+     * @return the digits from from to to as an int
+     * @throws NumberFormatException if it is too big, as Integer.parseInt
+     * would
+     */
+    int intValue(final int from, final int to) {
+        assert isDigits(from, to);
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + token[i] - '0';
+            if (value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("For input string: \"" + text(from, to) + "\"");
+            }
+        }
+        return (int) value;
+    }
+
+    byte at(final int i) {
+        return token[i];
+    }
+}
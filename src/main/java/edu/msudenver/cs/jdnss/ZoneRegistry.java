@@ -0,0 +1,412 @@
+package edu.msudenver.cs.jdnss;
+
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The zones loaded from zone files, and reloading them while queries are
+ * being answered.
+ *
+ * Queries read a ZoneIndex that is never changed once published.  A
+ * reload parses and compiles the new zone on the loader thread, builds a
+ * new index, and swaps it in through a volatile field, so a query sees
+ * either all of the old zones or all of the new ones and never waits.
+ * The ResponseCache is invalidated after every swap.
+ *
+ * At startup loadAll() parses the zone files in parallel, but merges them
+ * in the order they were given, so which file wins when two zones end up
+ * with the same name, and what is logged, doesn't depend on which parse
+ * finished first.
+ *
+ * Reloads happen on SIGHUP (kill -HUP), which re-parses every zone file
+ * that has changed since it was loaded, and with --watchZones once a zone
+ * file's directory says the file was written and then its time and size
+ * have stayed the same for a second.  An editor may write a file in
+ * pieces, and a piece that happens to parse would otherwise be served as
+ * the whole zone; a writer that stops for longer than that can still be
+ * caught half way, so for those, write a new file and rename it over the
+ * old one.
+ */
+class ZoneRegistry {
+    private static final Logger logger = JDNSS.logger;
+    // how long a watched file must be left alone before it is reloaded
+    static final long QUIET_MILLIS = 1000;
+
+    // what queries are answered from; replaced, never changed
+    private volatile ZoneIndex<Zone> zones = new ZoneIndex<>();
+
+    // zone file -> what it compiled to, in the order given; files whose zones
+    // have the same name are resolved by the last one winning, as always
+    private final Map<String, Zone> files = new LinkedHashMap<>();
+    private final Map<String, Long> modified = new LinkedHashMap<>();
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "zone-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // watched files waiting to be left alone for long enough
+    private final Set<String> settling = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService settler;
+
+    /**
+     * @return the closest enclosing zone, or null if there is none
+     */
+    Zone findLongest(final String name) {
+        return zones.findLongest(name);
+    }
+
+    int size() {
+        return zones.size();
+    }
+
+    /**
+     * A zone file parsed and compiled, or why it couldn't be.
+     */
+    private static class Loaded {
+        private final String file;
+        private final long lastModified;
+        private final long nanos;
+        private Zone zone;
+        private FileNotFoundException notFound;
+        private Throwable failure;
+
+        Loaded(final String file) {
+            this.file = file;
+            this.lastModified = new File(file).lastModified();
+            final long start = System.nanoTime();
+            try {
+                zone = parse(file);
+            } catch (FileNotFoundException e) {
+                notFound = e;
+            } catch (RuntimeException | AssertionError e) {
+                failure = e;
+            }
+            nanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Parse, compile and publish a zone file now.
+     *
+     * @return whether it could be loaded; if not, any zone already loaded
+     * from it stays
+     */
+    synchronized boolean load(final String file) {
+        if (!add(new Loaded(file))) {
+            return false;
+        }
+        publish();
+        return true;
+    }
+
+    /**
+     * Parse and compile the zone files on threads parallel threads, then
+     * publish them all at once.
+     *
+     * @return how many could be loaded
+     */
+    synchronized int loadAll(final String[] fileNames, final int threads) {
+        final long start = System.nanoTime();
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        List<Loaded> loaded;
+        try {
+            // a parallel stream started inside a pool runs on that pool
+            loaded = pool.submit(() -> Arrays.stream(fileNames).parallel()
+                .map(Loaded::new)
+                .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (ExecutionException e) {
+            logger.catching(e);
+            return 0;
+        } finally {
+            pool.shutdown();
+        }
+
+        // in the order given, whatever order they finished in
+        int count = 0;
+        for (Loaded l : loaded) {
+            if (add(l)) {
+                count++;
+            }
+        }
+        publish();
+
+        logger.info("Loaded {} of {} zone files on {} threads in {} ms", count, fileNames.length,
+            threads, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return count;
+    }
+
+    private boolean add(final Loaded loaded) {
+        if (loaded.notFound != null) {
+            logger.warn("Couldn't open file " + loaded.file + '\n' + loaded.notFound);
+            return false;
+        }
+        if (loaded.failure != null) {
+            logger.catching(loaded.failure);
+            logger.warn("Couldn't load " + loaded.file + ", keeping what was there");
+            return false;
+        }
+
+        logger.info("Parsed {} as {} in {} ms", loaded.file, loaded.zone.getName(),
+            TimeUnit.NANOSECONDS.toMillis(loaded.nanos));
+        files.put(loaded.file, loaded.zone);
+        modified.put(loaded.file, loaded.lastModified);
+        return true;
+    }
+
+    /**
+     * Reload, in the background, every zone file changed since it was last
+     * loaded.
+     */
+    void reloadChanged() {
+        loader.execute(() -> {
+            for (String file : fileNames()) {
+                reloadIfChanged(file);
+            }
+        });
+    }
+
+    private void reloadIfChanged(final String file) {
+        final Long before;
+        synchronized (this) {
+            before = modified.get(file);
+        }
+        if (before != null && before == new File(file).lastModified()) {
+            return;
+        }
+        logger.info("Reloading " + file);
+        load(file);
+    }
+
+    private void publish() {
+        final ZoneIndex<Zone> index = new ZoneIndex<>();
+        for (Zone zone : files.values()) {
+            index.put(zone.getName(), zone);
+        }
+        zones = index;
+        // after the swap, so nothing built from the old zones is kept
+        JDNSS.responseCache.invalidate();
+    }
+
+    /**
+     * Read and compile a zone file, or map it if it was compiled by
+     * --compile.  The name of the zone comes from the file name unless the
+     * file says otherwise.
+     */
+    static Zone parse(final String file) throws FileNotFoundException {
+        if (file.endsWith(MappedZone.EXTENSION)) {
+            logger.info("Mapping: " + file);
+            try {
+                return MappedZone.open(Paths.get(file));
+            } catch (NoSuchFileException e) {
+                throw new FileNotFoundException(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        String name = new File(file).getName();
+
+        logger.info("Parsing: " + file);
+
+        if (name.endsWith(".db")) {
+            name = name.replaceFirst("\\.db$", "");
+            if (Character.isDigit(name.charAt(0))) {
+                name = Utils.reverseIP(name);
+                name = name + ".in-addr.arpa";
+                logger.info("name: {}", name);
+            }
+        }
+
+        // the BindZone is left behind in compile(), so copying off the heap
+        // only has the CompiledZone to keep alongside the image
+        final CompiledZone compiled = compile(file, name);
+        return JDNSS.jargs.isOffHeapZones() ? MappedZone.offHeap(compiled) : compiled;
+    }
+
+    private static CompiledZone compile(final String file, final String name)
+        throws FileNotFoundException {
+        final BindZone zone = new BindZone(name);
+        try (InputStream in = new FileInputStream(file)) {
+            new Parser(in, zone).RRs();
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            // only from close()
+            logger.catching(e);
+        }
+        logger.trace(zone);
+
+        // the name of the zone can change while parsing, so the compiled
+        // zone takes it from the zone
+        return new CompiledZone(zone);
+    }
+
+    /**
+     * Reload changed zone files on SIGHUP.
+     */
+    void reloadOnSignal() {
+        if (!handleSignal("HUP", this::reloadChanged)) {
+            logger.warn("No SIGHUP here, zones will not be reloaded on it");
+        }
+    }
+
+    /**
+     * Run handler whenever the process gets the signal name, e.g. "HUP".
+     * sun.misc.Signal is reached by reflection, like Pools' virtual threads,
+     * so using an internal API doesn't make the build warn.
+     *
+     * @return whether the signal can be handled here
+     */
+    static boolean handleSignal(final String name, final Runnable handler) {
+        try {
+            final Class<?> signal = Class.forName("sun.misc.Signal");
+            final Class<?> signalHandler = Class.forName("sun.misc.SignalHandler");
+            final Object proxy = Proxy.newProxyInstance(ZoneRegistry.class.getClassLoader(),
+                new Class<?>[]{signalHandler}, (p, method, args) -> {
+                    switch (method.getName()) {
+                        case "handle":
+                            handler.run();
+                            return null;
+                        case "equals":
+                            return p == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(p);
+                        default:
+                            return "SignalHandler for " + name;
+                    }
+                });
+            signal.getMethod("handle", signal, signalHandler)
+                .invoke(null, signal.getConstructor(String.class).newInstance(name), proxy);
+            return true;
+        } catch (InvocationTargetException e) {
+            // an unknown signal, or one the JVM keeps for itself
+            return false;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Watch the directories the zone files are in and reload a zone file
+     * once it has been written and then left alone for QUIET_MILLIS.
+     */
+    void watch() {
+        watch(QUIET_MILLIS);
+    }
+
+    void watch(final long quietMillis) {
+        settler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "zone-settler");
+            t.setDaemon(true);
+            return t;
+        });
+
+        final WatchService watcher;
+        final Set<Path> directories = new HashSet<>();
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            for (String file : fileNames()) {
+                Path directory = Paths.get(file).toAbsolutePath().getParent();
+                if (directories.add(directory)) {
+                    directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+            }
+        } catch (IOException e) {
+            logger.catching(e);
+            return;
+        }
+
+        Thread t = new Thread(() -> {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watcher.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                final Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        reloadChanged();
+                        continue;
+                    }
+                    final Path changed = directory.resolve((Path) event.context());
+                    for (String file : fileNames()) {
+                        if (Paths.get(file).toAbsolutePath().equals(changed)
+                            && settling.add(file)) {
+                            settle(file, stamp(file), quietMillis);
+                        }
+                    }
+                }
+                key.reset();
+            }
+        }, "zone-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * @return a file's time and size, which change as it is written
+     */
+    private static long[] stamp(final String file) {
+        final File f = new File(file);
+        return new long[]{f.lastModified(), f.length()};
+    }
+
+    /**
+     * Reload file if its time and size are still last after quietMillis,
+     * and otherwise wait again.
+     */
+    private void settle(final String file, final long[] last, final long quietMillis) {
+        settler.schedule(() -> {
+            final long[] now = stamp(file);
+            if (!Arrays.equals(now, last)) {
+                settle(file, now, quietMillis);
+                return;
+            }
+            settling.remove(file);
+            loader.execute(() -> reloadIfChanged(file));
+        }, quietMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized Set<String> fileNames() {
+        return new HashSet<>(files.keySet());
+    }
+}
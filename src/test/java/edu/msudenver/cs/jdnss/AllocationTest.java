@@ -0,0 +1,177 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Bytes allocated answering each kind of query, from the packet to the
+ * response's bytes (Query, parseQueries, Response.answer), against a
+ * budget.  Allocation per query is most of the garbage a busy server
+ * makes, so a change that adds to it should fail here and either be
+ * fixed or raise the budget on purpose, in the same commit.
+ *
+ * The budgets are what was measured when each was set, with some room
+ * for JIT differences between JVMs.  The ResponseCache is off, as it is
+ * by default, so every query is answered from the zone.
+ */
+public class AllocationTest {
+    private static final String CLIENT = "127.0.0.1";
+    private static final int WARM_UP = 20000;
+    private static final int QUERIES = 10000;
+
+    private static com.sun.management.ThreadMXBean threads;
+    // the zone file loaded into JDNSS.bindZones, so each is loaded once
+    private static String loaded;
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * @return the bytes allocated per query answering query from file
+     */
+    private static long measure(final String file, final byte[] query) {
+        if (!file.equals(loaded)) {
+            Assert.assertTrue(JDNSS.bindZones.load(file));
+            loaded = file;
+        }
+
+        // so the JIT has compiled and inlined what it's going to
+        for (int i = 0; i < WARM_UP; i++) {
+            answer(query);
+        }
+
+        final long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < QUERIES; i++) {
+            answer(query);
+        }
+        return (threads.getCurrentThreadAllocatedBytes() - before) / QUERIES;
+    }
+
+    private static byte[] answer(final byte[] query) {
+        final Query q = new Query(query.clone());
+        q.parseQueries(CLIENT);
+        final byte[] response = Response.answer(q, true);
+        assert response.length > 12;
+        return response;
+    }
+
+    private static void assertBudget(final String file, final byte[] query, final long budget) {
+        final long allocated = measure(file, query);
+        Assert.assertTrue(allocated + " bytes a query, over the budget of " + budget,
+            allocated <= budget);
+    }
+
+    /**
+     * @return a generated zone of kind compiled into an image, as --compile
+     * would; the zones have names of their own, so they don't stand in for
+     * test.com
+     */
+    private static String compiled(final ZoneGenerator.Kind kind) throws IOException {
+        final Path path = folder.getRoot().toPath().resolve(kind.zone + MappedZone.EXTENSION);
+        if (!Files.exists(path)) {
+            final Path file = ZoneGenerator.generate(kind, 1000, folder.getRoot().toPath());
+            MappedZone.write((CompiledZone) ZoneRegistry.parse(file.toString()), path);
+        }
+        return path.toString();
+    }
+
+    /**
+     * @return query with a client cookie in its OPT record
+     */
+    private static byte[] cookie(final byte[] query) {
+        final DnsMessageWriter w = new DnsMessageWriter();
+        // all but the OPT record's empty RDLENGTH
+        w.putBytes(query, 0, query.length - 2);
+        w.putShort(12);
+        w.putShort(10);
+        w.putShort(8);
+        w.putBytes(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        return w.toByteArray();
+    }
+
+    @Test
+    public void a() {
+        assertBudget("test.com", LoadGenerator.query("www.test.com", RRCode.A, false, false), 1600);
+    }
+
+    @Test
+    public void aaaa() {
+        assertBudget("test.com", LoadGenerator.query("www.test.com", RRCode.AAAA, true, false), 2050);
+    }
+
+    @Test
+    public void mx() {
+        assertBudget("test.com", LoadGenerator.query("test.com", RRCode.MX, false, false), 1500);
+    }
+
+    @Test
+    public void soa() {
+        assertBudget("test.com", LoadGenerator.query("test.com", RRCode.SOA, false, false), 1500);
+    }
+
+    @Test
+    public void nxdomain() {
+        assertBudget("test.com", LoadGenerator.query("nothere.test.com", RRCode.A, false, false),
+            1200);
+    }
+
+    @Test
+    public void nodata() {
+        assertBudget("test.com", LoadGenerator.query("one.test.com", RRCode.A, false, false),
+            1400);
+    }
+
+    @Test
+    public void cookie() {
+        assertBudget("test.com", cookie(LoadGenerator.query("www.test.com", RRCode.A, true, false)),
+            2200);
+    }
+
+    @Test
+    public void dnssec() {
+        assertBudget("test.com.signed", LoadGenerator.query("www.test.com", RRCode.A, true, true),
+            3050);
+    }
+
+    // the NSECs proving the name isn't there are looked up, not copied
+    @Test
+    public void dnssecNxdomain() {
+        assertBudget("test.com.signed",
+            LoadGenerator.query("nothere.test.com", RRCode.A, true, true), 2500);
+    }
+
+    @Test
+    public void mapped() throws IOException {
+        assertBudget(compiled(ZoneGenerator.Kind.FORWARD), LoadGenerator.query(
+            ZoneGenerator.name(ZoneGenerator.Kind.FORWARD, 7), RRCode.A, false, false), 1500);
+    }
+
+    @Test
+    public void mappedSigned() throws IOException {
+        assertBudget(compiled(ZoneGenerator.Kind.SIGNED), LoadGenerator.query(
+            ZoneGenerator.name(ZoneGenerator.Kind.SIGNED, 7), RRCode.A, true, false), 1650);
+    }
+
+    @Test
+    public void mappedDnssec() throws IOException {
+        assertBudget(compiled(ZoneGenerator.Kind.SIGNED), LoadGenerator.query(
+            ZoneGenerator.name(ZoneGenerator.Kind.SIGNED, 7), RRCode.A, true, true), 3450);
+    }
+}
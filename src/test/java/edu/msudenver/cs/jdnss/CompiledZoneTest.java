@@ -0,0 +1,71 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompiledZoneTest
+{
+    private CompiledZone compile()
+    {
+        BindZone z = new BindZone ("name");
+
+        z.add ("name", new SOARR ("name", "server", "contact", 1, 2, 3, 4, 5, 6));
+        z.add ("www", new ARR ("www", 0, "1.2.3.4"));
+        z.add ("WWW", new ARR ("WWW", 0, "4.3.1.1"));
+        z.add ("www", new RRSIG ("www", 0, RRCode.A, 8, 2, 3600, 0, 0, 1,
+                "name", "AQID"));
+        z.add ("mail", new MXRR ("mail", 0, "www", 10));
+
+        return new CompiledZone (z);
+    }
+
+    @Test
+    public void nodes()
+    {
+        CompiledZone z = compile ();
+        Assert.assertEquals ("name", z.getName ());
+
+        CompiledZone.Node www = z.getNode ("www");
+        Assert.assertNotNull (www);
+        Assert.assertSame (www, z.getNode ("Www."));
+        Assert.assertEquals (2, www.get (RRCode.A).getRecords ().size ());
+        Assert.assertTrue (www.get (RRCode.AAAA).isEmpty ());
+        Assert.assertNull (z.getNode ("ftp"));
+        Assert.assertTrue (z.get (RRCode.A, "ftp").isEmpty ());
+    }
+
+    @Test
+    public void signatures()
+    {
+        CompiledZone z = compile ();
+        RRset a = z.getRRset (RRCode.A, "www");
+        Assert.assertEquals (1, a.getSignatures ().getRecords ().size ());
+        Assert.assertEquals (1, z.get (RRCode.RRSIG, "www").size ());
+        Assert.assertTrue (z.getRRset (RRCode.MX, "mail").getSignatures ().isEmpty ());
+    }
+
+    @Test
+    public void rdata()
+    {
+        CompiledZone z = compile ();
+        RRset a = z.getRRset (RRCode.A, "www");
+        Assert.assertArrayEquals (new byte[]{1, 2, 3, 4}, a.getRecords ().get (0).getRdata ());
+        RR rrsig = a.getSignatures ().getRecords ().get (0);
+        Assert.assertArrayEquals (rrsig.getRdataBytes (), rrsig.getRdata ());
+        // names in MX are compressed as the response is written
+        Assert.assertNull (z.getRRset (RRCode.MX, "mail").getRecords ().get (0).getRdata ());
+    }
+
+    @Test
+    public void writeEncoded()
+    {
+        RR rrsig = compile ().getRRset (RRCode.A, "www").getSignatures ().getRecords ().get (0);
+        RR fresh = new RRSIG ("www", 0, RRCode.A, 8, 2, 3600, 0, 0, 1, "name", "AQID");
+
+        DnsMessageWriter encoded = new DnsMessageWriter (64);
+        rrsig.write (encoded, "www", 0);
+        DnsMessageWriter written = new DnsMessageWriter (64);
+        fresh.write (written, "www", 0);
+        Assert.assertArrayEquals (written.toByteArray (), encoded.toByteArray ());
+    }
+}
@@ -0,0 +1,75 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DBConnectionTest {
+    private static final String URL = "jdbc:jdnsstest:domains";
+
+    private Driver driver;
+    private PreparedStatement ps;
+    private ResultSet rs;
+    private DBConnection db;
+
+    @Before
+    public void setUp() throws Exception {
+        final Connection conn = mock(Connection.class);
+        ps = mock(PreparedStatement.class);
+        rs = mock(ResultSet.class);
+        when(conn.createStatement()).thenReturn(mock(Statement.class));
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+
+        driver = mock(Driver.class);
+        when(driver.acceptsURL(URL)).thenReturn(true);
+        when(driver.connect(any(), any())).thenReturn(conn);
+        DriverManager.registerDriver(driver);
+
+        db = new DBConnection("java.lang.Object", URL, null, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    @Test
+    public void closest() throws Exception {
+        // the database has com and test.com., in no particular order
+        when(rs.next()).thenReturn(true, true, false);
+        when(rs.getString("name")).thenReturn("com", "test.com.");
+        when(rs.getInt("id")).thenReturn(1, 2);
+
+        final DBZone zone = db.getZone("WWW.Test.com");
+        Assert.assertEquals("test.com.", zone.getName());
+
+        // one query, for each suffix with and without a dot
+        verify(ps).setString(1, "www.test.com");
+        verify(ps).setString(2, "www.test.com.");
+        verify(ps).setString(3, "test.com");
+        verify(ps).setString(4, "test.com.");
+        verify(ps).setString(5, "com");
+        verify(ps).setString(6, "com.");
+    }
+
+    @Test
+    public void none() throws Exception {
+        when(rs.next()).thenReturn(false);
+        Assert.assertTrue(db.getZone("www.example.org").isEmpty());
+    }
+}
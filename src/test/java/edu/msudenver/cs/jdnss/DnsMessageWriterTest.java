@@ -0,0 +1,154 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class DnsMessageWriterTest {
+    @Test
+    public void putName() {
+        DnsMessageWriter writer = new DnsMessageWriter();
+        writer.putName("www.test.com");
+        Assert.assertArrayEquals(Utils.convertString("www.test.com"), writer.toByteArray());
+
+        writer.clear();
+        writer.putName("example.com.");
+        Assert.assertArrayEquals(Utils.convertString("example.com."), writer.toByteArray());
+    }
+
+    @Test
+    public void grows() {
+        DnsMessageWriter writer = new DnsMessageWriter(4);
+        for (int i = 0; i < 100; i++) {
+            writer.putInt(i);
+        }
+        byte[] b = writer.toByteArray();
+        Assert.assertEquals(400, b.length);
+        Assert.assertEquals(99, Utils.addThem(b[396], b[397], b[398], b[399]));
+    }
+
+    @Test
+    public void resetAndPatch() {
+        DnsMessageWriter writer = new DnsMessageWriter();
+        int length = writer.skip(2);
+        writer.putCharacterString("this");
+        int mark = writer.position();
+        writer.putShort(0xffff);
+        writer.reset(mark);
+        writer.putShortAt(length, writer.position() - 2);
+
+        byte[] expected = {0x00, 0x05, 0x04, 't', 'h', 'i', 's'};
+        Assert.assertArrayEquals(expected, writer.toByteArray());
+    }
+
+    @Test
+    public void rememberName() {
+        DnsMessageWriter writer = new DnsMessageWriter(DnsMessageWriter.DEFAULT_CAPACITY, true);
+        writer.skip(12);
+        // a question copied in as it came, in mixed case
+        writer.putBytes(Utils.convertString("WwW.TeSt.CoM"));
+        writer.rememberName(12);
+        int mail = writer.position();
+        writer.putCompressedName("mail.test.com");
+        writer.putCompressedName("www.test.com");
+
+        byte[] b = writer.toByteArray();
+        byte[] expected = {4, 'm', 'a', 'i', 'l', (byte) 0xc0, 16, (byte) 0xc0, 12};
+        Assert.assertArrayEquals(expected, Arrays.copyOfRange(b, mail, b.length));
+    }
+
+    private static DnsMessageWriter compressing() {
+        DnsMessageWriter writer = new DnsMessageWriter(DnsMessageWriter.DEFAULT_CAPACITY, true);
+        // where the names of a message start
+        writer.skip(12);
+        return writer;
+    }
+
+    /**
+     * @return what was written from start on
+     */
+    private static byte[] from(final DnsMessageWriter writer, final int start) {
+        return writer.toByteArray(start, writer.position());
+    }
+
+    @Test
+    public void suffixes() {
+        DnsMessageWriter writer = compressing();
+        writer.putCompressedName("www.test.com");
+        Assert.assertArrayEquals(Utils.convertString("www.test.com"), from(writer, 12));
+
+        int start = writer.position();
+        // mail and then test.com, at 16
+        writer.putCompressedName("mail.test.com");
+        writer.putCompressedName("test.com");
+        writer.putCompressedName("www.test.com");
+        writer.putCompressedName("com");
+        byte[] expected = {4, 'm', 'a', 'i', 'l', (byte) 0xc0, 16, (byte) 0xc0, 16,
+            (byte) 0xc0, 12, (byte) 0xc0, 21};
+        Assert.assertArrayEquals(expected, from(writer, start));
+
+        // nothing in common, and a trailing dot makes no difference
+        start = writer.position();
+        writer.putCompressedName("example.org.");
+        Assert.assertArrayEquals(Utils.convertString("example.org"), from(writer, start));
+    }
+
+    @Test
+    public void caseInsensitive() {
+        DnsMessageWriter writer = compressing();
+        writer.putCompressedName("WWW.Test.COM");
+        // the case of what is written is kept
+        Assert.assertArrayEquals(Utils.convertString("WWW.Test.COM"), from(writer, 12));
+
+        int start = writer.position();
+        writer.putCompressedName("www.test.com");
+        writer.putCompressedName("Mail.TEST.com");
+        byte[] expected = {(byte) 0xc0, 12, 4, 'M', 'a', 'i', 'l', (byte) 0xc0, 16};
+        Assert.assertArrayEquals(expected, from(writer, start));
+    }
+
+    @Test
+    public void resetForgetsNames() {
+        DnsMessageWriter writer = compressing();
+        writer.putCompressedName("test.com");
+        int mark = writer.position();
+        writer.putCompressedName("www.example.org");
+        writer.reset(mark);
+
+        // example.org was thrown away; test.com, before the mark, wasn't
+        writer.putShort(0xffff);
+        int start = writer.position();
+        writer.putCompressedName("mail.example.org");
+        writer.putCompressedName("www.test.com");
+        byte[] expected = Utils.combine(Utils.convertString("mail.example.org"),
+            new byte[]{3, 'w', 'w', 'w', (byte) 0xc0, 12});
+        Assert.assertArrayEquals(expected, from(writer, start));
+    }
+
+    @Test
+    public void clearForgetsNames() {
+        DnsMessageWriter writer = compressing();
+        writer.putCompressedName("www.test.com");
+        writer.clear();
+        writer.skip(12);
+        writer.putCompressedName("www.test.com");
+        Assert.assertArrayEquals(Utils.convertString("www.test.com"), from(writer, 12));
+    }
+
+    @Test
+    public void pointerLimit() {
+        DnsMessageWriter writer = new DnsMessageWriter(DnsMessageWriter.DEFAULT_CAPACITY, true);
+        // www at 0x3ffc can be pointed to; test.com at 0x4000 can't
+        writer.skip(0x3ffc);
+        writer.putCompressedName("www.test.com");
+
+        int start = writer.position();
+        writer.putCompressedName("mail.test.com");
+        Assert.assertArrayEquals(Utils.convertString("mail.test.com"), from(writer, start));
+
+        start = writer.position();
+        writer.putCompressedName("www.test.com");
+        Assert.assertArrayEquals(new byte[]{(byte) 0xff, (byte) 0xfc}, from(writer, start));
+    }
+}
@@ -0,0 +1,71 @@
+package edu.msudenver.cs.jdnss;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares --executor=fixed with --executor=virtual on a workload shaped
+ * like a DB backed zone: every query is parsed and then blocks for a while,
+ * the way a DBConnection lookup would.
+ *
+ * Run it with, e.g.,
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=edu.msudenver.cs.jdnss.ExecutorBenchmark \
+ *     -Dexec.args="10000 5 10"
+ *
+ * where the arguments are the number of queries, the milliseconds each one
+ * blocks, and the size of the fixed pool.  Virtual threads need Java 21.
+ */
+public class ExecutorBenchmark {
+    // www.test.com A
+    private static final byte[] QUERY = {
+        0x12, 0x34, 0x01, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+        0x03, 'w', 'w', 'w', 0x04, 't', 'e', 's', 't', 0x03, 'c', 'o', 'm', 0x00,
+        0x00, 0x01, 0x00, 0x01
+    };
+
+    public static void main(String[] args) throws InterruptedException {
+        int queries = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int blockMillis = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        if (Pools.newVirtualThreadPerTaskExecutor() == null) {
+            System.out.println("No virtual threads in this runtime; both runs use a fixed pool");
+        }
+
+        for (String kind : new String[]{"fixed", "virtual"}) {
+            // once to warm up, once to measure
+            run(kind, threads, queries / 10, blockMillis);
+            long nanos = run(kind, threads, queries, blockMillis);
+            System.out.printf("%-8s %8d queries %6d ms %10.0f queries/s%n", kind, queries,
+                TimeUnit.NANOSECONDS.toMillis(nanos), queries * 1e9 / nanos);
+        }
+    }
+
+    private static long run(String kind, int threads, int queries, int blockMillis)
+        throws InterruptedException {
+        ExecutorService pool = Pools.newPool(kind, threads);
+        CountDownLatch done = new CountDownLatch(queries);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            pool.execute(() -> {
+                try {
+                    new Query(QUERY.clone()).parseQueries("/127.0.0.1");
+                    Thread.sleep(blockMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        pool.shutdown();
+        return elapsed;
+    }
+}
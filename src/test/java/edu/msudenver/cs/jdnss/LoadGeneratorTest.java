@@ -0,0 +1,195 @@
+package edu.msudenver.cs.jdnss;
+
+import edu.msudenver.cs.jclo.JCLO;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoadGeneratorTest {
+    @Test
+    public void buckets() {
+        for (long v = 0; v < 1 << 20; v += 7) {
+            int i = LatencyHistogram.index(v);
+            Assert.assertTrue(LatencyHistogram.lowest(i) <= v);
+            Assert.assertTrue(LatencyHistogram.lowest(i + 1) > v);
+            // a sixty-fourth of a power of two
+            Assert.assertTrue(v - LatencyHistogram.lowest(i) <= v / 64);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        Assert.assertEquals(0, h.percentile(0.5));
+        for (int i = 1; i <= 10000; i++) {
+            h.record(i);
+        }
+        Assert.assertEquals(10000, h.count());
+        Assert.assertEquals(5000, h.percentile(0.5), 5000 / 64);
+        Assert.assertEquals(9900, h.percentile(0.99), 9900 / 64);
+        Assert.assertEquals(1, h.percentile(0));
+        Assert.assertEquals(10000, h.percentile(1), 10000 / 64);
+    }
+
+    @Test
+    public void readQueries() throws IOException {
+        List<byte[]> queries = LoadGenerator.readQueries(new StringReader(
+            "; dnsperf's format\nwww.test.com A\n\n# another comment\ntest.com mx\n  one.test.com\n"),
+            true, true);
+        Assert.assertEquals(3, queries.size());
+        Assert.assertArrayEquals(LoadGenerator.query("www.test.com", RRCode.A, true, true),
+            queries.get(0));
+        Assert.assertArrayEquals(LoadGenerator.query("test.com", RRCode.MX, true, true),
+            queries.get(1));
+        Assert.assertArrayEquals(LoadGenerator.query("one.test.com", RRCode.A, true, true),
+            queries.get(2));
+
+        // what the server makes of them
+        Query q = new Query(queries.get(1));
+        q.parseQueries("127.0.0.1");
+        Assert.assertEquals("test.com", q.getQueries()[0].getName());
+        Assert.assertEquals(RRCode.MX, q.getQueries()[0].getType());
+        Assert.assertTrue(q.getOptrr().isDNSSEC());
+    }
+
+    private LoadGenerator generator(String... arguments) throws IOException {
+        LoadGenerator.Args args = new LoadGenerator.Args();
+        new JCLO(args).parse(arguments);
+        return new LoadGenerator(args, LoadGenerator.readQueries(
+            new StringReader("www.test.com\nnothere.test.com\n"), false, false));
+    }
+
+    /**
+     * Answers each query with QR set, NXDOMAIN for every other one and TC
+     * for every fourth, or, if drop, not at all.
+     */
+    private DatagramSocket server(boolean drop) throws IOException {
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        LoadTransport.daemon("test server", () -> {
+            byte[] buffer = new byte[512];
+            int n = 0;
+            while (!socket.isClosed()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(packet);
+                    if (drop) {
+                        continue;
+                    }
+                    buffer[2] |= (byte) (0x80 | (n % 4 == 0 ? 0x02 : 0));
+                    buffer[3] = (byte) (n % 2 == 0 ? 0 : 3);
+                    n++;
+                    socket.send(packet);
+                } catch (IOException ioe) {
+                    return;
+                }
+            }
+        });
+        return socket;
+    }
+
+    @Test
+    public void closedLoop() throws Exception {
+        try (DatagramSocket socket = server(false)) {
+            LoadGenerator g = generator("--duration=1", "--outstanding=1",
+                "--port=" + socket.getLocalPort());
+            LoadTransport t = LoadTransport.open("UDP",
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort()),
+                1, 100, false, g::received);
+            g.run(t);
+            t.close();
+
+            Assert.assertTrue(g.getAnswered() > 100);
+            Assert.assertEquals(0, g.getTimeouts());
+            // one at a time, so the server sees them in order
+            Assert.assertEquals(g.getAnswered(), g.getRcode(0) + g.getRcode(3));
+            Assert.assertEquals((g.getAnswered() + 1) / 2, g.getRcode(0));
+            Assert.assertEquals((g.getAnswered() + 3) / 4, g.getTruncated());
+            Assert.assertEquals(g.getAnswered(), g.getLatencies().count());
+        }
+    }
+
+    @Test
+    public void timeouts() throws Exception {
+        try (DatagramSocket socket = server(true)) {
+            LoadGenerator g = generator("--duration=1", "--outstanding=10", "--timeout=100",
+                "--mode=open", "--qps=100");
+            LoadTransport t = LoadTransport.open("UDP",
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort()),
+                2, 100, false, g::received);
+            g.run(t);
+            t.close();
+
+            Assert.assertEquals(0, g.getAnswered());
+            // 100 due, of which no more than 10 are out at once for 100 ms
+            Assert.assertTrue(g.getTimeouts() >= 80);
+            Assert.assertTrue(g.getTimeouts() <= 100);
+        }
+    }
+
+    /**
+     * Answers each query on a connection with QR set, and closes the
+     * connection after max queries, as JDNSS does after --tcpMaxQueries.
+     */
+    private ServerSocket streamServer(int max, AtomicInteger connections) throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        LoadTransport.daemon("test server", () -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    connections.incrementAndGet();
+                    LoadTransport.daemon("test connection", () -> {
+                        try (Socket s = socket) {
+                            DataInputStream in = new DataInputStream(s.getInputStream());
+                            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+                            for (int i = 0; i < max; i++) {
+                                byte[] query = new byte[in.readUnsignedShort()];
+                                in.readFully(query);
+                                query[2] |= (byte) 0x80;
+                                out.writeShort(query.length);
+                                out.write(query);
+                                out.flush();
+                            }
+                        } catch (IOException ioe) {
+                            // the client went away
+                        }
+                    });
+                } catch (IOException ioe) {
+                    return;
+                }
+            }
+        });
+        return server;
+    }
+
+    @Test
+    public void reconnects() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        try (ServerSocket server = streamServer(10, connections)) {
+            LoadGenerator g = generator("--duration=1", "--outstanding=4",
+                "--port=" + server.getLocalPort());
+            LoadTransport t = LoadTransport.open("TCP",
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()),
+                2, 10, false, g::received);
+            g.run(t);
+            t.close();
+
+            Assert.assertTrue(g.getAnswered() > 100);
+            Assert.assertEquals(0, g.getTimeouts());
+            // a new connection every ten queries, and one spare per client
+            Assert.assertTrue(connections.get() >= g.getAnswered() / 10);
+            Assert.assertTrue(connections.get() <= g.getAnswered() / 10 + 2 * 2 + 2);
+        }
+    }
+}
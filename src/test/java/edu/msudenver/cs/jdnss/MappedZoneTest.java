@@ -0,0 +1,172 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MappedZoneTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder ();
+
+    private CompiledZone compile ()
+    {
+        BindZone z = new BindZone ("name");
+
+        z.add ("name", new SOARR ("name", "server", "contact", 1, 2, 3, 4, 5, 6));
+        z.add ("name", new NSRR ("name", 0, "ns.name"));
+        z.add ("www", new ARR ("www", 0, "1.2.3.4"));
+        z.add ("www", new ARR ("www", 0, "4.3.1.1"));
+        z.add ("www", new RRSIG ("www", 0, RRCode.A, 8, 2, 3600, 0, 0, 1,
+                "name", "AQID"));
+        z.add ("mail", new MXRR ("mail", 0, "www.name", 10));
+        z.add ("ftp", new CNAMERR ("ftp", 0, "www.name"));
+        z.add ("4.3.2.1", new PTRRR ("4.3.2.1", 0, "www.name"));
+
+        return new CompiledZone (z);
+    }
+
+    private Path write (CompiledZone zone) throws IOException
+    {
+        Path path = folder.getRoot ().toPath ().resolve ("name" + MappedZone.EXTENSION);
+        MappedZone.write (zone, path);
+        return path;
+    }
+
+    // the same RDATA as the compiled zone has, record by record
+    private void assertSame (CompiledZone compiled, MappedZone mapped, RRCode type, String name)
+    {
+        RRset expected = compiled.getRRset (type, name);
+        RRset actual = mapped.getRRset (type, name);
+        Assert.assertEquals (expected.getRecords ().size (), actual.getRecords ().size ());
+        for (int i = 0; i < expected.getRecords ().size (); i++)
+        {
+            Assert.assertArrayEquals (expected.getRecords ().get (i).getBytes (),
+                actual.getRecords ().get (i).getBytes ());
+            Assert.assertEquals (type, actual.getRecords ().get (i).getType ());
+        }
+        Assert.assertEquals (expected.getSignatures ().getRecords ().size (),
+            actual.getSignatures ().getRecords ().size ());
+    }
+
+    @Test
+    public void roundTrip () throws IOException
+    {
+        CompiledZone compiled = compile ();
+        MappedZone mapped = MappedZone.open (write (compiled));
+
+        Assert.assertEquals ("name", mapped.getName ());
+        assertSame (compiled, mapped, RRCode.SOA, "name");
+        assertSame (compiled, mapped, RRCode.NS, "name");
+        assertSame (compiled, mapped, RRCode.A, "www");
+        assertSame (compiled, mapped, RRCode.RRSIG, "www");
+        assertSame (compiled, mapped, RRCode.MX, "mail");
+        assertSame (compiled, mapped, RRCode.CNAME, "ftp");
+        assertSame (compiled, mapped, RRCode.PTR, "4.3.2.1");
+        Assert.assertTrue (mapped.getRRset (RRCode.AAAA, "www").isEmpty ());
+        Assert.assertTrue (mapped.get (RRCode.A, "nope").isEmpty ());
+    }
+
+    @Test
+    public void decoded () throws IOException
+    {
+        MappedZone mapped = MappedZone.open (write (compile ()));
+
+        // names in RDATA come back as the usual records
+        MXRR mx = (MXRR) mapped.get (RRCode.MX, "mail").get (0);
+        Assert.assertEquals ("www.name", mx.getHost ());
+        Assert.assertEquals (10, mx.getPreference ());
+        SOARR soa = (SOARR) mapped.get (RRCode.SOA, "name").get (0);
+        Assert.assertEquals (5, soa.getMinimum ());
+        Assert.assertEquals (6, soa.getTtl ());
+    }
+
+    @Test
+    public void signed () throws IOException
+    {
+        MappedZone mapped = MappedZone.open (write (compile ()));
+
+        Assert.assertEquals (1, mapped.getRRset (RRCode.A, "www", true).getSignatures ()
+            .getRecords ().size ());
+        Assert.assertTrue (mapped.getRRset (RRCode.A, "www", false).getSignatures ().isEmpty ());
+        Assert.assertTrue (mapped.get (RRCode.PTR, "4.3.2.1").get (0) instanceof WireRR);
+        // decoded once
+        Assert.assertSame (mapped.getRRset (RRCode.SOA, "name"),
+            mapped.getRRset (RRCode.SOA, "NAME."));
+        Assert.assertSame (mapped.get (RRCode.NS, "name"), mapped.get (RRCode.NS, "name"));
+    }
+
+    @Test
+    public void filter () throws IOException
+    {
+        MappedZone mapped = MappedZone.open (write (compile ()));
+        for (String name : new String[] {"name", "www", "mail", "ftp", "4.3.2.1"})
+        {
+            Assert.assertTrue (mapped.getNameFilter ().mightContain (NameFilter.hash (name)));
+        }
+    }
+
+    @Test
+    public void offHeap ()
+    {
+        CompiledZone compiled = compile ();
+        MappedZone mapped = MappedZone.offHeap (compiled);
+
+        Assert.assertEquals ("name", mapped.getName ());
+        assertSame (compiled, mapped, RRCode.A, "www");
+        assertSame (compiled, mapped, RRCode.MX, "mail");
+        Assert.assertTrue (mapped.get (RRCode.A, "nope").isEmpty ());
+    }
+
+    @Test
+    public void sized () throws IOException
+    {
+        CompiledZone compiled = compile ();
+        Assert.assertEquals (MappedZone.size (compiled), Files.size (write (compiled)));
+    }
+
+    @Test
+    public void tooBig () throws IOException
+    {
+        Assert.assertEquals (Integer.MAX_VALUE, MappedZone.checkSize ("name", Integer.MAX_VALUE));
+        try
+        {
+            MappedZone.checkSize ("name", Integer.MAX_VALUE + 1L);
+            Assert.fail ();
+        }
+        catch (IOException e)
+        {
+            Assert.assertTrue (e.getMessage ().contains ("at most"));
+        }
+    }
+
+    @Test
+    public void caseInsensitive () throws IOException
+    {
+        MappedZone mapped = MappedZone.open (write (compile ()));
+        Assert.assertEquals (2, mapped.get (RRCode.A, "WWW.").size ());
+    }
+
+    @Test
+    public void corrupt () throws IOException
+    {
+        Path path = write (compile ());
+        byte[] b = Files.readAllBytes (path);
+        b[b.length - 1] ^= 1;
+        Files.write (path, b);
+        try
+        {
+            MappedZone.open (path);
+            Assert.fail ();
+        }
+        catch (IOException e)
+        {
+            Assert.assertTrue (e.getMessage ().contains ("checksum"));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+public class MetricsTest {
+    @BeforeClass
+    public static void setUp() {
+        Assert.assertTrue(JDNSS.bindZones.load("test.com"));
+    }
+
+    /**
+     * @return the value of the sample starting with name in scrape, or 0
+     */
+    private static double value(final String scrape, final String name) {
+        for (String line : scrape.split("\n")) {
+            if (line.startsWith(name + " ")) {
+                return Double.parseDouble(line.substring(name.length() + 1));
+            }
+        }
+        return 0;
+    }
+
+    private static void answer(final String name, final RRCode type) {
+        final Query q = new Query(LoadGenerator.query(name, type, false, false));
+        q.parseQueries("127.0.0.1");
+        Response.answer(q, true);
+    }
+
+    @Test
+    public void histogram() {
+        final String udp = "jdnss_query_duration_seconds_bucket{listener=\"udp\",le=\"";
+        final String before = Metrics.scrape();
+
+        // 30us and 2s ago
+        Metrics.Listener.UDP.answered(System.nanoTime() - 30_000);
+        Metrics.Listener.UDP.answered(System.nanoTime() - 2_000_000_000L);
+
+        final String after = Metrics.scrape();
+        Assert.assertEquals(value(before, udp + "2.5E-5\"}"), value(after, udp + "2.5E-5\"}"), 0);
+        Assert.assertEquals(value(before, udp + "5.0E-5\"}") + 1, value(after, udp + "5.0E-5\"}"), 0);
+        Assert.assertEquals(value(before, udp + "1.0\"}") + 1, value(after, udp + "1.0\"}"), 0);
+        Assert.assertEquals(value(before, udp + "+Inf\"}") + 2, value(after, udp + "+Inf\"}"), 0);
+        Assert.assertEquals(value(before, "jdnss_query_duration_seconds_count{listener=\"udp\"}") + 2,
+            value(after, "jdnss_query_duration_seconds_count{listener=\"udp\"}"), 0);
+        Assert.assertTrue(value(after, "jdnss_query_duration_seconds_sum{listener=\"udp\"}")
+            - value(before, "jdnss_query_duration_seconds_sum{listener=\"udp\"}") >= 2.00003);
+    }
+
+    @Test
+    public void answers() {
+        final String noerror = "jdnss_responses_total{rcode=\"NOERROR\"}";
+        final String nameerror = "jdnss_responses_total{rcode=\"NAMEERROR\"}";
+        final String refused = "jdnss_responses_total{rcode=\"REFUSED\"}";
+        final String mx = "jdnss_queries_by_type_total{qtype=\"MX\"}";
+        final String zone = "jdnss_zone_queries_total{zone=\"test.com\"}";
+        final String before = Metrics.scrape();
+
+        answer("test.com", RRCode.MX);
+        answer("www.test.com", RRCode.A);
+        answer("nothere.test.com", RRCode.A);
+        answer("www.example.org", RRCode.A);
+
+        final String after = Metrics.scrape();
+        Assert.assertEquals(value(before, noerror) + 2, value(after, noerror), 0);
+        Assert.assertEquals(value(before, nameerror) + 1, value(after, nameerror), 0);
+        Assert.assertEquals(value(before, refused) + 1, value(after, refused), 0);
+        Assert.assertEquals(value(before, mx) + 1, value(after, mx), 0);
+        // not the one no zone answered
+        Assert.assertEquals(value(before, zone) + 3, value(after, zone), 0);
+    }
+
+    @Test
+    public void cached() {
+        final ResponseCache saved = JDNSS.responseCache;
+        JDNSS.responseCache = new ResponseCache(10);
+        try {
+            final String zone = "jdnss_zone_queries_total{zone=\"test.com\"}";
+            final String before = Metrics.scrape();
+            answer("www.test.com", RRCode.A);
+            answer("www.test.com", RRCode.A);
+            Assert.assertEquals(1, JDNSS.responseCache.size());
+            Assert.assertEquals(value(before, zone) + 2, value(Metrics.scrape(), zone), 0);
+        } finally {
+            JDNSS.responseCache = saved;
+        }
+    }
+
+    @Test
+    public void serve() throws Exception {
+        final int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        Metrics.serve("127.0.0.1", port);
+
+        final HttpURLConnection c = (HttpURLConnection)
+            new URL("http://127.0.0.1:" + port + "/metrics").openConnection();
+        Assert.assertEquals(200, c.getResponseCode());
+        Assert.assertTrue(c.getContentType().startsWith("text/plain; version=0.0.4"));
+        final String body;
+        try (InputStream in = c.getInputStream()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        Assert.assertTrue(body.contains("# TYPE jdnss_query_duration_seconds histogram\n"));
+        Assert.assertTrue(body.contains("jdnss_zones "));
+    }
+}
@@ -0,0 +1,136 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+public class NSECChainTest {
+    // test.com -> one.test.com -> www.test.com -> test.com, as in test.com.signed
+    private static NSECChain chain() {
+        final BindZone z = new BindZone("test.com");
+        z.add("test.com", new NSECRR("test.com", 0, "one.test.com.",
+            EnumSet.of(RRCode.SOA, RRCode.NSEC)));
+        z.add("one.test.com", new NSECRR("one.test.com", 0, "www.test.com.",
+            EnumSet.of(RRCode.TXT, RRCode.NSEC)));
+        z.add("www.test.com", new NSECRR("www.test.com", 0, "test.com.",
+            EnumSet.of(RRCode.A, RRCode.NSEC)));
+        return new CompiledZone(z).getNSECChain();
+    }
+
+    @Test
+    public void order() {
+        // RFC 4034 6.1's example, lower cased
+        final String[] names = {"example", "a.example", "yljkjljk.a.example", "z.a.example",
+            "zabc.a.example", "z.example", "*.z.example"};
+        final String[] sorted = names.clone();
+        Collections.reverse(Arrays.asList(sorted));
+        Arrays.sort(sorted, NSECChain::compare);
+        Assert.assertArrayEquals(names, sorted);
+    }
+
+    @Test
+    public void cover() {
+        final NSECChain chain = chain();
+        Assert.assertEquals("test.com", chain.cover("test.com"));
+        Assert.assertEquals("test.com", chain.cover("a.test.com"));
+        Assert.assertEquals("one.test.com", chain.cover("One.Test.Com"));
+        Assert.assertEquals("one.test.com", chain.cover("random.test.com"));
+        Assert.assertEquals("one.test.com", chain.cover("x.one.test.com"));
+        Assert.assertEquals("www.test.com", chain.cover("zzz.test.com"));
+    }
+
+    @Test
+    public void closestEncloser() {
+        final NSECChain chain = chain();
+        Assert.assertEquals("test.com", chain.closestEncloser("random.test.com"));
+        Assert.assertEquals("one.test.com", chain.closestEncloser("a.b.one.test.com"));
+        Assert.assertEquals("www.test.com", chain.closestEncloser("a.www.test.com"));
+    }
+
+    @Test
+    public void unsigned() {
+        final BindZone z = new BindZone("test.com");
+        z.add("www.test.com", new ARR("www.test.com", 0, "1.2.3.4"));
+        Assert.assertNull(new CompiledZone(z).getNSECChain());
+    }
+
+    // the name at position in message, following pointers
+    private static String name(final byte[] message, int position) {
+        final StringBuilder sb = new StringBuilder();
+        while (message[position] != 0) {
+            if ((message[position] & 0xc0) == 0xc0) {
+                position = (message[position] & 0x3f) << 8 | message[position + 1] & 0xff;
+                continue;
+            }
+            final int length = message[position];
+            sb.append(sb.length() > 0 ? "." : "")
+                .append(new String(message, position + 1, length, StandardCharsets.UTF_8));
+            position += length + 1;
+        }
+        return sb.toString().toLowerCase();
+    }
+
+    // the end of the name at position in message
+    private static int skip(final byte[] message, int position) {
+        while (message[position] != 0) {
+            if ((message[position] & 0xc0) == 0xc0) {
+                return position + 2;
+            }
+            position += message[position] + 1;
+        }
+        return position + 1;
+    }
+
+    /**
+     * @return the owners of the NSECs in the authority section of the
+     * answer to a DO query for name
+     */
+    private static List<String> denial(final String name, final RRCode type, final int rcode) {
+        Assert.assertTrue(JDNSS.bindZones.load("test.com.signed"));
+        final Query q = new Query(LoadGenerator.query(name, type, true, true));
+        q.parseQueries("127.0.0.1");
+        final byte[] response = Response.answer(q, false);
+        Assert.assertEquals(rcode, response[3] & 0x0f);
+
+        int position = skip(response, 12) + 4;
+        final int answers = (response[6] & 0xff) << 8 | response[7] & 0xff;
+        final int authorities = (response[8] & 0xff) << 8 | response[9] & 0xff;
+        final List<String> owners = new ArrayList<>();
+        for (int i = 0; i < answers + authorities; i++) {
+            final String owner = name(response, position);
+            position = skip(response, position);
+            final int code = (response[position] & 0xff) << 8 | response[position + 1] & 0xff;
+            if (i >= answers && code == RRCode.NSEC.getCode()) {
+                owners.add(owner);
+            }
+            position += 10 + ((response[position + 8] & 0xff) << 8 | response[position + 9] & 0xff);
+        }
+        return owners;
+    }
+
+    @Test
+    public void nxdomain() {
+        // the NSEC covering the name, then the one covering *.test.com
+        Assert.assertEquals(Arrays.asList("one.test.com", "test.com"),
+            denial("random.test.com", RRCode.A, ErrorCodes.NAMEERROR.getCode()));
+        Assert.assertEquals(Arrays.asList("www.test.com", "test.com"),
+            denial("zzz.test.com", RRCode.A, ErrorCodes.NAMEERROR.getCode()));
+        // one NSEC covers both
+        Assert.assertEquals(Arrays.asList("test.com"),
+            denial("aaa.test.com", RRCode.A, ErrorCodes.NAMEERROR.getCode()));
+    }
+
+    @Test
+    public void nodata() {
+        Assert.assertEquals(Arrays.asList("test.com"),
+            denial("test.com", RRCode.AAAA, ErrorCodes.NOERROR.getCode()));
+        Assert.assertEquals(Arrays.asList("www.test.com"),
+            denial("www.test.com", RRCode.MX, ErrorCodes.NOERROR.getCode()));
+    }
+}
@@ -0,0 +1,70 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class NameFilterTest
+{
+    @Test
+    public void hashLikeQueries ()
+    {
+        DnsMessageWriter w = new DnsMessageWriter ();
+        w.putName ("WwW.Test.COM");
+        w.putShort (1);
+        w.putShort (1);
+        Queries q = Queries.decode (ByteBuffer.wrap (w.toByteArray ()), 0);
+        Assert.assertEquals (q.getNameHash (), NameFilter.hash ("www.test.com"));
+        Assert.assertEquals (q.getNameHash (), NameFilter.hash ("WWW.test.com"));
+    }
+
+    @Test
+    public void noFalseNegatives ()
+    {
+        List<String> names = new ArrayList<> ();
+        for (int i = 0; i < 100000; i++)
+        {
+            names.add ("h" + i + ".test.com");
+        }
+        NameFilter f = NameFilter.of (names);
+        for (String name : names)
+        {
+            Assert.assertTrue (name, f.mightContain (NameFilter.hash (name)));
+        }
+
+        int positives = 0;
+        long hits = NameFilter.getHits ();
+        for (int i = 0; i < 100000; i++)
+        {
+            if (f.mightContain (NameFilter.hash ("r" + i + ".test.com")))
+            {
+                positives++;
+            }
+        }
+        Assert.assertTrue ("false positives " + positives, positives < 2000);
+        Assert.assertEquals (100000 - positives, NameFilter.getHits () - hits);
+    }
+
+    @Test
+    public void zones ()
+    {
+        BindZone b = new BindZone ("test.com");
+        b.add ("test.com", new SOARR ("test.com", "ns1.test.com", "hostmaster.test.com",
+            1, 2, 3, 4, 300, 3600));
+        b.add ("www.test.com", new ARR ("www.test.com", 0, "1.2.3.4"));
+        CompiledZone z = new CompiledZone (b);
+
+        Assert.assertTrue (z.getNameFilter ().mightContain (NameFilter.hash ("WWW.test.com")));
+        Assert.assertTrue (z.getNameFilter ().mightContain (NameFilter.hash ("test.com")));
+        Assert.assertTrue (z.contains ("Www.Test.com"));
+        Assert.assertFalse (z.contains ("ftp.test.com"));
+
+        MappedZone m = MappedZone.offHeap (z);
+        Assert.assertTrue (m.getNameFilter ().mightContain (NameFilter.hash ("www.test.com")));
+        Assert.assertTrue (m.contains ("WWW.test.com"));
+        Assert.assertFalse (m.contains ("ftp.test.com"));
+    }
+}
@@ -0,0 +1,82 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+public class NegativeResponseTest
+{
+    private CompiledZone zone ()
+    {
+        BindZone z = new BindZone ("test.com");
+
+        z.add ("test.com", new SOARR ("test.com", "ns1.test.com", "hostmaster.test.com",
+            1, 2, 3, 4, 300, 3600));
+        z.add ("test.com", new RRSIG ("test.com", 0, RRCode.SOA, 8, 2, 3600, 0, 0, 1,
+            "test.com", "AQID"));
+        z.add ("test.com", new NSECRR ("test.com", 0, "www.test.com",
+            EnumSet.of (RRCode.SOA, RRCode.NSEC)));
+        z.add ("test.com", new RRSIG ("test.com", 0, RRCode.NSEC, 8, 2, 3600, 0, 0, 1,
+            "test.com", "BAUG"));
+
+        return new CompiledZone (z);
+    }
+
+    // the question as Query.writeQuestions copies it in
+    private DnsMessageWriter question (String name)
+    {
+        DnsMessageWriter writer = new DnsMessageWriter (512, true);
+        writer.skip (12);
+        writer.putName (name);
+        writer.putShort (RRCode.TXT.getCode ());
+        writer.putShort (1);
+        writer.rememberName (12);
+        return writer;
+    }
+
+    private void compare (String name, boolean DNSSEC)
+    {
+        CompiledZone z = zone ();
+        DnsMessageWriter expected = question (name);
+        z.get (RRCode.SOA, "test.com").get (0).write (expected, "test.com", 300);
+        if (DNSSEC)
+        {
+            z.getRRset (RRCode.SOA, "test.com").getSignatures ().getRecords ().get (0)
+                .write (expected, "test.com", 300);
+            z.get (RRCode.NSEC, "test.com").get (0).write (expected, "test.com", 300);
+            z.getRRset (RRCode.NSEC, "test.com").getSignatures ().getRecords ().get (0)
+                .write (expected, "test.com", 300);
+        }
+
+        DnsMessageWriter copied = question (name);
+        NegativeResponse n = z.getNegativeResponse (DNSSEC);
+        Assert.assertEquals (DNSSEC ? 4 : 1, n.write (copied));
+        Assert.assertArrayEquals (expected.toByteArray (), copied.toByteArray ());
+    }
+
+    @Test
+    public void pointersMoved ()
+    {
+        compare ("test.com", false);
+        compare ("a.test.com", false);
+        compare ("some.Random-Label.TEST.com", false);
+        compare ("some.Random-Label.TEST.com", true);
+    }
+
+    @Test
+    public void madeOnce ()
+    {
+        CompiledZone z = zone ();
+        Assert.assertSame (z.getNegativeResponse (true), z.getNegativeResponse (true));
+        Assert.assertNotSame (z.getNegativeResponse (false), z.getNegativeResponse (true));
+    }
+
+    @Test
+    public void noSOA ()
+    {
+        BindZone z = new BindZone ("test.com");
+        z.add ("www.test.com", new ARR ("www.test.com", 0, "1.2.3.4"));
+        Assert.assertNull (new CompiledZone (z).getNegativeResponse (false));
+    }
+}
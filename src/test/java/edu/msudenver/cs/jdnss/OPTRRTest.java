@@ -53,6 +53,25 @@ public class OPTRRTest {
         Assert.assertArrayEquals(bytes, optrr.getBytes());
     }
 
+    @Test
+    public void tcpKeepaliveTest() {
+        byte[] keepalive = {(byte) 0x00, (byte) 0x00, (byte) 0x29, (byte) 0x10,
+                (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+                (byte) 0x00, (byte) 0x00, (byte) 0x04, (byte) 0x00,
+                (byte) 0x0b, (byte) 0x00, (byte) 0x00};
+        byte[] expected = {(byte) 0x00, (byte) 0x00, (byte) 0x29, (byte) 0x10,
+                (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+                (byte) 0x00, (byte) 0x00, (byte) 0x06, (byte) 0x00,
+                (byte) 0x0b, (byte) 0x00, (byte) 0x02, (byte) 0x00,
+                (byte) 0x64};
+
+        OPTRR o = new OPTRR(keepalive);
+        Assert.assertTrue(o.isTcpKeepalive());
+        Assert.assertFalse(o.isCookie());
+        o.setTcpKeepaliveTimeout(10000);
+        Assert.assertArrayEquals(expected, o.getBytes());
+    }
+
     @Test
     public void createServerCookieTest() {
         Query copyQuery = new Query(buffer);
@@ -0,0 +1,100 @@
+package edu.msudenver.cs.jdnss;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times Parser on a generated zone of millions of lines, the mix of
+ * records a large hosting zone has: A, AAAA, MX, TXT and CNAME, relative
+ * and absolute names, TTLs with and without units, and comments.
+ *
+ * The records are counted and dropped instead of being added to the
+ * BindZone, so what is measured is reading and tokenizing the file.
+ *
+ * Run it with, e.g.,
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=edu.msudenver.cs.jdnss.ParserBenchmark \
+ *     -Dexec.args="2000000 5"
+ *
+ * where the arguments are the number of lines and of timed runs.
+ */
+public class ParserBenchmark {
+    public static void main(String[] args) throws IOException {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path file = Files.createTempFile("benchmark", ".zone");
+        try {
+            generate(file, lines);
+            System.out.printf("%d lines, %d MB%n", lines, Files.size(file) >> 20);
+
+            // once to warm up
+            parse(file);
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                long records = parse(file);
+                long nanos = System.nanoTime() - start;
+                System.out.printf("%8d records %6d ms %10.0f lines/s%n", records,
+                    TimeUnit.NANOSECONDS.toMillis(nanos), lines * 1e9 / nanos);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void generate(Path file, int lines) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            w.write("$TTL 1H\n$ORIGIN bench.example.\n");
+            w.write("@ IN SOA ns1.bench.example. root.bench.example. ( 1 3600 900 604800 86400 )\n");
+            w.write("  IN NS ns1\n");
+            for (int i = 0; i < lines - 4; i++) {
+                int a = (i >> 16) & 0xff;
+                int b = (i >> 8) & 0xff;
+                int c = i & 0xff;
+                switch (i % 8) {
+                    case 0:
+                        w.write("; host " + i + "\n");
+                        break;
+                    case 1:
+                    case 2:
+                    case 3:
+                        w.write("h" + i + " IN A 10." + a + "." + b + "." + c + "\n");
+                        break;
+                    case 4:
+                        w.write("h" + i + " 3600 IN AAAA 2001:db8:" + a + ":" + b + "::" + c + "\n");
+                        break;
+                    case 5:
+                        w.write("h" + i + ".bench.example. 1D IN MX 10 mail" + (i % 16) + "\n");
+                        break;
+                    case 6:
+                        w.write("h" + i + " IN TXT \"v=spf1 ip4:10." + a + "." + b + ".0/24 -all\"\n");
+                        break;
+                    default:
+                        w.write("alias" + i + " IN CNAME h" + (i - 1) + ".bench.example.\n");
+                        break;
+                }
+            }
+        }
+    }
+
+    private static long parse(Path file) throws IOException {
+        long[] records = new long[1];
+        BindZone zone = new BindZone("bench.example") {
+            @Override
+            public void add(String name, RR rr) {
+                records[0]++;
+            }
+        };
+        try (InputStream in = new FileInputStream(file.toFile())) {
+            new Parser(in, zone).RRs();
+        }
+        return records[0];
+    }
+}
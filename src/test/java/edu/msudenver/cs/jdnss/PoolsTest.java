@@ -0,0 +1,58 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+public class PoolsTest {
+    @Test
+    public void fixed() throws Exception {
+        ExecutorService pool = Pools.newPool("fixed", 2);
+        Future<Integer> f = pool.submit(() -> 42);
+        Assert.assertEquals(42, (int) f.get());
+        pool.shutdown();
+    }
+
+    /**
+     * @return Thread.isVirtual(), or false before Java 21
+     */
+    private static boolean isVirtual(final Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void virtual() throws Exception {
+        ExecutorService pool = Pools.newPool("virtual", 2);
+        Future<Boolean> f = pool.submit(() -> isVirtual(Thread.currentThread()));
+        Assert.assertEquals(Pools.hasVirtualThreads(), f.get());
+        if (!Pools.hasVirtualThreads()) {
+            // the fixed pool of the size asked for
+            Assert.assertTrue(pool instanceof ThreadPoolExecutor);
+            Assert.assertEquals(2, ((ThreadPoolExecutor) pool).getCorePoolSize());
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void checkExecutor() {
+        Pools.checkExecutor("fixed");
+        Pools.checkExecutor("virtual");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid() {
+        Pools.checkExecutor("elastic");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPool() {
+        Pools.newPool("elastic", 2);
+    }
+}
@@ -114,6 +114,40 @@ public class QueryTest
         Assert.assertEquals(0x01, questions[17]);
     }
 
+    @Test
+    public void decodeInPlace() {
+        // the same question twice, the second's name a pointer to the first
+        byte[] two = Arrays.copyOf(buffer, buffer.length + 6);
+        two[5] = 2;
+        two[13] = 'W';
+        System.arraycopy(new byte[]{(byte) 0xc0, 0x0c, 0x00, 0x1c, 0x00, 0x01}, 0,
+            two, buffer.length, 6);
+        Query q = new Query(java.nio.ByteBuffer.wrap(two));
+        q.parseQueries("");
+
+        Queries first = q.getQueries()[0];
+        Queries second = q.getQueries()[1];
+        Assert.assertEquals("Www.test.com", first.getName());
+        Assert.assertEquals(14, first.getNameLength());
+        Assert.assertEquals("Www.test.com", second.getName());
+        Assert.assertEquals(RRCode.AAAA, second.getType());
+        Assert.assertEquals(-1, second.getNameLength());
+        // the hash ignores case and compression
+        Assert.assertEquals(query.getQueries()[0].getNameHash(), first.getNameHash());
+        Assert.assertEquals(first.getNameHash(), second.getNameHash());
+    }
+
+    @Test
+    public void findCode() {
+        Assert.assertEquals(RRCode.NSEC3PARAM, RRCode.findCode(51));
+        Assert.assertEquals(RRCode.A, RRCode.findCode(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownCode() {
+        RRCode.findCode(255);
+    }
+
     @Test
     public void getZone() {
     }
@@ -0,0 +1,133 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class ResponseCacheTest {
+    // www.test.com A, ID 0xaad8, RD
+    private final byte[] query = {(byte) 0xaa, (byte) 0xd8, (byte) 0x01, (byte) 0x00,
+            (byte) 0x00, (byte) 0x01, (byte) 0x00, (byte) 0x00,
+            (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+            (byte) 0x03, (byte) 0x77, (byte) 0x77, (byte) 0x77,
+            (byte) 0x04, (byte) 0x74, (byte) 0x65, (byte) 0x73,
+            (byte) 0x74, (byte) 0x03, (byte) 0x63, (byte) 0x6f,
+            (byte) 0x6d, (byte) 0x00, (byte) 0x00, (byte) 0x01,
+            (byte) 0x00, (byte) 0x01};
+
+    // the same question, ID 0x1234, no RD
+    private final byte[] again = {(byte) 0x12, (byte) 0x34, (byte) 0x00, (byte) 0x00,
+            (byte) 0x00, (byte) 0x01, (byte) 0x00, (byte) 0x00,
+            (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+            (byte) 0x03, (byte) 0x77, (byte) 0x77, (byte) 0x77,
+            (byte) 0x04, (byte) 0x74, (byte) 0x65, (byte) 0x73,
+            (byte) 0x74, (byte) 0x03, (byte) 0x63, (byte) 0x6f,
+            (byte) 0x6d, (byte) 0x00, (byte) 0x00, (byte) 0x01,
+            (byte) 0x00, (byte) 0x01};
+
+    // QR AA RD, one answer
+    private final byte[] header = {(byte) 0xaa, (byte) 0xd8, (byte) 0x85, (byte) 0x00,
+            (byte) 0x00, (byte) 0x01, (byte) 0x00, (byte) 0x01,
+            (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00};
+
+    // www.test.com A 192.168.1.1
+    private final byte[] answer = {(byte) 0x03, (byte) 0x77, (byte) 0x77, (byte) 0x77,
+            (byte) 0x04, (byte) 0x74, (byte) 0x65, (byte) 0x73,
+            (byte) 0x74, (byte) 0x03, (byte) 0x63, (byte) 0x6f,
+            (byte) 0x6d, (byte) 0x00, (byte) 0x00, (byte) 0x01,
+            (byte) 0x00, (byte) 0x01, (byte) 0x00, (byte) 0x01,
+            (byte) 0x51, (byte) 0x80, (byte) 0x00, (byte) 0x04,
+            (byte) 0xc0, (byte) 0xa8, (byte) 0x01, (byte) 0x01};
+
+    private Query parse(byte[] buffer) {
+        Query q = new Query(buffer);
+        q.parseQueries("/127.0.0.1");
+        return q;
+    }
+
+    @Test
+    public void hit() {
+        ResponseCache cache = new ResponseCache(10);
+        Assert.assertNull(cache.get(parse(query), true));
+
+        cache.put(parse(query), true, header, answer);
+        byte[] b = cache.get(parse(again), true);
+
+        Assert.assertNotNull(b);
+        Assert.assertEquals(12 + 18 + answer.length, b.length);
+        // the new ID, and RD as the new query asked
+        Assert.assertEquals((byte) 0x12, b[0]);
+        Assert.assertEquals((byte) 0x34, b[1]);
+        Assert.assertEquals((byte) 0x84, b[2]);
+        Assert.assertArrayEquals(Arrays.copyOfRange(header, 3, 12),
+            Arrays.copyOfRange(b, 3, 12));
+        Assert.assertArrayEquals(Arrays.copyOfRange(query, 12, 30),
+            Arrays.copyOfRange(b, 12, 30));
+        Assert.assertArrayEquals(answer, Arrays.copyOfRange(b, 30, b.length));
+
+        // TCP doesn't truncate, so it has answers of its own
+        Assert.assertNull(cache.get(parse(again), false));
+    }
+
+    @Test
+    public void ignoresCase() {
+        ResponseCache cache = new ResponseCache(10);
+        cache.put(parse(query), true, header, answer);
+
+        // WwW.TEST.com, as a resolver using 0x20 might ask
+        byte[] mixed = again.clone();
+        mixed[13] = 'W';
+        mixed[15] = 'W';
+        for (int i = 17; i <= 20; i++) {
+            mixed[i] -= 'a' - 'A';
+        }
+        byte[] b = cache.get(parse(mixed), true);
+        Assert.assertNotNull(b);
+        // the question is echoed as it was asked
+        Assert.assertArrayEquals(Arrays.copyOfRange(mixed, 12, 30), Arrays.copyOfRange(b, 12, 30));
+        Assert.assertArrayEquals(answer, Arrays.copyOfRange(b, 30, b.length));
+
+        // the query it was put with can be reused without changing what's cached
+        byte[] reused = query.clone();
+        Query q = parse(reused);
+        cache.put(q, true, header, answer);
+        reused[14] = 'x';
+        Assert.assertNotNull(cache.get(parse(again), true));
+    }
+
+    @Test
+    public void invalidate() {
+        ResponseCache cache = new ResponseCache(10);
+        cache.put(parse(query), true, header, answer);
+        cache.invalidate();
+        Assert.assertNull(cache.get(parse(again), true));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void stale() {
+        // built from zones that were reloaded before it could be put
+        ResponseCache cache = new ResponseCache(10);
+        int generation = cache.getGeneration();
+        cache.invalidate();
+        cache.put(parse(query), true, generation, null, header, answer);
+        Assert.assertNull(cache.get(parse(again), true));
+    }
+
+    @Test
+    public void refused() {
+        ResponseCache cache = new ResponseCache(10);
+        byte[] refused = header.clone();
+        refused[3] = (byte) ErrorCodes.REFUSED.getCode();
+        cache.put(parse(query), true, refused, new byte[0]);
+        Assert.assertNull(cache.get(parse(again), true));
+    }
+
+    @Test
+    public void disabled() {
+        ResponseCache cache = new ResponseCache(0);
+        cache.put(parse(query), true, header, answer);
+        Assert.assertNull(cache.get(parse(again), true));
+    }
+}
@@ -0,0 +1,163 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.net.ssl.SSLSocket;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+
+public class TCPNIOTest {
+    @BeforeClass
+    public static void setUp() {
+        Assert.assertTrue(JDNSS.bindZones.load("test.com"));
+    }
+
+    /**
+     * Start a TCPNIO listener of kind on a free port.
+     *
+     * @return the port
+     */
+    private static int start(final String kind) throws IOException {
+        final int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        TCPNIO nio = new TCPNIO(new String[]{kind, "127.0.0.1", Integer.toString(port)});
+        nio.setDaemon(true);
+        nio.start();
+        return port;
+    }
+
+    private static Socket connect(final int port) throws Exception {
+        for (int tries = 0; ; tries++) {
+            try {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                socket.setSoTimeout(5000);
+                return socket;
+            } catch (IOException e) {
+                // not listening yet
+                Assert.assertTrue(tries < 50);
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    // www.test.com's A, with id as the ID
+    private static byte[] query(final int id) {
+        byte[] query = LoadGenerator.query("www.test.com", RRCode.A, false, false);
+        query[0] = (byte) (id >> 8);
+        query[1] = (byte) id;
+        return query;
+    }
+
+    private static byte[] prefixed(final byte[] query) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(query.length);
+        out.write(query);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the ID of the next response on socket, which must have an
+     * answer
+     */
+    private static int response(final Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] response = new byte[in.readUnsignedShort()];
+        in.readFully(response);
+        Assert.assertTrue(((response[6] & 0xff) << 8 | response[7] & 0xff) > 0);
+        return (response[0] & 0xff) << 8 | response[1] & 0xff;
+    }
+
+    @Test
+    public void pipelined() throws Exception {
+        try (Socket socket = connect(start("TCPNIO"))) {
+            // all in one write, so they arrive together
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            for (int id = 1; id <= 10; id++) {
+                all.write(prefixed(query(id)));
+            }
+            socket.getOutputStream().write(all.toByteArray());
+
+            // in whatever order the workers finish them
+            Set<Integer> ids = new HashSet<>();
+            for (int i = 0; i < 10; i++) {
+                ids.add(response(socket));
+            }
+            for (int id = 1; id <= 10; id++) {
+                Assert.assertTrue(ids.contains(id));
+            }
+        }
+    }
+
+    @Test
+    public void split() throws Exception {
+        try (Socket socket = connect(start("TCPNIO"))) {
+            byte[] b = prefixed(query(7));
+            // the first byte of the length, then part of the query
+            socket.getOutputStream().write(b, 0, 1);
+            socket.getOutputStream().flush();
+            Thread.sleep(100);
+            socket.getOutputStream().write(b, 1, 10);
+            socket.getOutputStream().flush();
+            Thread.sleep(100);
+            socket.getOutputStream().write(b, 11, b.length - 11);
+            Assert.assertEquals(7, response(socket));
+        }
+    }
+
+    @Test
+    public void tls() throws Exception {
+        final String file = JDNSS.jargs.keystoreFile;
+        final String password = JDNSS.jargs.keystorePassword;
+        JDNSS.jargs.keystoreFile = "testkey.jks";
+        JDNSS.jargs.keystorePassword = "password";
+        try {
+            final int port = start("TLSNIO");
+            try (Socket plain = connect(port);
+                 SSLSocket socket = (SSLSocket) HTTPS.getSslContext().getSocketFactory()
+                     .createSocket(plain, "127.0.0.1", port, true)) {
+                socket.startHandshake();
+                socket.getOutputStream().write(prefixed(query(1)));
+                socket.getOutputStream().write(prefixed(query(2)));
+                Set<Integer> ids = new HashSet<>();
+                ids.add(response(socket));
+                ids.add(response(socket));
+                Assert.assertTrue(ids.contains(1) && ids.contains(2));
+            }
+        } finally {
+            JDNSS.jargs.keystoreFile = file;
+            JDNSS.jargs.keystorePassword = password;
+        }
+    }
+
+    @Test
+    public void maxQueries() throws Exception {
+        final Field field = jdnssArgs.class.getDeclaredField("tcpMaxQueries");
+        field.setAccessible(true);
+        final Object saved = field.get(JDNSS.jargs);
+        field.set(JDNSS.jargs, 3);
+        try (Socket socket = connect(start("TCPNIO"))) {
+            for (int id = 1; id <= 3; id++) {
+                socket.getOutputStream().write(prefixed(query(id)));
+                Assert.assertEquals(id, response(socket));
+            }
+            // closed once the last is answered, and a fourth isn't read
+            socket.getOutputStream().write(prefixed(query(4)));
+            Assert.assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            field.set(JDNSS.jargs, saved);
+        }
+    }
+}
@@ -5,7 +5,14 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -26,5 +33,71 @@ public class TCPThreadTest {
 
         Object o = P38.call("getLength", tt);
         Assert.assertEquals(0, o);
+
+        // the client closed the connection
+        o = P38.call("getLength", tt);
+        Assert.assertEquals(-1, o);
+    }
+
+    /**
+     * @return the response to query on socket
+     */
+    private static byte[] ask(final Socket socket, final byte[] query) throws IOException {
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeShort(query.length);
+        out.write(query);
+        out.flush();
+
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] response = new byte[in.readUnsignedShort()];
+        in.readFully(response);
+        return response;
+    }
+
+    @Test
+    public void idleConnectionsMakeRoom() throws Exception {
+        Assert.assertTrue(JDNSS.bindZones.load("test.com"));
+        final int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        TCP tcp = new TCP(new String[]{"TCP", "127.0.0.1", Integer.toString(port)});
+        tcp.setDaemon(true);
+        tcp.start();
+
+        final byte[] query = LoadGenerator.query("www.test.com", RRCode.A, false, false);
+        final int threads = JDNSS.jargs.getThreads();
+        List<Socket> idle = new ArrayList<>();
+        try {
+            // every thread of the pool holding a connection that is kept open
+            for (int i = 0; i < threads; i++) {
+                Socket socket = null;
+                for (int tries = 0; socket == null; tries++) {
+                    try {
+                        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                    } catch (IOException e) {
+                        // not listening yet
+                        Assert.assertTrue(tries < 50);
+                        Thread.sleep(100);
+                    }
+                }
+                idle.add(socket);
+                Assert.assertTrue(ask(socket, query).length > 12);
+            }
+
+            // answered long before --tcpIdleTimeout
+            try (Socket last = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                last.setSoTimeout(JDNSS.jargs.getTcpIdleTimeout() / 2);
+                Assert.assertTrue(ask(last, query).length > 12);
+            }
+
+            // by closing the first
+            idle.get(0).setSoTimeout(5000);
+            Assert.assertEquals(-1, idle.get(0).getInputStream().read());
+        } finally {
+            for (Socket socket : idle) {
+                socket.close();
+            }
+        }
     }
-}
\ No newline at end of file
+}
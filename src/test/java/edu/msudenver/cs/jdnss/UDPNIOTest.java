@@ -0,0 +1,110 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+
+public class UDPNIOTest {
+    @BeforeClass
+    public static void setUp() {
+        Assert.assertTrue(JDNSS.bindZones.load("test.com"));
+    }
+
+    /**
+     * Start a UDPNIO listener with options on a free port.
+     *
+     * @return the port
+     */
+    private static int start(final String... options) throws IOException {
+        final int port;
+        try (DatagramSocket s = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            port = s.getLocalPort();
+        }
+        final String[] parts = new String[3 + options.length];
+        parts[0] = "UDPNIO";
+        parts[1] = "127.0.0.1";
+        parts[2] = Integer.toString(port);
+        System.arraycopy(options, 0, parts, 3, options.length);
+        UDPNIO nio = new UDPNIO(parts);
+        nio.setDaemon(true);
+        nio.start();
+        return port;
+    }
+
+    /**
+     * Ask for name's type with id as the ID, trying again in case the
+     * listener isn't reading yet.
+     *
+     * @return the response
+     */
+    static byte[] ask(final DatagramSocket socket, final int port, final String name,
+                      final RRCode type, final int id) throws IOException {
+        final byte[] query = LoadGenerator.query(name, type, false, false);
+        query[0] = (byte) (id >> 8);
+        query[1] = (byte) id;
+        final byte[] buffer = new byte[512];
+        for (int tries = 0; ; tries++) {
+            socket.send(new DatagramPacket(query, query.length,
+                InetAddress.getLoopbackAddress(), port));
+            final DatagramPacket response = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(response);
+            } catch (SocketTimeoutException ste) {
+                Assert.assertTrue(tries < 20);
+                continue;
+            }
+            final byte[] b = new byte[response.getLength()];
+            System.arraycopy(buffer, 0, b, 0, b.length);
+            Assert.assertEquals(id, (b[0] & 0xff) << 8 | b[1] & 0xff);
+            return b;
+        }
+    }
+
+    static int rcode(final byte[] response) {
+        return response[3] & 0x0f;
+    }
+
+    static int answers(final byte[] response) {
+        return (response[6] & 0xff) << 8 | response[7] & 0xff;
+    }
+
+    @Test
+    public void loopback() throws Exception {
+        final ResponseCache saved = JDNSS.responseCache;
+        JDNSS.responseCache = new ResponseCache(10);
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(250);
+            final int port = start("loops=2");
+
+            final byte[] a = ask(socket, port, "www.test.com", RRCode.A, 1);
+            Assert.assertEquals(ErrorCodes.NOERROR.getCode(), rcode(a));
+            Assert.assertTrue(answers(a) > 0);
+
+            final byte[] mx = ask(socket, port, "test.com", RRCode.MX, 2);
+            Assert.assertEquals(ErrorCodes.NOERROR.getCode(), rcode(mx));
+            Assert.assertTrue(answers(mx) > 0);
+
+            final byte[] missing = ask(socket, port, "missing.test.com", RRCode.A, 3);
+            Assert.assertEquals(ErrorCodes.NAMEERROR.getCode(), rcode(missing));
+            Assert.assertEquals(0, answers(missing));
+
+            // from the cache this time, but with its own ID
+            final int cached = JDNSS.responseCache.size();
+            Assert.assertTrue(cached > 0);
+            final byte[] again = ask(socket, port, "www.test.com", RRCode.A, 4);
+            Assert.assertEquals(cached, JDNSS.responseCache.size());
+            Assert.assertEquals(a.length, again.length);
+            for (int i = 2; i < a.length; i++) {
+                Assert.assertEquals(a[i], again[i]);
+            }
+        } finally {
+            JDNSS.responseCache = saved;
+        }
+    }
+}
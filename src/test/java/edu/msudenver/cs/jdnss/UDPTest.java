@@ -0,0 +1,41 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+public class UDPTest {
+    @BeforeClass
+    public static void setUp() {
+        Assert.assertTrue(JDNSS.bindZones.load("test.com"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noShards() {
+        new UDP(new String[]{"UDP", "127.0.0.1", "0", "shards=0"});
+    }
+
+    @Test
+    public void shards() throws Exception {
+        final int port;
+        try (DatagramSocket s = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            port = s.getLocalPort();
+        }
+        final UDP udp = new UDP(new String[]{"UDP", "127.0.0.1", Integer.toString(port), "shards=2"});
+        udp.setDaemon(true);
+        udp.start();
+
+        // from several source ports, so the kernel may pick either shard
+        for (int id = 1; id <= 8; id++) {
+            try (DatagramSocket socket = new DatagramSocket()) {
+                socket.setSoTimeout(250);
+                final byte[] response = UDPNIOTest.ask(socket, port, "www.test.com", RRCode.A, id);
+                Assert.assertEquals(ErrorCodes.NOERROR.getCode(), UDPNIOTest.rcode(response));
+                Assert.assertTrue(UDPNIOTest.answers(response) > 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package edu.msudenver.cs.jdnss;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes synthetic zone files of any size, of three kinds:
+ *
+ * forward  bench.example, the mix of a large hosting zone: A, AAAA, MX,
+ *          TXT and CNAME, relative and absolute names, with and without
+ *          TTLs
+ * reverse  10.in-addr.arpa, a PTR for each address
+ * signed   signed.example as dnssec-signzone leaves it: an A, its RRSIG,
+ *          an NSEC to the next name and the NSEC's RRSIG for each name,
+ *          and DNSKEYs at the apex.  The signatures and keys are the
+ *          right size but made up, which JDNSS doesn't check.
+ *
+ * Every kind has an SOA and an NS at the apex, and the name of the i'th
+ * name holding an A or PTR is name(kind, i), so lookups can be made
+ * without reading the file back.  The zone's name is the file's name,
+ * as JDNSS takes it.
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=edu.msudenver.cs.jdnss.ZoneGenerator \
+ *     -Dexec.args="signed 1000000 /tmp"
+ *
+ * writes /tmp/signed.example with a million records.
+ */
+public class ZoneGenerator {
+    enum Kind {
+        FORWARD("bench.example", RRCode.A),
+        REVERSE("10.in-addr.arpa", RRCode.PTR),
+        SIGNED("signed.example", RRCode.A);
+
+        final String zone;
+        // what name(kind, i) has
+        final RRCode type;
+
+        Kind(final String zone, final RRCode type) {
+            this.zone = zone;
+            this.type = type;
+        }
+    }
+
+    // RSASHA256 with a 2048 bit key: 256 bytes of signature, 260 of key
+    private static final String SIGNATURE = base64(256);
+    private static final String KEY = base64(260);
+
+    private static String base64(final int bytes) {
+        final byte[] b = new byte[bytes];
+        for (int i = 0; i < bytes; i++) {
+            b[i] = (byte) (i * 31 + 7);
+        }
+        return java.util.Base64.getEncoder().encodeToString(b);
+    }
+
+    /**
+     * @return the i'th name with an A (PTR in reverse), fully qualified
+     * without the trailing dot; every i from 0 up to count(kind, records)
+     */
+    static String name(final Kind kind, final int i) {
+        switch (kind) {
+            case REVERSE:
+                return (i & 0xff) + "." + ((i >> 8) & 0xff) + "." + ((i >> 16) & 0xff) + "."
+                    + kind.zone;
+            default:
+                return "h" + i + "." + kind.zone;
+        }
+    }
+
+    /**
+     * @return how many names name() has in a zone of records records
+     */
+    static int count(final Kind kind, final int records) {
+        switch (kind) {
+            case FORWARD:
+                // six in every ten records, see forward()
+                return Math.max(1, records / 10) * 6;
+            case REVERSE:
+                return Math.min(records, 1 << 24);
+            default:
+                // an A and an NSEC, and an RRSIG for each
+                return Math.max(1, records / 4);
+        }
+    }
+
+    /**
+     * Write a zone of about records records (and its SOA and NS) to a file
+     * named for it in directory; forward zones are made ten records at a
+     * time.
+     *
+     * @return the file
+     */
+    static Path generate(final Kind kind, final int records, final Path directory)
+        throws IOException {
+        final Path file = directory.resolve(kind.zone);
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            w.write("$TTL 1H\n$ORIGIN " + kind.zone + ".\n");
+            w.write("@ IN SOA ns1.bench.example. root.bench.example. ( 1 3600 900 604800 86400 )\n");
+            w.write("  IN NS ns1.bench.example.\n");
+            switch (kind) {
+                case FORWARD:
+                    forward(w, records);
+                    break;
+                case REVERSE:
+                    reverse(w, records);
+                    break;
+                default:
+                    signed(w, records);
+                    break;
+            }
+        }
+        return file;
+    }
+
+    private static void forward(final Writer w, final int records) throws IOException {
+        // ten records and six names at a time
+        for (int n = 0; n < count(Kind.FORWARD, records); n += 6) {
+            for (int i = n; i < n + 4; i++) {
+                w.write("h" + i + " IN A " + address(i) + "\n");
+            }
+            w.write("h" + (n + 4) + " 3600 IN A " + address(n + 4) + "\n");
+            // no zero groups, which Parser.shortenIPv6 doesn't take with a ::
+            w.write("  IN AAAA 2001:db8:" + (((n >> 16) & 0xff) + 1) + ":" + (((n >> 8) & 0xff) + 1)
+                + "::" + ((n & 0xff) + 1) + "\n");
+            w.write("h" + (n + 5) + ".bench.example. 1D IN A " + address(n + 5) + "\n");
+            w.write("  IN MX 10 mail" + (n % 16) + ".bench.example.\n");
+            w.write("  IN TXT \"v=spf1 ip4:10." + ((n >> 16) & 0xff) + "." + ((n >> 8) & 0xff)
+                + ".0/24 -all\"\n");
+            w.write("alias" + n + " IN CNAME h" + n + "\n");
+        }
+    }
+
+    private static String address(final int i) {
+        return "10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+    }
+
+    private static void reverse(final Writer w, final int records) throws IOException {
+        for (int i = 0; i < count(Kind.REVERSE, records); i++) {
+            final String name = name(Kind.REVERSE, i);
+            w.write(name.substring(0, name.length() - Kind.REVERSE.zone.length() - 1)
+                + " IN PTR h" + i + ".bench.example.\n");
+        }
+    }
+
+    private static void rrsig(final Writer w, final RRCode covered) throws IOException {
+        // Parser wants the parentheses dnssec-signzone writes
+        w.write("  IN RRSIG " + covered + " 8 2 3600 ( 20300101000000 20200101000000 12345 "
+            + Kind.SIGNED.zone + ". " + SIGNATURE + " )\n");
+    }
+
+    private static void signed(final Writer w, final int records) throws IOException {
+        rrsig(w, RRCode.SOA);
+        rrsig(w, RRCode.NS);
+        w.write("  IN DNSKEY 256 3 8 ( " + KEY + " )\n");
+        w.write("  IN DNSKEY 257 3 8 ( " + KEY + " )\n");
+        rrsig(w, RRCode.DNSKEY);
+        final int names = count(Kind.SIGNED, records);
+        w.write("  IN NSEC h0." + Kind.SIGNED.zone + ". NS SOA RRSIG NSEC DNSKEY\n");
+        rrsig(w, RRCode.NSEC);
+        for (int i = 0; i < names; i++) {
+            w.write("h" + i + " IN A " + address(i) + "\n");
+            rrsig(w, RRCode.A);
+            // not in canonical order, which nothing here depends on
+            w.write("  IN NSEC " + (i + 1 < names ? "h" + (i + 1) + "." : "") + Kind.SIGNED.zone
+                + ". A RRSIG NSEC\n");
+            rrsig(w, RRCode.NSEC);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: ZoneGenerator forward|reverse|signed records [directory]");
+            System.exit(1);
+        }
+        final Kind kind = Kind.valueOf(args[0].toUpperCase());
+        final Path file = generate(kind, Integer.parseInt(args[1]),
+            Paths.get(args.length > 2 ? args[2] : "."));
+        System.out.println(file);
+    }
+}
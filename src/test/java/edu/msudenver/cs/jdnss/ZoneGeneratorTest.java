@@ -0,0 +1,38 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ZoneGeneratorTest {
+    @Test
+    public void parses() throws Exception {
+        Path directory = Files.createTempDirectory("zones");
+        try {
+            for (ZoneGenerator.Kind kind : ZoneGenerator.Kind.values()) {
+                Path file = ZoneGenerator.generate(kind, 1000, directory);
+                try {
+                    Zone zone = ZoneRegistry.parse(file.toString());
+                    Assert.assertEquals(kind.zone, zone.getName());
+                    Assert.assertEquals(1, zone.get(RRCode.SOA, kind.zone).size());
+
+                    int count = ZoneGenerator.count(kind, 1000);
+                    for (int i : new int[]{0, count / 2, count - 1}) {
+                        RRset rrset = zone.getRRset(kind.type, ZoneGenerator.name(kind, i));
+                        Assert.assertEquals(kind + " " + i, 1, rrset.getRecords().size());
+                        Assert.assertEquals(kind == ZoneGenerator.Kind.SIGNED ? 1 : 0,
+                            rrset.getSignatures().getRecords().size());
+                    }
+                    Assert.assertTrue(zone.getRRset(kind.type,
+                        ZoneGenerator.name(kind, count)).isEmpty());
+                } finally {
+                    Files.delete(file);
+                }
+            }
+        } finally {
+            Files.delete(directory);
+        }
+    }
+}
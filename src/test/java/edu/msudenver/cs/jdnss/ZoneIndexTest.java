@@ -0,0 +1,43 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ZoneIndexTest {
+    @Test
+    public void findLongest() {
+        ZoneIndex<String> v = new ZoneIndex<>();
+        v.put("d.e", "d.e");
+        v.put("b.c.d.e", "b.c.d.e");
+
+        Assert.assertEquals(2, v.size());
+        Assert.assertEquals("d.e", v.findLongest("z.d.e"));
+        Assert.assertEquals("d.e", v.findLongest("z.c.d.e"));
+        Assert.assertEquals("b.c.d.e", v.findLongest("a.b.c.d.e"));
+        Assert.assertEquals("b.c.d.e", v.findLongest("b.c.d.e"));
+        Assert.assertNull(v.findLongest("e"));
+        Assert.assertNull(v.findLongest("foo.com"));
+    }
+
+    @Test
+    public void wholeLabels() {
+        ZoneIndex<String> v = new ZoneIndex<>();
+        v.put("test.com", "test.com");
+        Assert.assertNull(v.findLongest("nottest.com"));
+        Assert.assertEquals("test.com", v.findLongest("www.not.test.com"));
+    }
+
+    @Test
+    public void canonical() {
+        ZoneIndex<String> v = new ZoneIndex<>();
+        v.put("Test.COM.", "test.com");
+        Assert.assertEquals("test.com", v.findLongest("WWW.test.com"));
+        Assert.assertEquals("test.com", v.findLongest("www.test.com."));
+        Assert.assertEquals("test.com", v.get("test.com"));
+        Assert.assertNull(v.get("www.test.com"));
+
+        Assert.assertEquals("test.com", v.put("test.com", "again"));
+        Assert.assertEquals(1, v.size());
+        Assert.assertEquals("again", v.get("TEST.com"));
+    }
+}
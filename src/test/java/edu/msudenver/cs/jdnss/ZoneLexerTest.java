@@ -0,0 +1,132 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ZoneLexerTest
+{
+    private ZoneLexer lexer (String s)
+    {
+        return new ZoneLexer (new ByteArrayInputStream (s.getBytes (StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void tokens () throws IOException
+    {
+        ZoneLexer l = lexer ("www 1H IN A 10.0.0.1 ; a comment\n" +
+            "@ ( \"a \\\"b\\\"; c\" ) $TTL\r\n.5 -\n");
+
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        Assert.assertEquals ("www", l.text ());
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        Assert.assertEquals ("1H", l.text ());
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        Assert.assertEquals ("10.0.0.1", l.text ());
+        Assert.assertEquals (1, l.lineno ());
+
+        Assert.assertEquals ('@', l.next ());
+        Assert.assertEquals (2, l.lineno ());
+        Assert.assertEquals ('(', l.next ());
+        Assert.assertEquals (ZoneLexer.QUOTED, l.next ());
+        Assert.assertEquals ("a \"b\"; c", l.text ());
+        Assert.assertEquals (')', l.next ());
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        Assert.assertEquals ("$TTL", l.text ());
+
+        Assert.assertEquals (ZoneLexer.NUMBER, l.next ());
+        Assert.assertEquals (3, l.lineno ());
+        Assert.assertEquals ('-', l.next ());
+        Assert.assertEquals (ZoneLexer.EOF, l.next ());
+        Assert.assertEquals (ZoneLexer.EOF, l.next ());
+    }
+
+    @Test
+    public void longWords () throws IOException
+    {
+        StringBuilder sb = new StringBuilder ();
+        for (int i = 0; i < 100000; i++)
+        {
+            sb.append ((char) ('a' + i % 26));
+        }
+        ZoneLexer l = lexer (sb + " x");
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        Assert.assertEquals (sb.toString (), l.text ());
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        Assert.assertEquals ("x", l.text ());
+    }
+
+    private ZoneLexer word (String s) throws IOException
+    {
+        ZoneLexer l = lexer (s);
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        return l;
+    }
+
+    @Test
+    public void classify () throws IOException
+    {
+        Assert.assertTrue (word ("192.0.2.1").isIPv4 ());
+        Assert.assertFalse (word ("192.0.2").isIPv4 ());
+        Assert.assertFalse (word ("192..2.1").isIPv4 ());
+
+        Assert.assertTrue (word ("2001:db8::1").isIPv6 ());
+        Assert.assertTrue (word ("::ffff:192.0.2.1").isIPv6 ());
+        Assert.assertFalse (word ("2001:db8:").isIPv6 ());
+        Assert.assertFalse (word ("www.test.com").isIPv6 ());
+
+        Assert.assertTrue (word ("1.2.0.192.IN-ADDR.ARPA.").isReverseName ());
+        Assert.assertFalse (word ("2.0.192.in-addr.arpa.").isReverseName ());
+
+        Assert.assertTrue (word ("www.test.com.").isAbsoluteName ());
+        Assert.assertFalse (word ("www.test.com").isAbsoluteName ());
+        Assert.assertTrue (word ("_sip._tcp").isRelativeName ());
+        Assert.assertFalse (word ("a..b").isRelativeName ());
+
+        Assert.assertTrue (word ("AQID").isBase64 ());
+        Assert.assertTrue (word ("AQ==").isBase64 ());
+        Assert.assertFalse (word ("AQI").isBase64 ());
+
+        Assert.assertTrue (word ("DEADbeef").isHex ());
+        ZoneLexer l = word ("2147483647");
+        Assert.assertEquals (Integer.MAX_VALUE, l.intValue (0, l.length ()));
+    }
+
+    @Test
+    public void utf8 () throws IOException
+    {
+        // \u00e9 is C3 A9, \u0100 is C4 80 and \u0161 is C5 A1: continuation
+        // bytes from 0x80 up are part of the word too
+        ZoneLexer l = lexer ("caf\u00e9.\u0100\u0161.test. A\n");
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        Assert.assertEquals ("caf\u00e9.\u0100\u0161.test.", l.text ());
+        Assert.assertEquals ("caf\u00e9.\u0100\u0161.test", l.text (0, l.length () - 1));
+        Assert.assertEquals ("caf\u00e9.\u0101\u0161.test", l.lowerCase (0, l.length () - 1));
+        Assert.assertEquals (ZoneLexer.WORD, l.next ());
+        Assert.assertEquals ("A", l.text ());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void overflow () throws IOException
+    {
+        ZoneLexer l = word ("2147483648");
+        l.intValue (0, l.length ());
+    }
+
+    @Test
+    public void shortenIPv6 ()
+    {
+        // what the regexes it replaces did
+        for (String a : new String[]{"2001:0db8:0000:0000:0000:ff00:0042:8329",
+            "0000:0000::1", "::1", "fe80::0202:b3ff:fe1e:8329", "2001:db8::"})
+        {
+            Assert.assertEquals (a.replaceFirst ("(:0+)+", ":").replaceFirst ("^0+:", ":"),
+                Parser.shortenIPv6 (a));
+        }
+    }
+}
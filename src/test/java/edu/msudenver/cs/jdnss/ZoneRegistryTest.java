@@ -0,0 +1,115 @@
+package edu.msudenver.cs.jdnss;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ZoneRegistryTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String ZONE =
+        "$ORIGIN test.com.\n" +
+        "@\tIN\tSOA\t@  root.test.com ( 1 28800 7200 604800 86400 )\n" +
+        "\tIN\tNS\tns.test.com.\n" +
+        "www\tIN\tA\t%s\n";
+
+    private File write(final File file, final String address) throws IOException {
+        Files.write(file.toPath(), String.format(ZONE, address).getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    private String address(final ZoneRegistry registry) {
+        return ((ADDRRR) registry.findLongest("www.test.com")
+            .get(RRCode.A, "www.test.com").get(0)).address;
+    }
+
+    @Test
+    public void reload() throws IOException {
+        File file = write(folder.newFile("test.com"), "10.0.0.1");
+        ZoneRegistry registry = new ZoneRegistry();
+
+        Assert.assertTrue(registry.load(file.getPath()));
+        Assert.assertEquals(1, registry.size());
+        Zone before = registry.findLongest("www.test.com");
+        Assert.assertEquals("test.com", before.getName());
+        Assert.assertEquals("10.0.0.1", address(registry));
+
+        write(file, "10.0.0.2");
+        Assert.assertTrue(registry.load(file.getPath()));
+        Assert.assertEquals(1, registry.size());
+        Assert.assertEquals("10.0.0.2", address(registry));
+        // what was handed out before is left alone
+        Assert.assertEquals("10.0.0.1", ((ADDRRR) before.get(RRCode.A, "www.test.com").get(0)).address);
+    }
+
+    @Test
+    public void missing() {
+        ZoneRegistry registry = new ZoneRegistry();
+        Assert.assertFalse(registry.load(new File(folder.getRoot(), "nope.com").getPath()));
+        Assert.assertNull(registry.findLongest("www.nope.com"));
+    }
+
+    @Test
+    public void loadAll() throws IOException {
+        // both files turn out to be test.com; the last one given wins
+        File first = write(folder.newFile("first"), "10.0.0.1");
+        File second = write(folder.newFile("second"), "10.0.0.2");
+        String missing = new File(folder.getRoot(), "missing").getPath();
+
+        for (int threads : new int[]{1, 4}) {
+            ZoneRegistry registry = new ZoneRegistry();
+            String[] files = {first.getPath(), missing, second.getPath()};
+            Assert.assertEquals(2, registry.loadAll(files, threads));
+            Assert.assertEquals(1, registry.size());
+            Assert.assertEquals("10.0.0.2", address(registry));
+        }
+    }
+
+    @Test
+    public void watchWaitsForQuiet() throws Exception {
+        File file = write(folder.newFile("test.com"), "10.0.0.1");
+        ZoneRegistry registry = new ZoneRegistry();
+        Assert.assertTrue(registry.load(file.getPath()));
+        registry.watch(300);
+        // a publish invalidates the cache
+        final int generation = JDNSS.responseCache.getGeneration();
+
+        // the first piece of the file parses, but www isn't there yet
+        String zone = String.format(ZONE, "10.0.0.2");
+        String piece = zone.substring(0, zone.indexOf("www"));
+        Files.write(file.toPath(), piece.getBytes(StandardCharsets.US_ASCII));
+        Thread.sleep(100);
+        Files.write(file.toPath(), zone.getBytes(StandardCharsets.US_ASCII));
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (JDNSS.responseCache.getGeneration() == generation
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals("10.0.0.2", address(registry));
+        // once, and with the whole file
+        Thread.sleep(500);
+        Assert.assertEquals(generation + 1, JDNSS.responseCache.getGeneration());
+    }
+
+    @Test
+    public void signal() throws Exception {
+        Assume.assumeTrue(File.separatorChar == '/');
+        final CountDownLatch handled = new CountDownLatch(1);
+        Assert.assertTrue(ZoneRegistry.handleSignal("HUP", handled::countDown));
+        new ProcessBuilder("kill", "-HUP", Long.toString(ProcessHandle.current().pid()))
+            .start().waitFor();
+        Assert.assertTrue(handled.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(ZoneRegistry.handleSignal("NOSUCHSIGNAL", () -> { }));
+    }
+}
@@ -0,0 +1,217 @@
+package edu.msudenver.cs.jdnss;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How zones scale: for each kind of ZoneGenerator zone at each size, the
+ * time to parse the file into a BindZone and compile it, records per
+ * second over both, the heap (and, for --offHeapZones, direct memory)
+ * the zone keeps per record once loaded, and the time to look up names
+ * that are there and names that aren't, in random order so that big
+ * zones miss the caches as they would serving.
+ *
+ * Each zone is measured twice, as a CompiledZone and as the MappedZone
+ * --offHeapZones makes of it.  The report is a CSV file, one row per
+ * zone and store; runs on different commits can be diffed or plotted.
+ * A size that the previous size suggests won't fit in the heap is
+ * skipped, with a note on stderr.
+ *
+ * Run it with, e.g.,
+ *
+ * MAVEN_OPTS=-Xmx16g mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=edu.msudenver.cs.jdnss.ZoneScaleBenchmark \
+ *     -Dexec.args="10000,100000,1000000,10000000 forward,reverse,signed zone-scale.csv"
+ *
+ * where the arguments are the sizes in records, the kinds of zone and
+ * the report; those are the defaults.
+ */
+public class ZoneScaleBenchmark {
+    private static final String HEADER = "kind,store,records,file_bytes,parse_ms,compile_ms,"
+        + "records_per_s,heap_bytes_per_record,direct_bytes_per_record,hit_ns,miss_ns";
+    private static final int WARM_UP = 10000;
+    private static final int LOOKUP_NAMES = 1 << 16;
+    private static final long LOOKUP_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    // so lookups aren't optimized away
+    private static volatile int sink;
+
+    public static void main(String[] args) throws IOException {
+        final int[] sizes = Arrays.stream((args.length > 0 ? args[0]
+            : "10000,100000,1000000,10000000").split(",")).mapToInt(Integer::parseInt).toArray();
+        final String[] kinds = (args.length > 1 ? args[1] : "forward,reverse,signed").split(",");
+        final Path report = Paths.get(args.length > 2 ? args[2] : "zone-scale.csv");
+
+        final Path directory = Files.createTempDirectory("zones");
+        // the bytes per record each kind last took, to guess whether the next fits
+        final Map<ZoneGenerator.Kind, Double> perRecord = new EnumMap<>(ZoneGenerator.Kind.class);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report))) {
+            out.println(HEADER);
+            System.out.println(HEADER);
+            for (String k : kinds) {
+                final ZoneGenerator.Kind kind = ZoneGenerator.Kind.valueOf(k.toUpperCase());
+                // once to warm up
+                final Path warm = ZoneGenerator.generate(kind, WARM_UP, directory);
+                try {
+                    measure(kind, WARM_UP, warm, perRecord);
+                } finally {
+                    Files.delete(warm);
+                }
+                perRecord.remove(kind);
+
+                for (int size : sizes) {
+                    final Double last = perRecord.get(kind);
+                    // parsing holds the BindZone and the CompiledZone at once
+                    if (last != null && last * size * 3 > Runtime.getRuntime().maxMemory()) {
+                        System.err.printf("Skipping %s %d: won't fit in -Xmx%dm%n", k, size,
+                            Runtime.getRuntime().maxMemory() >> 20);
+                        continue;
+                    }
+                    final Path file = ZoneGenerator.generate(kind, size, directory);
+                    try {
+                        for (String row : measure(kind, size, file, perRecord)) {
+                            out.println(row);
+                            out.flush();
+                            System.out.println(row);
+                        }
+                    } finally {
+                        Files.delete(file);
+                    }
+                }
+            }
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * @return the rows for file as a CompiledZone and as a MappedZone
+     */
+    private static String[] measure(final ZoneGenerator.Kind kind, final int size,
+                                    final Path file, final Map<ZoneGenerator.Kind, Double> perRecord)
+        throws IOException {
+        final long[] records = new long[1];
+        final long fileBytes = Files.size(file);
+        // made first, so they aren't counted as the zone's
+        final String[] names = names(kind, size, false);
+        final String[] missing = names(kind, size, true);
+
+        final long heap = usedHeap();
+        final long start = System.nanoTime();
+        BindZone zone = new BindZone(kind.zone) {
+            @Override
+            public void add(String name, RR rr) {
+                records[0]++;
+                super.add(name, rr);
+            }
+        };
+        try (InputStream in = new FileInputStream(file.toFile())) {
+            new Parser(in, zone).RRs();
+        }
+        final long parsed = System.nanoTime();
+        CompiledZone compiled = new CompiledZone(zone);
+        final long compiledAt = System.nanoTime();
+        zone = null;
+
+        final long compiledHeap = usedHeap() - heap;
+        perRecord.put(kind, (double) compiledHeap / records[0]);
+        final String heapRow = row(kind, "heap", records[0], fileBytes, parsed - start,
+            compiledAt - parsed, compiledHeap, 0,
+            lookup(compiled, kind.type, names), lookup(compiled, kind.type, missing));
+
+        final long direct = usedDirect();
+        final long copying = System.nanoTime();
+        final MappedZone mapped = MappedZone.offHeap(compiled);
+        final long copied = System.nanoTime();
+        compiled = null;
+        final String offHeapRow = row(kind, "offHeap", records[0], fileBytes, parsed - start,
+            compiledAt - parsed + copied - copying, usedHeap() - heap, usedDirect() - direct,
+            lookup(mapped, kind.type, names), lookup(mapped, kind.type, missing));
+
+        return new String[]{heapRow, offHeapRow};
+    }
+
+    private static String row(final ZoneGenerator.Kind kind, final String store,
+                              final long records, final long fileBytes, final long parseNanos,
+                              final long compileNanos, final long heap, final long direct,
+                              final double hit, final double miss) {
+        return String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%.0f,%.1f,%.1f,%.1f,%.1f",
+            kind.name().toLowerCase(), store, records, fileBytes,
+            TimeUnit.NANOSECONDS.toMillis(parseNanos), TimeUnit.NANOSECONDS.toMillis(compileNanos),
+            records * 1e9 / (parseNanos + compileNanos), (double) heap / records,
+            (double) direct / records, hit, miss);
+    }
+
+    /**
+     * @return names at random from the zone or, if missing, that aren't in it
+     */
+    private static String[] names(final ZoneGenerator.Kind kind, final int size,
+                                  final boolean missing) {
+        final Random random = new Random(size);
+        final int count = ZoneGenerator.count(kind, size);
+        final String[] names = new String[LOOKUP_NAMES];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = missing ? "nothere" + random.nextInt() + "." + kind.zone
+                : ZoneGenerator.name(kind, random.nextInt(count));
+        }
+        return names;
+    }
+
+    /**
+     * @return the mean nanoseconds to get type's RRset at each of names
+     */
+    private static double lookup(final Zone zone, final RRCode type, final String[] names) {
+        // once through to warm up
+        int found = 0;
+        for (String name : names) {
+            found += zone.getRRset(type, name).getRecords().size();
+        }
+
+        long lookups = 0;
+        final long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (String name : names) {
+                found += zone.getRRset(type, name).getRecords().size();
+            }
+            lookups += names.length;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < LOOKUP_NANOS);
+        sink = found;
+        return (double) elapsed / lookups;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}